@@ -0,0 +1,29 @@
+package main;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so that every result comes with its allocation rate
+ * (gc.alloc.rate.norm, in B/op) next to the time per operation.
+ */
+public class BenchmarkRunner {
+
+    /**
+     * Program entry point. Takes the usual JMH command line options, e.g. a benchmark name regex
+     * to run a subset.
+     *
+     * @param args command line args
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        var options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
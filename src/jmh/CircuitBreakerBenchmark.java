@@ -0,0 +1,93 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single threaded cost of the circuit breaker hot paths against {@link QuickRemoteService}, so that
+ * only the overhead of the circuit breaker itself is measured.
+ */
+// Fully qualified, the circuit breaker State enum lives in the same package
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CircuitBreakerBenchmark {
+
+    //Far enough in the future that an OPEN circuit never moves to HALF_OPEN during a run
+    private static final long RETRY_PERIOD = 1000L * 1000 * 1000 * 1000 * 1000;
+
+    private DefaultCircuitBreaker<String> closed;
+    private DefaultCircuitBreaker<String> open;
+    private DefaultCircuitBreaker<String> halfOpen;
+    private DefaultCircuitBreaker<String> closedWithoutTimeout;
+
+    /**
+     * Set up one circuit breaker per state. The HALF_OPEN one has handed out its single trial
+     * permit, so every call measures turning a caller away while the trial is in flight.
+     */
+    @Setup
+    public void setUp() {
+        closed = new DefaultCircuitBreaker<>(new QuickRemoteService(), 3000, 2, RETRY_PERIOD);
+        closedWithoutTimeout = new DefaultCircuitBreaker<>(new QuickRemoteService(), 0, 2,
+                RETRY_PERIOD);
+        open = new DefaultCircuitBreaker<>(new QuickRemoteService(), 3000, 2, RETRY_PERIOD);
+        open.setState(State.OPEN);
+        halfOpen = new DefaultCircuitBreaker<>(new QuickRemoteService(), 3000, 2, RETRY_PERIOD);
+        halfOpen.setState(State.HALF_OPEN);
+        halfOpen.tryAcquirePermission();
+    }
+
+    @Benchmark
+    public String attemptRequestClosed() throws RemoteServiceException {
+        return closed.attemptRequest();
+    }
+
+    // Same without the timeout watchdog, to tell its cost apart from the state machine
+    @Benchmark
+    public String attemptRequestClosedWithoutTimeout() throws RemoteServiceException {
+        return closedWithoutTimeout.attemptRequest();
+    }
+
+    @Benchmark
+    public Object attemptRequestOpen() {
+        try {
+            return open.attemptRequest();
+        } catch (RemoteServiceException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object attemptRequestHalfOpen() {
+        try {
+            return halfOpen.attemptRequest();
+        } catch (RemoteServiceException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String getStateClosed() {
+        return closed.getState();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String getStateOpen() {
+        return open.getState();
+    }
+}
@@ -0,0 +1,60 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Contention on a shared {@link LatencyHistogram} when many threads record calls of the same
+ * steady latency, the worst case as every value lands in the same bucket.
+ */
+// Fully qualified, the circuit breaker State enum lives in the same package
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyHistogramBenchmark {
+
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(3);
+
+    private LatencyHistogram histogram;
+
+    @Setup
+    public void setUp() {
+        histogram = new LatencyHistogram();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void record1Thread() {
+        histogram.record(LATENCY);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void record4Threads() {
+        histogram.record(LATENCY);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void record16Threads() {
+        histogram.record(LATENCY);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void record64Threads() {
+        histogram.record(LATENCY);
+    }
+}
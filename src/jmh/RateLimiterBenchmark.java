@@ -0,0 +1,81 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Permits per second handed out by a shared {@link RateLimiter} as threads are added. The
+ * unlimited limiter never runs dry, so every call is a successful CAS and the result is the
+ * ceiling of the limiter itself. The exhausted one turns every caller away, which must only read
+ * the shared word and scale with the number of cores.
+ */
+// Fully qualified, the circuit breaker State enum lives in the same package
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    private CachedNanoClock cachedClock;
+    private RateLimiter unlimited;
+    private RateLimiter unlimitedCachedClock;
+    private RateLimiter exhausted;
+
+    @Setup
+    public void setUp() {
+        cachedClock = new CachedNanoClock(1);
+        //Far more permits than any machine can take, with room for a burst of a whole tick
+        unlimited = new RateLimiter(1e12, 1_000_000);
+        unlimitedCachedClock = new RateLimiter(1e12, 1_000_000, cachedClock);
+        exhausted = new RateLimiter(1, 1);
+        exhausted.tryAcquire();
+    }
+
+    @TearDown
+    public void tearDown() {
+        cachedClock.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean tryAcquire1Thread() {
+        return unlimited.tryAcquire();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean tryAcquire4Threads() {
+        return unlimited.tryAcquire();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean tryAcquire16Threads() {
+        return unlimited.tryAcquire();
+    }
+
+    // Without a System.nanoTime() call per permit, only the CAS is left
+    @Benchmark
+    @Threads(16)
+    public boolean tryAcquire16ThreadsCachedClock() {
+        return unlimitedCachedClock.tryAcquire();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean tryAcquireExhausted16Threads() {
+        return exhausted.tryAcquire();
+    }
+}
@@ -0,0 +1,68 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Contention on the state word when many threads record outcomes on a shared circuit breaker.
+ * The threshold is never reached, so every call is a CAS on the CLOSED failure count.
+ */
+// Fully qualified, the circuit breaker State enum lives in the same package
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordFailureBenchmark {
+
+    private static final RemoteServiceException FAILURE = new RemoteServiceException("Failure");
+
+    private DefaultCircuitBreaker<String> circuitBreaker;
+
+    @Setup
+    public void setUp() {
+        circuitBreaker = new DefaultCircuitBreaker<>(new QuickRemoteService(), 3000,
+                Integer.MAX_VALUE, 1000L * 1000 * 1000);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void recordFailure1Thread() {
+        circuitBreaker.recordFailure(FAILURE);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordFailure4Threads() {
+        circuitBreaker.recordFailure(FAILURE);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void recordFailure16Threads() {
+        circuitBreaker.recordFailure(FAILURE);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void recordFailure64Threads() {
+        circuitBreaker.recordFailure(FAILURE);
+    }
+
+    // Successes on a clean circuit take the read-only fast path and should not contend at all
+    @Benchmark
+    @Threads(64)
+    public void recordSuccess64Threads() {
+        circuitBreaker.recordSuccess();
+    }
+}
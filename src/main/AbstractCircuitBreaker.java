@@ -0,0 +1,805 @@
+package main;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Lock-free state machine shared by the circuit breaker implementations. Subclasses only decide
+ * when a CLOSED circuit has seen enough trouble to trip.
+ *
+ * @param <T> type of the responses of the protected service
+ */
+public abstract class AbstractCircuitBreaker<T> implements CircuitBreaker<T> {
+
+    // The whole state machine lives in a single 64 bit word so that every transition is one CAS.
+    // The top two bits hold the State ordinal, the next 8 bits the epoch, the remaining 54 bits
+    // are a state specific payload:
+    //   CLOSED    -> owned by the subclass, e.g. number of consecutive failures
+    //   OPEN      -> attempt (6 bits) and the time (relative to baseTime, 48 bits) at which the
+    //                next trial request may go through
+    //   HALF_OPEN -> attempt (6 bits), trial permits handed out, successes and failures seen,
+    //                16 bits each
+    // The attempt counts the times the circuit opened in a row and is carried through HALF_OPEN,
+    // so that the wait interval can grow while the service stays down.
+    // The epoch counts the state changes, so the CAS that changes the state also decides the
+    // position of its event in the stream, whatever order the threads publish in.
+    private static final int STATE_SHIFT = 62;
+    private static final int EPOCH_SHIFT = 54;
+    private static final long EPOCH_MASK = 0xFF;
+    private static final long PAYLOAD_MASK = (1L << EPOCH_SHIFT) - 1;
+    private static final int ATTEMPT_SHIFT = 48;
+    private static final int MAX_ATTEMPT = 0x3F;
+    private static final long DEADLINE_MASK = (1L << ATTEMPT_SHIFT) - 1;
+    // Deadlines wrap around in 48 bits, they are compared like TCP sequence numbers, which is
+    // correct for any wait interval below half the range
+    private static final long MAX_WAIT_INTERVAL = 1L << (ATTEMPT_SHIFT - 2);
+    private static final int TRIAL_BITS = 16;
+    private static final long TRIAL_MASK = (1L << TRIAL_BITS) - 1;
+    private static final long TRIAL_PERMIT = 1L << (2 * TRIAL_BITS);
+    private static final long TRIAL_SUCCESS = 1L << TRIAL_BITS;
+    private static final long TRIAL_FAILURE = 1L;
+    static final int MAX_TRIAL_CALLS = (int) TRIAL_MASK;
+    // Returned by acquirePermission for a call that is not permitted
+    private static final int NOT_PERMITTED = -1;
+    // Epoch of an outcome reported through the public API, which does not say when the call was
+    // admitted
+    private static final int ANY_EPOCH = -1;
+    private static final State[] STATES = State.values();
+    // Number of recent state transitions kept for monitoring
+    private static final int EVENT_BUFFER_SIZE = 64;
+    // Outcomes of other nodes recorded at once, more are scaled down to this many. More than any
+    // window needs to reflect their failure rate
+    static final int MAX_REMOTE_OUTCOMES = 1024;
+
+    private final long timeout;
+    private final long slowCallDurationThreshold;
+    private final IntervalStrategy waitInterval;
+    private final RemoteService<T> service;
+    // Created once, so that attemptRequest does not allocate even where the JIT cannot prove
+    // that a method reference does not escape
+    private final Callable<T> serviceCall;
+    private final int permittedCallsInHalfOpen;
+    // Successful trial calls needed to close the circuit again
+    private final int requiredTrialSuccesses;
+    protected final NanoClock clock;
+    // Origin for the OPEN timestamp so that it always fits into the payload
+    private final long baseTime;
+    private final AtomicLong ctl;
+    // Decides which errors count as failures, any other error counts as a response of a healthy
+    // service, e.g. a validation error
+    private final Predicate<Throwable> recordFailurePredicate;
+    // Value returned instead of calling the service while the circuit is OPEN, null to rethrow
+    // the last failure instead
+    private final Function<Throwable, ? extends T> fallback;
+    private volatile Throwable lastFailure;
+    // Preallocated so that turning callers away does not create garbage
+    private final CallNotPermittedException callNotPermitted;
+    private final CircuitBreakerMetrics metrics = new CircuitBreakerMetrics();
+    private final CircuitBreakerEvents events = new CircuitBreakerEvents(EVENT_BUFFER_SIZE);
+
+    /**
+     * Constructor for the shared part of a circuit breaker.
+     *
+     * @param timeout                   Timeout, in milliseconds, for the API request. Calls running
+     *                                  longer are interrupted and count as failures. Zero or less
+     *                                  disables the timeout
+     * @param slowCallDurationThreshold Time, in nanoseconds, above which a call counts as slow
+     * @param waitInterval              Time to wait while OPEN, before a new request is made to
+     *                                  remote service for status check. At most about 19 hours
+     * @param permittedCallsInHalfOpen  Number of trial requests let through to the remote service
+     *                                  while HALF_OPEN. Other callers get the cached failure
+     *                                  response
+     * @param halfOpenSuccessRatio      Fraction, in (0, 1], of the trial requests that must
+     *                                  succeed for the circuit to close. Otherwise it opens again
+     * @param recordFailurePredicate    Decides which errors of the service count as failures. Other
+     *                                  errors count as successful calls
+     * @param fallback                  Computes the response, from the last failure, while the
+     *                                  circuit does not permit calls. Null to throw
+     *                                  CallNotPermittedException instead
+     * @param clock                     Source of time for retry periods and call durations
+     */
+    protected AbstractCircuitBreaker(RemoteService<T> serviceToCall, long timeout,
+                                     long slowCallDurationThreshold, IntervalStrategy waitInterval,
+                                     int permittedCallsInHalfOpen, double halfOpenSuccessRatio,
+                                     Predicate<Throwable> recordFailurePredicate,
+                                     Function<Throwable, ? extends T> fallback, NanoClock clock) {
+        if (permittedCallsInHalfOpen < 1 || permittedCallsInHalfOpen > MAX_TRIAL_CALLS) {
+            throw new IllegalArgumentException("permittedCallsInHalfOpen must be between 1 and "
+                    + MAX_TRIAL_CALLS);
+        }
+        if (!(halfOpenSuccessRatio > 0 && halfOpenSuccessRatio <= 1)) {
+            throw new IllegalArgumentException("halfOpenSuccessRatio must be in (0, 1]");
+        }
+        this.service = serviceToCall;
+        this.serviceCall = () -> service.call();
+        this.recordFailurePredicate = recordFailurePredicate;
+        this.fallback = fallback;
+        this.callNotPermitted = new CallNotPermittedException(() -> this.lastFailure);
+        this.permittedCallsInHalfOpen = permittedCallsInHalfOpen;
+        this.requiredTrialSuccesses = Math.max(1,
+                (int) Math.ceil(permittedCallsInHalfOpen * halfOpenSuccessRatio - 1e-9));
+        // Timeout for the API request.
+        // Used to break the calls made to remote resource if it exceeds the limit
+        this.timeout = timeout;
+        this.slowCallDurationThreshold = slowCallDurationThreshold;
+        this.waitInterval = waitInterval;
+        this.clock = clock;
+        this.baseTime = clock.nanoTime();
+        // We start in a closed state hoping that everything is fine
+        this.ctl = new AtomicLong(pack(State.CLOSED, 0));
+    }
+
+    static long pack(State state, long payload) {
+        return ((long) state.ordinal() << STATE_SHIFT) | (payload & PAYLOAD_MASK);
+    }
+
+    // The word following current, counting a change of state in the epoch
+    static long nextWord(long current, State state, long payload) {
+        long epoch = epochOf(current);
+        if (stateOf(current) != state) {
+            epoch = (epoch + 1) & EPOCH_MASK;
+        }
+        return pack(state, payload) | (epoch << EPOCH_SHIFT);
+    }
+
+    static State stateOf(long word) {
+        return STATES[(int) (word >>> STATE_SHIFT)];
+    }
+
+    static long payloadOf(long word) {
+        return word & PAYLOAD_MASK;
+    }
+
+    static int epochOf(long word) {
+        return (int) ((word >>> EPOCH_SHIFT) & EPOCH_MASK);
+    }
+
+    static int attemptOf(long word) {
+        return (int) (payloadOf(word) >>> ATTEMPT_SHIFT);
+    }
+
+    private static long trialPermitsOf(long word) {
+        return (payloadOf(word) >>> (2 * TRIAL_BITS)) & TRIAL_MASK;
+    }
+
+    // Trial calls that reported their outcome, successes and failures
+    private static long trialOutcomesOf(long word) {
+        return ((payloadOf(word) >>> TRIAL_BITS) & TRIAL_MASK) + (payloadOf(word) & TRIAL_MASK);
+    }
+
+    // Decide if an outcome reported while HALF_OPEN is the outcome of a trial call. A call admitted
+    // before the circuit went HALF_OPEN, e.g. while it was still CLOSED, may finish while HALF_OPEN
+    // but says nothing about the trial. Outcomes that do not know their epoch are only counted
+    // while some trial permit has not reported yet
+    private static boolean isTrialOutcome(long halfOpenWord, int epoch) {
+        return (epoch == ANY_EPOCH || epoch == epochOf(halfOpenWord))
+                && trialPermitsOf(halfOpenWord) > trialOutcomesOf(halfOpenWord);
+    }
+
+    // Open the circuit for the given attempt, waiting the interval of the strategy from now
+    private long openWord(long current, long now, int attempt) {
+        long interval = Math.max(0,
+                Math.min(MAX_WAIT_INTERVAL, waitInterval.intervalNanos(attempt)));
+        long deadline = (now - baseTime + interval) & DEADLINE_MASK;
+        return nextWord(current, State.OPEN, ((long) attempt << ATTEMPT_SHIFT) | deadline);
+    }
+
+    // Open the circuit again after the trial requests of HALF_OPEN failed
+    private long reopenWord(long halfOpenWord, long now) {
+        return openWord(halfOpenWord, now, Math.min(MAX_ATTEMPT, attemptOf(halfOpenWord) + 1));
+    }
+
+    // Called after every successful CAS of the state word, publishes actual state changes
+    private void afterTransition(long from, long to) {
+        State fromState = stateOf(from);
+        State toState = stateOf(to);
+        if (fromState == toState) {
+            return;
+        }
+        if (toState == State.CLOSED) {
+            onClose();
+        }
+        events.publish(epochOf(to), fromState, toState, clock.nanoTime());
+    }
+
+    private boolean waitIntervalElapsed(long openWord) {
+        long late = (clock.nanoTime() - baseTime - (payloadOf(openWord) & DEADLINE_MASK))
+                << (64 - ATTEMPT_SHIFT) >> (64 - ATTEMPT_SHIFT);
+        return late > 0;
+    }
+
+    /**
+     * Record the outcome of a call before the state word is updated. Called exactly once per
+     * outcome, whatever the state, so implementations may keep statistics here. Also called while
+     * CLOSED for the outcomes of calls made by other nodes, see recordRemoteOutcomes.
+     *
+     * @param failure true if the call failed
+     * @param slow    true if the call took longer than slowCallDurationThreshold
+     */
+    protected void recordOutcome(boolean failure, boolean slow) {
+    }
+
+    /**
+     * Compute the CLOSED payload after an outcome. Must be free of side effects as it may be
+     * called more than once when the CAS is retried.
+     *
+     * @param payload the current CLOSED payload
+     * @param failure true if the call failed
+     * @return the new CLOSED payload
+     */
+    protected abstract long closedPayloadAfter(long payload, boolean failure);
+
+    /**
+     * Compute the CLOSED payload after an outcome of a call made by another node. Same as
+     * closedPayloadAfter unless overridden, e.g. so that a success elsewhere does not reset a
+     * count of local failures.
+     *
+     * @param payload the current CLOSED payload
+     * @param failure true if the call failed
+     * @return the new CLOSED payload
+     */
+    protected long closedPayloadAfterRemote(long payload, boolean failure) {
+        return closedPayloadAfter(payload, failure);
+    }
+
+    /**
+     * Decide if the circuit should open after an outcome was recorded while CLOSED.
+     *
+     * @param payload the CLOSED payload including that call
+     * @return true to open the circuit
+     */
+    protected abstract boolean shouldTrip(long payload);
+
+    // Called after the circuit has been closed, to drop statistics of the previous period
+    protected void onClose() {
+    }
+
+    // The CLOSED payload, or -1 if the circuit is not CLOSED
+    protected long closedPayload() {
+        long current = ctl.get();
+        return stateOf(current) == State.CLOSED ? payloadOf(current) : -1;
+    }
+
+    // Reset the failure count while CLOSED, or count a successful trial request while HALF_OPEN.
+    // Ignored while OPEN
+    @Override
+    public void recordSuccess() {
+        recordSuccess(0, ANY_EPOCH);
+    }
+
+    /**
+     * Record a successful call that took the given time.
+     *
+     * @param durationNanos time the call took, in nanoseconds
+     * @param epoch         epoch of the state word the call was admitted in, or ANY_EPOCH
+     */
+    private void recordSuccess(long durationNanos, int epoch) {
+        boolean slow = durationNanos >= slowCallDurationThreshold;
+        if (slow && stateOf(ctl.get()) == State.HALF_OPEN) {
+            // A trial request that is still slow does not prove the service has recovered
+            recordFailure(null, durationNanos, epoch);
+            return;
+        }
+        metrics.onSuccess(slow);
+        recordOutcome(false, slow);
+        for (;;) {
+            long current = ctl.get();
+            long next;
+            switch (stateOf(current)) {
+                case CLOSED:
+                    long payload = closedPayloadAfter(payloadOf(current), false);
+                    // A success may be the call that fills the window up to its minimum number
+                    // of calls, so the rates are checked after every outcome
+                    next = shouldTrip(payload)
+                            ? openWord(current, clock.nanoTime(), 1)
+                            : nextWord(current, State.CLOSED, payload);
+                    // Nothing to reset, don't dirty the cache line shared by every caller
+                    if (current == next) {
+                        return;
+                    }
+                    break;
+                case HALF_OPEN:
+                    if (!isTrialOutcome(current, epoch)) {
+                        return;
+                    }
+                    next = current + TRIAL_SUCCESS;
+                    if (((payloadOf(next) >>> TRIAL_BITS) & TRIAL_MASK) >= requiredTrialSuccesses) {
+                        //Enough trial requests went through, the service is back
+                        next = nextWord(current, State.CLOSED, 0);
+                    }
+                    break;
+                default:
+                    // Already OPEN, a late success of a call let through before the circuit
+                    // tripped must not close it again
+                    return;
+            }
+            if (ctl.compareAndSet(current, next)) {
+                afterTransition(current, next);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void recordFailure(Throwable error) {
+        recordFailure(error, 0, ANY_EPOCH);
+    }
+
+    /**
+     * Record a failed call that took the given time.
+     *
+     * @param error         cause of the failure, handed to the fallback while the circuit is OPEN.
+     *                      Null keeps the previous one
+     * @param durationNanos time the call took, in nanoseconds
+     * @param epoch         epoch of the state word the call was admitted in, or ANY_EPOCH
+     */
+    private void recordFailure(Throwable error, long durationNanos, int epoch) {
+        // Cache the failure for the fallback on open state
+        if (error != null) {
+            this.lastFailure = error;
+        }
+        boolean slow = durationNanos >= slowCallDurationThreshold;
+        metrics.onFailure(slow);
+        recordOutcome(true, slow);
+        for (;;) {
+            long current = ctl.get();
+            long next;
+            switch (stateOf(current)) {
+                case CLOSED:
+                    long payload = closedPayloadAfter(payloadOf(current), true);
+                    next = shouldTrip(payload)
+                            ? openWord(current, clock.nanoTime(), 1)
+                            : nextWord(current, State.CLOSED, payload);
+                    if (current == next) {
+                        return;
+                    }
+                    break;
+                case HALF_OPEN:
+                    if (!isTrialOutcome(current, epoch)) {
+                        return;
+                    }
+                    next = current + TRIAL_FAILURE;
+                    if ((payloadOf(next) & TRIAL_MASK)
+                            > permittedCallsInHalfOpen - requiredTrialSuccesses) {
+                        // Too many trial requests failed, so the service is still down
+                        next = reopenWord(current, clock.nanoTime());
+                    }
+                    break;
+                default:
+                    // Already OPEN, a late failure must not push the retry further away
+                    return;
+            }
+            if (ctl.compareAndSet(current, next)) {
+                afterTransition(current, next);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Count the outcomes of calls other nodes made to the same service, e.g. received by a
+     * {@link ClusterStateSync}, towards the decision to trip while CLOSED. They are not calls of
+     * this node, so they are not in its metrics, and they are ignored in the other states. The
+     * order of the calls is not known, they are taken as evenly interleaved.
+     *
+     * @param failures  number of failed calls
+     * @param successes number of successful calls
+     */
+    @Override
+    public void recordRemoteOutcomes(long failures, long successes) {
+        if (failures < 0 || successes < 0 || failures + successes <= 0
+                || stateOf(ctl.get()) != State.CLOSED) {
+            return;
+        }
+        int calls = (int) Math.min(MAX_REMOTE_OUTCOMES, failures + successes);
+        int failed = (int) Math.round((double) failures / (failures + successes) * calls);
+        for (int i = 0; i < calls; i++) {
+            recordOutcome(isRemoteFailure(i, failed, calls), false);
+        }
+        for (;;) {
+            long current = ctl.get();
+            if (stateOf(current) != State.CLOSED) {
+                return;
+            }
+            long payload = payloadOf(current);
+            for (int i = 0; i < calls; i++) {
+                payload = closedPayloadAfterRemote(payload, isRemoteFailure(i, failed, calls));
+            }
+            long next = shouldTrip(payload)
+                    ? openWord(current, clock.nanoTime(), 1)
+                    : nextWord(current, State.CLOSED, payload);
+            if (current == next) {
+                return;
+            }
+            if (ctl.compareAndSet(current, next)) {
+                afterTransition(current, next);
+                return;
+            }
+        }
+    }
+
+    // Spreads the failed calls evenly among the calls
+    private static boolean isRemoteFailure(int call, int failed, int calls) {
+        return (long) (call + 1) * failed / calls > (long) call * failed / calls;
+    }
+
+    // Evaluate the current state, moving from OPEN to HALF_OPEN once the wait interval has elapsed.
+    protected State evaluateState() {
+        return stateOf(evaluate());
+    }
+
+    // The current state word, after moving from OPEN to HALF_OPEN if the wait interval elapsed
+    private long evaluate() {
+        for (;;) {
+            long current = ctl.get();
+            if (stateOf(current) != State.OPEN || !waitIntervalElapsed(current)) {
+                //Service would still probably be down, or the state is not OPEN
+                return current;
+            }
+            //We have waited long enough and should try checking if service is up.
+            //Only one thread wins the CAS, the others re-read the new state.
+            long next = nextWord(current, State.HALF_OPEN,
+                    (long) attemptOf(current) << ATTEMPT_SHIFT);
+            if (ctl.compareAndSet(current, next)) {
+                afterTransition(current, next);
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Decide if a request may go through to the remote service. While HALF_OPEN only
+     * permittedCallsInHalfOpen callers get a permit, everybody else is turned away without blocking.
+     * A caller that gets a permit must report the outcome with recordSuccess or recordFailure.
+     *
+     * @return true if the caller may call the remote service
+     */
+    @Override
+    public boolean tryAcquirePermission() {
+        return acquirePermission() != NOT_PERMITTED;
+    }
+
+    // Take a permit, returns the epoch of the state word it was granted in, so that the outcome
+    // of the call is only counted as a trial if it was admitted as one. NOT_PERMITTED if the
+    // call may not go through
+    private int acquirePermission() {
+        for (;;) {
+            long current = evaluate();
+            State state = stateOf(current);
+            if (state == State.CLOSED) {
+                return epochOf(current);
+            }
+            if (state == State.OPEN || trialPermitsOf(current) >= permittedCallsInHalfOpen) {
+                metrics.onRejected();
+                return NOT_PERMITTED;
+            }
+            // Fails if someone took a permit, closed or re-opened the circuit meanwhile
+            if (ctl.compareAndSet(current, current + TRIAL_PERMIT)) {
+                return epochOf(current);
+            }
+        }
+    }
+
+    /**
+     * Give back a permit without recording an outcome, for a call that was never made. Frees the
+     * trial permit while HALF_OPEN, nothing to do in the other states.
+     */
+    @Override
+    public void releasePermission() {
+        releasePermission(ANY_EPOCH);
+    }
+
+    private void releasePermission(int epoch) {
+        for (;;) {
+            long current = ctl.get();
+            if (stateOf(current) != State.HALF_OPEN || !isTrialOutcome(current, epoch)) {
+                // Not a trial permit, or every trial permit already reported
+                return;
+            }
+            if (ctl.compareAndSet(current, current - TRIAL_PERMIT)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get the current state without changing it. An OPEN circuit whose wait interval has
+     * elapsed is reported as HALF_OPEN, as the next caller will find it, but the transition itself
+     * is left to that caller.
+     *
+     * @return name of the state
+     */
+    @Override
+    public String getState() {
+        long current = ctl.get();
+        State state = stateOf(current);
+        if (state == State.OPEN && waitIntervalElapsed(current)) {
+            return State.HALF_OPEN.name();
+        }
+        return state.name();
+    }
+
+    @Override
+    public long getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public CircuitBreakerMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public CircuitBreakerEvents getEvents() {
+        return events;
+    }
+
+    /**
+     * Capture the state of this circuit breaker, e.g. to restore it after a restart.
+     *
+     * @return state, counters and window of this circuit breaker as of now
+     */
+    public CircuitBreakerSnapshot snapshot() {
+        long current = ctl.get();
+        long now = clock.nanoTime();
+        State state = stateOf(current);
+        if (state == State.CLOSED) {
+            return new CircuitBreakerSnapshot(state, 0, payloadOf(current), 0, snapshotWindow(),
+                    now);
+        }
+        long remainingWait = 0;
+        if (state == State.OPEN) {
+            long remaining = ((payloadOf(current) & DEADLINE_MASK) - (now - baseTime))
+                    << (64 - ATTEMPT_SHIFT) >> (64 - ATTEMPT_SHIFT);
+            remainingWait = Math.max(0, remaining);
+        }
+        return new CircuitBreakerSnapshot(state, attemptOf(current), 0, remainingWait,
+                snapshotWindow(), now);
+    }
+
+    /**
+     * Restore a snapshot of an identically configured circuit breaker, e.g. taken before a restart,
+     * so that a circuit that was OPEN does not let a flood of calls through to a service that is
+     * still down. An OPEN circuit only waits for what was left of its wait interval. A HALF_OPEN
+     * circuit comes back OPEN with its wait interval elapsed, its trial calls were lost.
+     * Must not be called while calls go through the circuit breaker.
+     *
+     * @param snapshot the snapshot, its time taken read from the clock of this circuit breaker
+     */
+    public void restore(CircuitBreakerSnapshot snapshot) {
+        long now = clock.nanoTime();
+        long elapsed = Math.max(0, now - snapshot.getTakenAt());
+        State state = snapshot.getState() == State.CLOSED ? State.CLOSED : State.OPEN;
+        long payload;
+        if (state == State.CLOSED) {
+            payload = snapshot.getClosedPayload();
+        } else {
+            // -1 makes the deadline already passed, even on a clock that does not move
+            long remaining = snapshot.getState() == State.OPEN
+                    ? Math.min(MAX_WAIT_INTERVAL, snapshot.getRemainingWait() - elapsed) : -1;
+            long deadline = (now - baseTime + Math.max(-1, remaining)) & DEADLINE_MASK;
+            int attempt = Math.max(1, Math.min(MAX_ATTEMPT, snapshot.getAttempt()));
+            payload = ((long) attempt << ATTEMPT_SHIFT) | deadline;
+        }
+        long previous;
+        long next;
+        do {
+            previous = ctl.get();
+            next = nextWord(previous, state, payload);
+        } while (!ctl.compareAndSet(previous, next));
+        afterTransition(previous, next);
+        // After the transition, closing the circuit drops the window
+        restoreWindow(snapshot.getWindow(), elapsed);
+    }
+
+    // Statistics of the CLOSED period kept outside the state word, null if there are none
+    protected long[] snapshotWindow() {
+        return null;
+    }
+
+    // Restore the statistics of snapshotWindow(), taken elapsedNanos ago
+    protected void restoreWindow(long[] window, long elapsedNanos) {
+    }
+
+    /**
+     * Break the circuit beforehand if it is known service is down Or connect the circuit manually if
+     * service comes online before expected.
+     *
+     * @param state State at which circuit is in
+     */
+    @Override
+    public void setState(State state) {
+        long now = clock.nanoTime();
+        long previous;
+        long next;
+        do {
+            previous = ctl.get();
+            switch (state) {
+                case OPEN:
+                    next = openWord(previous, now, 1);
+                    break;
+                case HALF_OPEN:
+                    next = nextWord(previous, State.HALF_OPEN, 0);
+                    break;
+                default:
+                    next = nextWord(previous, State.CLOSED, 0);
+            }
+        } while (!ctl.compareAndSet(previous, next));
+        if (state == State.CLOSED && stateOf(previous) == State.CLOSED) {
+            // Closing a closed circuit still starts over with fresh statistics
+            onClose();
+        }
+        afterTransition(previous, next);
+    }
+
+    /**
+     * Executes service call.
+     *
+     * @return Value from the remote resource, fallback response or a custom exception
+     */
+    @Override
+    public T attemptRequest() throws RemoteServiceException {
+        try {
+            return execute(serviceCall);
+        } catch (RemoteServiceException | RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            // service.call() only throws RemoteServiceException, execute() accepts any Callable
+            throw new RemoteServiceException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Executes any call under the protection of this circuit breaker.
+     *
+     * @param callable the call to the remote resource
+     * @return Value from the call or the fallback response
+     * @throws CallNotPermittedException if the circuit is OPEN and has no fallback
+     * @throws Exception                 the error of the call
+     */
+    @Override
+    public T execute(Callable<? extends T> callable) throws Exception {
+        int epoch = acquirePermission();
+        if (epoch == NOT_PERMITTED) {
+            // Use the fallback if the circuit is OPEN, or HALF_OPEN with all trial requests
+            // already taken
+            return rejected();
+        }
+        // Make the API request if the circuit is not OPEN
+        long start = clock.nanoTime();
+        try {
+            //The call runs on the caller thread, a watchdog interrupts it if it exceeds
+            //the timeout so that a hung service cannot pin the thread
+            T response = TimeLimiter.call(callable, timeout, clock, start);
+            // Yay!! the API responded fine. Let's reset everything.
+            long duration = clock.nanoTime() - start;
+            metrics.onCallFinished(duration);
+            recordSuccess(duration, epoch);
+            return response;
+        } catch (Exception | Error ex) {
+            // Errors are recorded too, a trial permit must never leak, otherwise HALF_OPEN would
+            // turn everybody away
+            recordError(ex, clock.nanoTime() - start, epoch);
+            throw ex;
+        }
+    }
+
+    private void recordError(Throwable error, long durationNanos, int epoch) {
+        if (error instanceof BulkheadFullException || error instanceof RateLimitExceededException
+                || error instanceof CallCancelledException) {
+            // The call never reached the service, or was abandoned by the caller, so it says
+            // nothing about its health
+            metrics.onIgnored();
+            releasePermission(epoch);
+            return;
+        }
+        metrics.onCallFinished(durationNanos);
+        if (error instanceof CallTimeoutException) {
+            metrics.onTimeout();
+        }
+        if (recordFailurePredicate.test(error)) {
+            recordFailure(error, durationNanos, epoch);
+        } else {
+            recordSuccess(durationNanos, epoch);
+        }
+    }
+
+    // Response for a caller that is not permitted to call the service
+    private T rejected() throws CallNotPermittedException {
+        if (fallback == null) {
+            throw callNotPermitted;
+        }
+        return fallbackResponse();
+    }
+
+    private T fallbackResponse() {
+        Throwable failure = this.lastFailure;
+        return fallback.apply(failure != null ? failure : callNotPermitted);
+    }
+
+    /**
+     * Executes service call without blocking the caller. An {@link AsyncRemoteService} is called
+     * directly, any other service runs on a virtual thread when the JVM supports them.
+     *
+     * @return future of the value from the remote resource or the fallback response
+     */
+    @Override
+    public CompletableFuture<T> attemptRequestAsync() {
+        return attemptRequestAsync(RemoteCallExecutors.defaultExecutor());
+    }
+
+    /**
+     * Executes service call without blocking the caller. The timeout is enforced by completing the
+     * future exceptionally, a blocking call that overruns it is abandoned and its late result is
+     * ignored.
+     *
+     * @param executor executor to run a blocking remote service on
+     * @return future of the value from the remote resource or the fallback response
+     */
+    @Override
+    public CompletableFuture<T> attemptRequestAsync(Executor executor) {
+        int epoch = acquirePermission();
+        if (epoch == NOT_PERMITTED) {
+            if (fallback == null) {
+                // Only the exception is shared, every caller gets a future of its own as it may
+                // complete it or chain onto it
+                return CompletableFuture.failedFuture(callNotPermitted);
+            }
+            return CompletableFuture.completedFuture(fallbackResponse());
+        }
+        long start = clock.nanoTime();
+        CompletableFuture<T> source = null;
+        CompletableFuture<T> call;
+        try {
+            if (service instanceof AsyncRemoteService) {
+                // Copy so that the timeout below does not complete the service's own future
+                source = ((AsyncRemoteService<T>) service).callAsync().toCompletableFuture();
+                call = source.copy();
+            } else {
+                call = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return service.call();
+                    } catch (RemoteServiceException ex) {
+                        throw new CompletionException(ex);
+                    }
+                }, executor);
+            }
+        } catch (RuntimeException ex) {
+            // Rejected by the executor, or the service failed before returning a future
+            recordError(ex, clock.nanoTime() - start, epoch);
+            return CompletableFuture.failedFuture(ex);
+        }
+        if (timeout > 0) {
+            call.orTimeout(timeout, TimeUnit.MILLISECONDS);
+        }
+        CompletableFuture<T> serviceResponse = source;
+        return call.handle((response, error) -> {
+            long duration = clock.nanoTime() - start;
+            if (error == null) {
+                metrics.onCallFinished(duration);
+                recordSuccess(duration, epoch);
+                return response;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            if (cause instanceof TimeoutException) {
+                cause = new CallTimeoutException(timeout);
+                if (serviceResponse != null) {
+                    // Tell the service the call was given up, e.g. so that a bulkhead drops it
+                    // from its queue
+                    serviceResponse.cancel(false);
+                }
+            }
+            recordError(cause, duration, epoch);
+            throw cause instanceof CompletionException
+                    ? (CompletionException) cause : new CompletionException(cause);
+        });
+    }
+}
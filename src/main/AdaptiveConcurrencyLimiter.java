@@ -0,0 +1,141 @@
+package main;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the number of concurrent calls to a remote service like a bulkhead, but with a limit that a
+ * {@link LimitAlgorithm} keeps adjusting from the round-trip times of the calls. When the service
+ * slows down under load, the limit shrinks and excess calls are shed straight away, which keeps
+ * the latency of the admitted calls bounded long before the service fails and trips its circuit
+ * breaker.
+ *
+ * <p>Finished calls are aggregated into windows of samples without a lock, and the limit is updated
+ * once per window by whichever thread completes it. Samples that arrive while another thread
+ * updates the limit go into the next window.
+ *
+ * <p>Shed calls get a preallocated {@link BulkheadFullException}, which circuit breakers ignore.
+ *
+ * @param <T> type of the responses of the protected service
+ */
+public class AdaptiveConcurrencyLimiter<T> implements RemoteService<T> {
+
+    // Samples of the window in the low 32 bits, dropped calls among them in the high 32 bits
+    private static final long SAMPLE = 1L;
+    private static final long DROPPED = 1L << 32;
+
+    private final RemoteService<T> service;
+    private final LimitAlgorithm algorithm;
+    private final NanoClock clock;
+    private final int windowSize;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong windowSamples = new AtomicLong();
+    private final AtomicLong windowRtt = new AtomicLong();
+    private final AtomicInteger windowInFlight = new AtomicInteger();
+    // Held by the thread updating the limit, the algorithm may keep state between updates
+    private final AtomicBoolean updating = new AtomicBoolean();
+    private final LongAdder rejectedCalls = new LongAdder();
+    private volatile int limit;
+    // Preallocated so that shedding load does not create garbage
+    private final BulkheadFullException limitReached =
+            new BulkheadFullException("Concurrency limit reached");
+
+    /**
+     * Constructor to create a limiter that updates the limit after every call, or after every
+     * batch of calls that finished while the previous update was running.
+     *
+     * @param serviceToCall the service protected by the limiter
+     * @param algorithm     estimates the limit, e.g. {@link AimdLimit} or {@link GradientLimit}. Not
+     *                      to be shared with other limiters
+     * @param clock         source of time for the round-trip times
+     */
+    public AdaptiveConcurrencyLimiter(RemoteService<T> serviceToCall, LimitAlgorithm algorithm,
+                                      NanoClock clock) {
+        this(serviceToCall, algorithm, clock, 1);
+    }
+
+    /**
+     * Constructor to create a limiter that updates the limit once per window of calls.
+     *
+     * @param windowSize number of finished calls the limit is updated after, from their average
+     *                   round-trip time
+     */
+    public AdaptiveConcurrencyLimiter(RemoteService<T> serviceToCall, LimitAlgorithm algorithm,
+                                      NanoClock clock, int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be positive");
+        }
+        this.service = serviceToCall;
+        this.algorithm = algorithm;
+        this.clock = clock;
+        this.windowSize = windowSize;
+        this.limit = algorithm.getInitialLimit();
+    }
+
+    @Override
+    public T call() throws RemoteServiceException {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                rejectedCalls.increment();
+                throw limitReached;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        long start = clock.nanoTime();
+        boolean dropped = true;
+        try {
+            T response = service.call();
+            dropped = false;
+            return response;
+        } catch (RuntimeException ex) {
+            // A bug or a bad request, not a sign of overload
+            dropped = false;
+            throw ex;
+        } finally {
+            inFlight.decrementAndGet();
+            onSample(clock.nanoTime() - start, current + 1, dropped);
+        }
+    }
+
+    // Add the sample to the window, and update the limit if that completed it. The round-trip
+    // time goes in before the count, so the thread seeing a full window sees it too
+    private void onSample(long rttNanos, int inFlightAtStart, boolean dropped) {
+        windowRtt.addAndGet(rttNanos);
+        windowInFlight.accumulateAndGet(inFlightAtStart, Math::max);
+        windowSamples.addAndGet(dropped ? DROPPED + SAMPLE : SAMPLE);
+        // A thread losing the race leaves its sample to the winner, or to the next window
+        while ((int) windowSamples.get() >= windowSize && updating.compareAndSet(false, true)) {
+            try {
+                long samples = windowSamples.getAndSet(0);
+                int count = (int) samples;
+                if (count >= windowSize) {
+                    limit = algorithm.update(limit, windowRtt.getAndSet(0) / count,
+                            windowInFlight.getAndSet(0), samples >>> 32 > 0);
+                } else {
+                    // The previous update drained the window between the check and the CAS
+                    windowSamples.addAndGet(samples);
+                }
+            } finally {
+                updating.set(false);
+            }
+        }
+    }
+
+    // Current estimate of the number of concurrent calls the service can take
+    public int getLimit() {
+        return limit;
+    }
+
+    // Number of calls currently running
+    public int getConcurrentCalls() {
+        return inFlight.get();
+    }
+
+    // Number of calls shed since the limiter was created
+    public long getRejectedCalls() {
+        return rejectedCalls.sum();
+    }
+}
@@ -0,0 +1,173 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Adaptive concurrency limiter test
+ */
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long MILLIS = 1000L * 1000;
+
+    @Test
+    void testAimdLimit() {
+        var aimd = new AimdLimit(10, 2, 12, 0.5, 100 * MILLIS);
+        //Grows only while the limit is in use
+        assertEquals(11, aimd.update(10, MILLIS, 10, false));
+        assertEquals(10, aimd.update(10, MILLIS, 2, false));
+        assertEquals(12, aimd.update(12, MILLIS, 12, false));
+        //Halves on a drop or a call slower than the timeout
+        assertEquals(5, aimd.update(10, MILLIS, 10, true));
+        assertEquals(5, aimd.update(10, 200 * MILLIS, 10, false));
+        assertEquals(2, aimd.update(3, MILLIS, 3, true));
+    }
+
+    @Test
+    void testGradientLimitFollowsLatency() {
+        var gradient = new GradientLimit(20, 1, 200);
+        int limit = gradient.getInitialLimit();
+        //Steady latency with the limit in use lets the limit grow
+        for (int i = 0; i < 100; i++) {
+            limit = gradient.update(limit, 10 * MILLIS, limit, false);
+        }
+        int grown = limit;
+        assertTrue(grown > 40, "limit " + grown);
+        //Calls queue up in the service and get four times slower, the limit shrinks
+        for (int i = 0; i < 20; i++) {
+            limit = gradient.update(limit, 40 * MILLIS, limit, false);
+        }
+        assertTrue(limit < grown / 2, "limit " + limit + " after " + grown);
+        //Until the service is back to normal
+        for (int i = 0; i < 200; i++) {
+            limit = gradient.update(limit, 10 * MILLIS, limit, false);
+        }
+        assertTrue(limit > grown / 2, "limit " + limit);
+    }
+
+    @Test
+    void testExcessCallsAreShed() throws Exception {
+        var release = new CountDownLatch(1);
+        RemoteService<String> service = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RemoteServiceException("Interrupted", e);
+            }
+            return "Released";
+        };
+        var limiter = new AdaptiveConcurrencyLimiter<String>(service,
+                new AimdLimit(2, 1, 10, 0.5, 10_000 * MILLIS), NanoClock.SYSTEM);
+        var circuitBreaker = new DefaultCircuitBreaker<String>(limiter, 10_000, 1,
+                1000L * 1000 * 1000 * 1000);
+        var first = circuitBreaker.attemptRequestAsync();
+        var second = circuitBreaker.attemptRequestAsync();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (limiter.getConcurrentCalls() < 2) {
+            assertTrue(System.nanoTime() < deadline, "calls did not start");
+            Thread.sleep(1);
+        }
+        assertThrows(BulkheadFullException.class, circuitBreaker::attemptRequest);
+        assertEquals(1, limiter.getRejectedCalls());
+        //Shedding load is not a failure of the service
+        assertEquals("CLOSED", circuitBreaker.getState());
+        release.countDown();
+        assertEquals("Released", first.get(5, TimeUnit.SECONDS));
+        assertEquals("Released", second.get(5, TimeUnit.SECONDS));
+        assertEquals(0, limiter.getConcurrentCalls());
+    }
+
+    @Test
+    void testFailuresShrinkTheLimit() {
+        var clock = new ManualNanoClock();
+        RemoteService<String> failing = () -> {
+            clock.advance(MILLIS);
+            throw new RemoteServiceException("Overloaded");
+        };
+        var limiter = new AdaptiveConcurrencyLimiter<String>(failing,
+                new AimdLimit(16, 1, 100, 0.5, 100 * MILLIS), clock);
+        for (int i = 0; i < 3; i++) {
+            assertThrows(RemoteServiceException.class, limiter::call);
+        }
+        assertEquals(2, limiter.getLimit());
+        //A bug in the caller is not a sign of overload
+        var buggy = new AdaptiveConcurrencyLimiter<String>(() -> {
+            throw new IllegalStateException("Bug");
+        }, new AimdLimit(16, 1, 100, 0.5, 100 * MILLIS), clock);
+        assertThrows(IllegalStateException.class, buggy::call);
+        assertEquals(16, buggy.getLimit());
+    }
+
+    @Test
+    void testLimitIsUpdatedOncePerWindow() {
+        var clock = new ManualNanoClock();
+        RemoteService<String> failing = () -> {
+            clock.advance(MILLIS);
+            throw new RemoteServiceException("Overloaded");
+        };
+        var limiter = new AdaptiveConcurrencyLimiter<String>(failing,
+                new AimdLimit(16, 1, 100, 0.5, 100 * MILLIS), clock, 4);
+        for (int i = 0; i < 3; i++) {
+            assertThrows(RemoteServiceException.class, limiter::call);
+        }
+        assertEquals(16, limiter.getLimit());
+        //The fourth failure completes the window, which halves the limit once
+        assertThrows(RemoteServiceException.class, limiter::call);
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    void testConcurrentSamplesUpdateOneAtATime() throws InterruptedException {
+        var updating = new AtomicBoolean();
+        var overlaps = new AtomicInteger();
+        var updates = new AtomicInteger();
+        LimitAlgorithm checking = new LimitAlgorithm() {
+            @Override
+            public int getInitialLimit() {
+                return 1000;
+            }
+
+            @Override
+            public int update(int limit, long rttNanos, int inFlight, boolean dropped) {
+                if (!updating.compareAndSet(false, true)) {
+                    overlaps.incrementAndGet();
+                }
+                updates.incrementAndGet();
+                Thread.yield();
+                updating.set(false);
+                return limit;
+            }
+        };
+        var limiter = new AdaptiveConcurrencyLimiter<String>(new QuickRemoteService(), checking,
+                NanoClock.SYSTEM, 10);
+        var workers = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            var worker = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    try {
+                        limiter.call();
+                    } catch (RemoteServiceException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(0, overlaps.get());
+        //Samples that finished during an update were batched into the next window
+        assertTrue(updates.get() > 0 && updates.get() <= 800, "updates " + updates.get());
+        assertEquals(0, limiter.getConcurrentCalls());
+    }
+}
@@ -0,0 +1,59 @@
+package main;
+
+/**
+ * Additive increase, multiplicative decrease, as in TCP congestion control. The limit grows by one
+ * for every call that finished without trouble while the limit was actually in use, and shrinks by
+ * backoffRatio for every call that was dropped or took longer than the timeout. Reacts only to
+ * drops, so it sheds load late, but needs no tuning of latency targets.
+ */
+public final class AimdLimit implements LimitAlgorithm {
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long timeoutNanos;
+
+    /**
+     * Constructor to create the algorithm.
+     *
+     * @param initialLimit limit before the first sample
+     * @param minLimit     the limit never drops below this
+     * @param maxLimit     the limit never grows above this
+     * @param backoffRatio factor, in [0.5, 1), the limit is multiplied with on a drop
+     * @param timeoutNanos calls taking longer than this, in nanoseconds, count as dropped
+     */
+    public AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+                     long timeoutNanos) {
+        if (minLimit < 1 || minLimit > maxLimit || initialLimit < minLimit
+                || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("limits must satisfy 1 <= min <= initial <= max");
+        }
+        if (!(backoffRatio >= 0.5 && backoffRatio < 1)) {
+            throw new IllegalArgumentException("backoffRatio must be in [0.5, 1)");
+        }
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    @Override
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    @Override
+    public int update(int limit, long rttNanos, int inFlight, boolean dropped) {
+        if (dropped || rttNanos > timeoutNanos) {
+            return Math.max(minLimit, Math.min(limit - 1, (int) (limit * backoffRatio)));
+        }
+        // Only grow while the limit is what holds the callers back, otherwise a quiet period
+        // would inflate it far beyond what the service was ever seen to take
+        if (inFlight * 2 >= limit) {
+            return Math.min(maxLimit, limit + 1);
+        }
+        return limit;
+    }
+}
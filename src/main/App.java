@@ -1,7 +1,12 @@
-import static com.sun.xml.internal.ws.spi.db.BindingContextFactory.LOGGER;
+package main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class App {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(App.class);
+
     /**
      * Program entry point.
      *
@@ -12,16 +17,25 @@ public class App {
         long serverStartTime = System.nanoTime();
 
         DelayedRemoteService delayedService = new DelayedRemoteService(serverStartTime, 5);
-        DefaultCircuitBreaker delayedServiceCircuitBreaker = new DefaultCircuitBreaker(delayedService, 3000, 2,
-                2000 * 1000 * 1000);
-
         QuickRemoteService quickService = new QuickRemoteService();
-        DefaultCircuitBreaker quickServiceCircuitBreaker = new DefaultCircuitBreaker(quickService, 3000, 2,
-                2000 * 1000 * 1000);
+
+        //Every service gets its own circuit breaker, all of them share one configuration
+        CircuitBreakerConfig config = CircuitBreakerConfig.builder()
+                .timeout(3000)
+                .failureThreshold(2)
+                .retryTimePeriod(2000 * 1000 * 1000)
+                .build();
+        CircuitBreakerRegistry<String, String> registry = new CircuitBreakerRegistry<>(
+                endpoint -> MonitoringService.DELAYED_SERVICE.equals(endpoint)
+                        ? delayedService : quickService,
+                config, 1000, 60L * 1000 * 1000 * 1000);
+        CircuitBreaker<String> delayedServiceCircuitBreaker =
+                registry.circuitBreaker(MonitoringService.DELAYED_SERVICE);
+        CircuitBreaker<String> quickServiceCircuitBreaker =
+                registry.circuitBreaker(MonitoringService.QUICK_SERVICE);
 
         //Create an object of monitoring service which makes both local and remote calls
-        MonitoringService monitoringService = new MonitoringService(delayedServiceCircuitBreaker,
-                quickServiceCircuitBreaker);
+        MonitoringService monitoringService = new MonitoringService(registry);
 
         //Fetch response from local resource
         LOGGER.info(monitoringService.localResourceResponse());
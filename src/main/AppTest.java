@@ -1,4 +1,4 @@
-package unittest;
+package main;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -23,30 +23,34 @@ class AppTest {
     //Time period in seconds for circuit breaker to retry service
     private static final int RETRY_PERIOD = 2;
 
+    private ManualNanoClock clock;
+
     private MonitoringService monitoringService;
 
-    private CircuitBreaker delayedServiceCircuitBreaker;
+    private CircuitBreaker<String> delayedServiceCircuitBreaker;
 
-    private CircuitBreaker quickServiceCircuitBreaker;
+    private CircuitBreaker<String> quickServiceCircuitBreaker;
 
     /**
      * Setup the circuit breakers and services, where {@link DelayedRemoteService} will be start with
      * a delay of 4 seconds and a {@link QuickRemoteService} responding healthy. Both services are
      * wrapped in a {@link DefaultCircuitBreaker} implementation with failure threshold of 1 failure
-     * and retry time period of 2 seconds.
+     * and retry time period of 2 seconds. Time is read from a {@link ManualNanoClock}, so the tests
+     * move it forward instead of sleeping.
      */
     @BeforeEach
     void setupCircuitBreakers() {
-        var delayedService = new DelayedRemoteService(System.nanoTime(), STARTUP_DELAY);
+        clock = new ManualNanoClock();
+        var delayedService = new DelayedRemoteService(clock.nanoTime(), STARTUP_DELAY, clock);
         //Set the circuit Breaker parameters
-        delayedServiceCircuitBreaker = new DefaultCircuitBreaker(delayedService, 3000,
+        delayedServiceCircuitBreaker = new DefaultCircuitBreaker<>(delayedService, 3000,
                 FAILURE_THRESHOLD,
-                RETRY_PERIOD * 1000 * 1000 * 1000);
+                RETRY_PERIOD * 1000 * 1000 * 1000, clock);
 
         var quickService = new QuickRemoteService();
         //Set the circuit Breaker parameters
-        quickServiceCircuitBreaker = new DefaultCircuitBreaker(quickService, 3000, FAILURE_THRESHOLD,
-                RETRY_PERIOD * 1000 * 1000 * 1000);
+        quickServiceCircuitBreaker = new DefaultCircuitBreaker<>(quickService, 3000, FAILURE_THRESHOLD,
+                RETRY_PERIOD * 1000 * 1000 * 1000, clock);
 
         monitoringService = new MonitoringService(delayedServiceCircuitBreaker,
                 quickServiceCircuitBreaker);
@@ -76,12 +80,8 @@ class AppTest {
         assertEquals("OPEN", delayedServiceCircuitBreaker.getState());
 
         //Waiting for recovery period of 2 seconds for circuit breaker to retry service.
-        try {
-            LOGGER.info("Waiting 2s for delayed service to become responsive");
-            Thread.sleep(2000);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        LOGGER.info("Waiting 2s for delayed service to become responsive");
+        clock.advance(2000L * 1000 * 1000 + 1);
         //After 2 seconds, the circuit breaker should move to "HALF_OPEN" state and retry fetching response from service again
         assertEquals("HALF_OPEN", delayedServiceCircuitBreaker.getState());
 
@@ -95,12 +95,8 @@ class AppTest {
         assertEquals("OPEN", delayedServiceCircuitBreaker.getState());
 
         //Waiting for 4 seconds, which is enough for DelayedService to become healthy and respond successfully.
-        try {
-            LOGGER.info("Waiting 4s for delayed service to become responsive");
-            Thread.sleep(4000);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        LOGGER.info("Waiting 4s for delayed service to become responsive");
+        clock.advanceSeconds(4);
         //As retry period is 2 seconds (<4 seconds of wait), hence the circuit breaker should be back in HALF_OPEN state.
         assertEquals("HALF_OPEN", delayedServiceCircuitBreaker.getState());
         //Check the success response from delayed service.
@@ -0,0 +1,38 @@
+package main;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+public interface AsyncRemoteService<T> extends RemoteService<T> {
+
+    //Fetch response from remote service without blocking the caller.
+    CompletionStage<T> callAsync();
+
+    //Blocking call, waits for the asynchronous response. The wait can be interrupted, e.g. by the
+    //timeout of a circuit breaker, which cancels the asynchronous call.
+    @Override
+    default T call() throws RemoteServiceException {
+        CompletableFuture<T> response = callAsync().toCompletableFuture();
+        try {
+            return response.get();
+        } catch (InterruptedException ex) {
+            response.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RemoteServiceException("Asynchronous call interrupted", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RemoteServiceException) {
+                throw (RemoteServiceException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CompletionException(cause);
+        }
+    }
+}
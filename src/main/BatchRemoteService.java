@@ -0,0 +1,10 @@
+package main;
+
+import java.util.List;
+
+public interface BatchRemoteService<K, T> {
+
+    //Fetch the responses to several requests from remote service in a single call. Responses
+    //must be in the order of the requests.
+    List<T> callBatch(List<K> requests) throws RemoteServiceException;
+}
@@ -0,0 +1,260 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects single requests into batches and sends each batch to a {@link BatchRemoteService} as
+ * one call through a circuit breaker. A batch is sent as soon as it holds maxBatchSize requests,
+ * or maxDelay after its first request arrived, whichever comes first. Batches don't wait for each
+ * other, several can be in flight at the same time.
+ *
+ * <p>The circuit breaker sees a batch as a single call: it is asked for one permission, and
+ * records one outcome and one latency per batch. Every request of the batch gets its own response,
+ * or the error of the batch.
+ *
+ * @param <K> type of the requests
+ * @param <T> type of the responses
+ */
+public class BatchingCircuitBreaker<K, T> {
+
+    // Only hands batches over to the executor, never runs a remote call itself
+    private static final ScheduledThreadPoolExecutor LINGER = createLinger();
+
+    private final CircuitBreaker<List<T>> circuitBreaker;
+    private final BatchRemoteService<K, T> service;
+    private final int maxBatchSize;
+    private final long maxDelay;
+    private final Executor executor;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Guarded by lock, null while no request is waiting
+    private Batch<K, T> pending;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedRequests = new LongAdder();
+
+    /**
+     * Constructor that sends batches on the default executor for remote calls.
+     *
+     * @param circuitBreaker circuit breaker protecting the remote service
+     * @param service        the service answering batches of requests
+     * @param maxBatchSize   number of requests at which a batch is sent straight away
+     * @param maxDelay       time, in nanoseconds, a request waits for others to join its batch
+     */
+    public BatchingCircuitBreaker(CircuitBreaker<List<T>> circuitBreaker,
+                                  BatchRemoteService<K, T> service, int maxBatchSize,
+                                  long maxDelay) {
+        this(circuitBreaker, service, maxBatchSize, maxDelay,
+                RemoteCallExecutors.defaultExecutor());
+    }
+
+    /**
+     * Constructor to create the front end.
+     *
+     * @param circuitBreaker circuit breaker protecting the remote service
+     * @param service        the service answering batches of requests
+     * @param maxBatchSize   number of requests at which a batch is sent straight away
+     * @param maxDelay       time, in nanoseconds, a request waits for others to join its batch
+     * @param executor       executor making the batch calls
+     */
+    public BatchingCircuitBreaker(CircuitBreaker<List<T>> circuitBreaker,
+                                  BatchRemoteService<K, T> service, int maxBatchSize,
+                                  long maxDelay, Executor executor) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        if (maxDelay < 0) {
+            throw new IllegalArgumentException("maxDelay must not be negative");
+        }
+        this.circuitBreaker = circuitBreaker;
+        this.service = service;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelay = maxDelay;
+        this.executor = executor;
+    }
+
+    private static ScheduledThreadPoolExecutor createLinger() {
+        var linger = new ScheduledThreadPoolExecutor(1, task -> {
+            var thread = new Thread(task, "batch-linger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        linger.setRemoveOnCancelPolicy(true);
+        return linger;
+    }
+
+    /**
+     * Add a request to the current batch without blocking the caller.
+     *
+     * @param request the request
+     * @return future of the response to this request, or of the error of its batch
+     */
+    public CompletableFuture<T> submit(K request) {
+        var response = new CompletableFuture<T>();
+        Batch<K, T> started = null;
+        Batch<K, T> full = null;
+        lock.lock();
+        try {
+            if (pending == null) {
+                pending = new Batch<>(maxBatchSize);
+                started = pending;
+            }
+            pending.add(request, response);
+            if (pending.size() == maxBatchSize) {
+                full = pending;
+                pending = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (full != null) {
+            dispatch(full);
+        } else if (started != null) {
+            Batch<K, T> batch = started;
+            try {
+                batch.timer = LINGER.schedule(() -> flush(batch), maxDelay,
+                        TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException ex) {
+                flush(batch);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Add a request to the current batch and wait for its response.
+     *
+     * @param request the request
+     * @return the response to this request
+     * @throws Exception the error of the batch call or of the circuit breaker, or
+     *                   InterruptedException if interrupted while waiting
+     */
+    public T execute(K request) throws Exception {
+        try {
+            return submit(request).get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    // Send the waiting requests now instead of waiting for more
+    public void flush() {
+        Batch<K, T> batch;
+        lock.lock();
+        try {
+            batch = pending;
+            pending = null;
+        } finally {
+            lock.unlock();
+        }
+        if (batch != null) {
+            dispatch(batch);
+        }
+    }
+
+    // Send the batch if it is still waiting, a batch that filled up is already gone
+    private void flush(Batch<K, T> batch) {
+        lock.lock();
+        try {
+            if (pending != batch) {
+                return;
+            }
+            pending = null;
+        } finally {
+            lock.unlock();
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(Batch<K, T> batch) {
+        if (batch.timer != null) {
+            batch.timer.cancel(false);
+        }
+        batches.increment();
+        batchedRequests.add(batch.size());
+        try {
+            executor.execute(() -> send(batch));
+        } catch (RejectedExecutionException ex) {
+            batch.fail(ex);
+        }
+    }
+
+    private void send(Batch<K, T> batch) {
+        List<T> responses;
+        try {
+            // A response list that does not match the requests counts as a failure of the call
+            responses = circuitBreaker.execute(() -> checked(service.callBatch(batch.requests),
+                    batch.size()));
+            // The fallback of the circuit breaker must give one response per request as well
+            checked(responses, batch.size());
+        } catch (Exception | Error ex) {
+            batch.fail(ex);
+            return;
+        }
+        for (int i = 0; i < responses.size(); i++) {
+            batch.responses.get(i).complete(responses.get(i));
+        }
+    }
+
+    private static <T> List<T> checked(List<T> responses, int requests)
+            throws RemoteServiceException {
+        if (responses == null || responses.size() != requests) {
+            throw new RemoteServiceException("Expected " + requests + " responses, got "
+                    + (responses == null ? "none" : responses.size()));
+        }
+        return responses;
+    }
+
+    // Number of batches sent
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    // Number of requests sent in batches
+    public long getBatchedRequests() {
+        return batchedRequests.sum();
+    }
+
+    public CircuitBreaker<List<T>> getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    private static final class Batch<K, T> {
+        final List<K> requests;
+        final List<CompletableFuture<T>> responses;
+        // Written once by the thread that started the batch, only read to cancel it
+        volatile ScheduledFuture<?> timer;
+
+        Batch(int capacity) {
+            requests = new ArrayList<>(capacity);
+            responses = new ArrayList<>(capacity);
+        }
+
+        void add(K request, CompletableFuture<T> response) {
+            requests.add(request);
+            responses.add(response);
+        }
+
+        int size() {
+            return requests.size();
+        }
+
+        void fail(Throwable error) {
+            for (CompletableFuture<T> response : responses) {
+                response.completeExceptionally(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Batching circuit breaker test
+ */
+class BatchingCircuitBreakerTest {
+
+    private static final long ONE_HOUR = TimeUnit.HOURS.toNanos(1);
+
+    //Service answering every request with its upper case, remembering the batches it got
+    private static final class UpperCaseService implements BatchRemoteService<String, String> {
+        final List<List<String>> batches = new ArrayList<>();
+
+        @Override
+        public synchronized List<String> callBatch(List<String> requests) {
+            batches.add(List.copyOf(requests));
+            var responses = new ArrayList<String>();
+            for (String request : requests) {
+                responses.add(request.toUpperCase());
+            }
+            return responses;
+        }
+    }
+
+    private static DefaultCircuitBreaker<List<String>> circuitBreaker() {
+        return new DefaultCircuitBreaker<>(List::of, 10_000, 1, ONE_HOUR);
+    }
+
+    @Test
+    void testFullBatchIsSentAsOneCall() throws Exception {
+        var service = new UpperCaseService();
+        var circuitBreaker = circuitBreaker();
+        var batching = new BatchingCircuitBreaker<>(circuitBreaker, service, 3, ONE_HOUR,
+                Runnable::run);
+        var a = batching.submit("a");
+        var b = batching.submit("b");
+        assertFalse(a.isDone());
+        var c = batching.submit("c");
+        assertEquals("A", a.get());
+        assertEquals("B", b.get());
+        assertEquals("C", c.get());
+        assertEquals(List.of(List.of("a", "b", "c")), service.batches);
+        //One permission and one outcome for the whole batch
+        assertEquals(1, circuitBreaker.getMetrics().getSuccessfulCalls());
+        assertEquals(1, batching.getBatches());
+        assertEquals(3, batching.getBatchedRequests());
+    }
+
+    @Test
+    void testPartialBatchIsSentAfterMaxDelay() throws Exception {
+        var service = new UpperCaseService();
+        var batching = new BatchingCircuitBreaker<>(circuitBreaker(), service, 100,
+                TimeUnit.MILLISECONDS.toNanos(10));
+        var a = batching.submit("a");
+        var b = batching.submit("b");
+        assertEquals("A", a.get(5, TimeUnit.SECONDS));
+        assertEquals("B", b.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(List.of("a", "b")), service.batches);
+    }
+
+    @Test
+    void testFlushSendsWaitingRequests() throws Exception {
+        var service = new UpperCaseService();
+        var batching = new BatchingCircuitBreaker<>(circuitBreaker(), service, 100, ONE_HOUR,
+                Runnable::run);
+        var a = batching.submit("a");
+        batching.flush();
+        assertEquals("A", a.get());
+        //Nothing waiting, nothing sent
+        batching.flush();
+        assertEquals(1, service.batches.size());
+    }
+
+    @Test
+    void testBatchFailureReachesEveryCaller() {
+        var failure = new RemoteServiceException("Down");
+        var circuitBreaker = circuitBreaker();
+        var batching = new BatchingCircuitBreaker<String, String>(circuitBreaker, requests -> {
+            throw failure;
+        }, 2, ONE_HOUR, Runnable::run);
+        var a = batching.submit("a");
+        var b = batching.submit("b");
+        assertSame(failure, assertThrows(ExecutionException.class, a::get).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, b::get).getCause());
+        assertEquals(1, circuitBreaker.getMetrics().getFailedCalls());
+        assertEquals("OPEN", circuitBreaker.getState());
+        //The open circuit turns the next batch away as a whole
+        var c = batching.submit("c");
+        var d = batching.submit("d");
+        var rejected = assertThrows(ExecutionException.class, c::get).getCause();
+        assertEquals(CallNotPermittedException.class, rejected.getClass());
+        assertSame(rejected, assertThrows(ExecutionException.class, d::get).getCause());
+        assertEquals(1, circuitBreaker.getMetrics().getRejectedCalls());
+        assertSame(failure, rejected.getCause());
+    }
+
+    @Test
+    void testMismatchedResponsesCountAsFailure() {
+        var circuitBreaker = circuitBreaker();
+        var batching = new BatchingCircuitBreaker<String, String>(circuitBreaker,
+                requests -> List.of("Only one"), 2, ONE_HOUR, Runnable::run);
+        CompletableFuture<String> a = batching.submit("a");
+        batching.submit("b");
+        var error = assertThrows(ExecutionException.class, a::get).getCause();
+        assertEquals(RemoteServiceException.class, error.getClass());
+        assertEquals(1, circuitBreaker.getMetrics().getFailedCalls());
+    }
+
+    @Test
+    void testBatchSizeMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new BatchingCircuitBreaker<>(
+                circuitBreaker(), new UpperCaseService(), 0, ONE_HOUR));
+    }
+}
@@ -0,0 +1,22 @@
+package main;
+
+/**
+ * Limits the number of concurrent calls to a remote service, so that a slow service cannot take
+ * every request thread before its circuit breaker trips. Calls that find no room are turned away
+ * with a {@link BulkheadFullException}. A bulkhead wraps the service and is itself the service
+ * given to the circuit breaker, the breaker then ignores its rejections.
+ */
+public interface Bulkhead {
+
+    // Maximum number of calls running at the same time.
+    int getMaxConcurrentCalls();
+
+    // Number of calls currently running.
+    int getConcurrentCalls();
+
+    // Number of calls turned away since the bulkhead was created.
+    long getRejectedCalls();
+
+    // Time the admitted calls waited for their turn, in nanoseconds.
+    LatencyHistogram getQueueWait();
+}
@@ -0,0 +1,14 @@
+package main;
+
+/**
+ * Thrown instead of calling the remote service when a bulkhead has no room for another call. Every
+ * bulkhead preallocates a single instance without a stack trace, so turning a caller away is
+ * cheap. Circuit breakers ignore it: the call never reached the service, so it says nothing about
+ * the health of the service.
+ */
+public class BulkheadFullException extends RemoteServiceException {
+
+    BulkheadFullException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,217 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Bulkhead test
+ */
+class BulkheadTest {
+
+    //Service that blocks every call until released
+    private static final class BlockingService implements RemoteService<String> {
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public String call() throws RemoteServiceException {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RemoteServiceException("Interrupted", e);
+            }
+            return "Released";
+        }
+    }
+
+    @Test
+    void testSemaphoreBulkheadRejectsWhenFull() throws Exception {
+        var service = new BlockingService();
+        var bulkhead = new SemaphoreBulkhead<String>(service, 2);
+        var running = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < 2; i++) {
+            running.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return bulkhead.call();
+                } catch (RemoteServiceException e) {
+                    throw new CompletionException(e);
+                }
+            }));
+        }
+        awaitConcurrentCalls(bulkhead, 2);
+        var first = assertThrows(BulkheadFullException.class, bulkhead::call);
+        //Turning callers away reuses one stackless exception
+        assertEquals(0, first.getStackTrace().length);
+        assertSame(first, assertThrows(BulkheadFullException.class, bulkhead::call));
+        assertEquals(2, bulkhead.getRejectedCalls());
+        service.release.countDown();
+        for (var response : running) {
+            assertEquals("Released", response.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, bulkhead.getConcurrentCalls());
+        assertEquals(2, bulkhead.getQueueWait().count());
+    }
+
+    @Test
+    void testSemaphoreBulkheadWaitsForPermit() throws Exception {
+        var service = new BlockingService();
+        var bulkhead = new SemaphoreBulkhead<String>(service, 1, 5000, NanoClock.SYSTEM);
+        var running = CompletableFuture.supplyAsync(() -> {
+            try {
+                return bulkhead.call();
+            } catch (RemoteServiceException e) {
+                throw new CompletionException(e);
+            }
+        });
+        awaitConcurrentCalls(bulkhead, 1);
+        var waiting = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            service.release.countDown();
+        });
+        waiting.start();
+        //Waits until the running call frees its permit
+        assertEquals("Released", bulkhead.call());
+        assertEquals("Released", running.get(5, TimeUnit.SECONDS));
+        assertEquals(0, bulkhead.getRejectedCalls());
+        assertTrue(bulkhead.getQueueWait().percentile(100) >= 40L * 1000 * 1000);
+    }
+
+    @Test
+    void testThreadPoolBulkheadQueuesThenRejects() throws Exception {
+        var service = new BlockingService();
+        try (var bulkhead = new ThreadPoolBulkhead<String>(service, 1, 1)) {
+            var running = bulkhead.callAsync().toCompletableFuture();
+            awaitConcurrentCalls(bulkhead, 1);
+            var queued = bulkhead.callAsync().toCompletableFuture();
+            assertEquals(1, bulkhead.getQueuedCalls());
+            //Pool and queue are full, the caller is turned away without blocking
+            var rejected = bulkhead.callAsync().toCompletableFuture();
+            assertTrue(rejected.isCompletedExceptionally());
+            //Whatever a caller does with its rejection, the next caller is still turned away
+            rejected.obtrudeValue("Hijacked");
+            assertTrue(bulkhead.callAsync().toCompletableFuture().isCompletedExceptionally());
+            assertThrows(BulkheadFullException.class, bulkhead::call);
+            assertEquals(3, bulkhead.getRejectedCalls());
+            service.release.countDown();
+            assertEquals("Released", running.get(5, TimeUnit.SECONDS));
+            assertEquals("Released", queued.get(5, TimeUnit.SECONDS));
+            assertEquals(2, bulkhead.getQueueWait().count());
+        }
+    }
+
+    @Test
+    void testClosingFailsQueuedCalls() throws Exception {
+        var service = new BlockingService();
+        var bulkhead = new ThreadPoolBulkhead<String>(service, 1, 2);
+        var running = bulkhead.callAsync().toCompletableFuture();
+        awaitConcurrentCalls(bulkhead, 1);
+        var queued = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < 2; i++) {
+            queued.add(bulkhead.callAsync().toCompletableFuture());
+        }
+        bulkhead.close();
+        //The running call is interrupted, the queued ones never reach the service
+        var interrupted = assertThrows(ExecutionException.class,
+                () -> running.get(5, TimeUnit.SECONDS));
+        assertTrue(interrupted.getCause() instanceof RemoteServiceException);
+        for (CompletableFuture<String> call : queued) {
+            assertTrue(call.isDone());
+            var closed = assertThrows(ExecutionException.class, call::get);
+            assertTrue(closed.getCause() instanceof BulkheadFullException);
+        }
+    }
+
+    @Test
+    void testAbandonedQueuedCallsNeverReachTheService() throws Exception {
+        var service = new BlockingService();
+        var calls = new AtomicInteger();
+        try (var bulkhead = new ThreadPoolBulkhead<String>(() -> {
+            calls.incrementAndGet();
+            return service.call();
+        }, 1, 2)) {
+            var circuitBreaker = new DefaultCircuitBreaker<String>(bulkhead, 100, 100,
+                    1000L * 1000 * 1000 * 1000);
+            var running = bulkhead.callAsync().toCompletableFuture();
+            awaitConcurrentCalls(bulkhead, 1);
+            //Both callers time out while their calls wait for the busy thread
+            assertThrows(CallTimeoutException.class, circuitBreaker::attemptRequest);
+            var timedOut = assertThrows(ExecutionException.class,
+                    () -> circuitBreaker.attemptRequestAsync().get(5, TimeUnit.SECONDS));
+            assertTrue(timedOut.getCause() instanceof CallTimeoutException);
+            assertEquals(0, bulkhead.getQueuedCalls());
+            assertEquals(2, bulkhead.getAbandonedCalls());
+            service.release.countDown();
+            assertEquals("Released", running.get(5, TimeUnit.SECONDS));
+            Thread.sleep(50);
+            assertEquals(1, calls.get());
+            assertEquals(1, bulkhead.getQueueWait().count());
+        }
+    }
+
+    @Test
+    void testCircuitBreakerIgnoresBulkheadRejections() throws Exception {
+        var service = new BlockingService();
+        var bulkhead = new SemaphoreBulkhead<String>(service, 1);
+        var circuitBreaker = new DefaultCircuitBreaker<String>(bulkhead, 10_000, 1,
+                1000L * 1000 * 1000 * 1000);
+        var running = circuitBreaker.attemptRequestAsync();
+        awaitConcurrentCalls(bulkhead, 1);
+        for (int i = 0; i < 10; i++) {
+            assertThrows(BulkheadFullException.class, circuitBreaker::attemptRequest);
+        }
+        //A full bulkhead says nothing about the remote service
+        assertEquals("CLOSED", circuitBreaker.getState());
+        assertEquals(10, circuitBreaker.getMetrics().getIgnoredCalls());
+        assertEquals(0, circuitBreaker.getMetrics().getFailedCalls());
+        assertEquals(10, bulkhead.getRejectedCalls());
+        service.release.countDown();
+        assertEquals("Released", running.get(5, TimeUnit.SECONDS));
+        assertEquals(1, circuitBreaker.getMetrics().getSuccessfulCalls());
+    }
+
+    @Test
+    void testBulkheadRejectionReleasesTrialPermit() throws Exception {
+        var service = new BlockingService();
+        try (var bulkhead = new ThreadPoolBulkhead<String>(service, 1, 0)) {
+            var circuitBreaker = new DefaultCircuitBreaker<String>(bulkhead, 10_000, 1,
+                    1000L * 1000 * 1000 * 1000, 1, 1.0);
+            //Another caller keeps the bulkhead busy
+            var busy = bulkhead.callAsync().toCompletableFuture();
+            awaitConcurrentCalls(bulkhead, 1);
+            circuitBreaker.setState(State.HALF_OPEN);
+            var rejected = assertThrows(CompletionException.class,
+                    () -> circuitBreaker.attemptRequestAsync().join());
+            assertTrue(rejected.getCause() instanceof BulkheadFullException);
+            //The only trial permit was given back, so the next caller may still try
+            assertEquals("HALF_OPEN", circuitBreaker.getState());
+            assertTrue(circuitBreaker.tryAcquirePermission());
+            assertFalse(circuitBreaker.tryAcquirePermission());
+            service.release.countDown();
+            assertEquals("Released", busy.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static void awaitConcurrentCalls(Bulkhead bulkhead, int calls)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (bulkhead.getConcurrentCalls() < calls) {
+            assertTrue(System.nanoTime() < deadline, "calls did not start");
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Coarse clock for very high call rates. A background ticker thread refreshes a volatile value
+ * every tick, so reading the time is a plain volatile read. Time only advances in steps of the
+ * tick, which is fine for retry periods and sliding windows, but too coarse to measure very fast
+ * calls.
+ */
+public final class CachedNanoClock implements NanoClock, AutoCloseable {
+
+    private volatile long now;
+    private volatile boolean running = true;
+    private final Thread ticker;
+
+    /**
+     * Constructor to create a clock with its own ticker thread.
+     *
+     * @param tickMillis how often the cached time is refreshed, in milliseconds
+     */
+    public CachedNanoClock(long tickMillis) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("tickMillis must be positive");
+        }
+        long tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.now = System.nanoTime();
+        this.ticker = new Thread(() -> {
+            while (running) {
+                LockSupport.parkNanos(tickNanos);
+                now = System.nanoTime();
+            }
+        }, "cached-nano-clock");
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    /**
+     * Clock with a 1 ms tick shared by the whole JVM, started on first use.
+     *
+     * @return the shared clock
+     */
+    public static CachedNanoClock shared() {
+        return Shared.INSTANCE;
+    }
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    // Stop the ticker thread, the time stays frozen afterwards
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(ticker);
+    }
+
+    private static final class Shared {
+        static final CachedNanoClock INSTANCE = new CachedNanoClock(1);
+    }
+}
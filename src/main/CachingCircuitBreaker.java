@@ -0,0 +1,112 @@
+package main;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Serves requests from a {@link ResponseCache} in front of a circuit breaker, so that an outage
+ * shows up as slightly old data instead of an error:
+ * <ul>
+ *   <li>a fresh response is served without calling the service at all,</li>
+ *   <li>while CLOSED the service is called, and a stale response is served if the call fails,</li>
+ *   <li>while OPEN a stale response is served straight away,</li>
+ *   <li>while HALF_OPEN a stale response is served straight away, and a single background call per
+ *       key revalidates it through the circuit breaker.</li>
+ * </ul>
+ * Only without any cached response do callers see the error of the circuit breaker.
+ *
+ * @param <K> type of the request keys
+ * @param <T> type of the responses
+ */
+public class CachingCircuitBreaker<K, T> {
+
+    private final CircuitBreaker<T> circuitBreaker;
+    private final ResponseCache<K, T> cache;
+    private final Executor refreshExecutor;
+    // Keys with a revalidation in flight
+    private final Set<K> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructor that revalidates on the default executor for remote calls.
+     *
+     * @param circuitBreaker circuit breaker protecting the remote service
+     * @param cache          the last good responses
+     */
+    public CachingCircuitBreaker(CircuitBreaker<T> circuitBreaker, ResponseCache<K, T> cache) {
+        this(circuitBreaker, cache, RemoteCallExecutors.defaultExecutor());
+    }
+
+    /**
+     * Constructor to create the front end.
+     *
+     * @param circuitBreaker  circuit breaker protecting the remote service
+     * @param cache           the last good responses
+     * @param refreshExecutor executor running the background revalidation
+     */
+    public CachingCircuitBreaker(CircuitBreaker<T> circuitBreaker, ResponseCache<K, T> cache,
+                                 Executor refreshExecutor) {
+        this.circuitBreaker = circuitBreaker;
+        this.cache = cache;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * Fetch the response for a request, from the cache or through the circuit breaker.
+     *
+     * @param key      request key
+     * @param callable the call to the remote service for this request
+     * @return fresh or stale response
+     * @throws Exception the error of the call or of the circuit breaker, if nothing is cached
+     */
+    public T execute(K key, Callable<? extends T> callable) throws Exception {
+        ResponseCache.CachedResponse<T> cached = cache.lookup(key);
+        if (cached != null && cache.isFresh(cached)) {
+            return cached.value;
+        }
+        String state = circuitBreaker.getState();
+        if (cached != null && !State.CLOSED.name().equals(state)) {
+            if (State.HALF_OPEN.name().equals(state)) {
+                refresh(key, callable);
+            }
+            return cached.value;
+        }
+        try {
+            T response = circuitBreaker.execute(callable);
+            cache.put(key, response);
+            return response;
+        } catch (Exception ex) {
+            if (cached != null) {
+                // Stale if error, the failure is already recorded by the circuit breaker
+                return cached.value;
+            }
+            throw ex;
+        }
+    }
+
+    // Revalidate in the background, at most once per key at a time
+    private void refresh(K key, Callable<? extends T> callable) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    cache.put(key, circuitBreaker.execute(callable));
+                } catch (Exception ex) {
+                    // Recorded by the circuit breaker, the stale response stays until it expires
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            refreshing.remove(key);
+        }
+    }
+
+    public ResponseCache<K, T> getCache() {
+        return cache;
+    }
+}
@@ -0,0 +1,13 @@
+package main;
+
+/**
+ * Thrown by a call that was cancelled by the caller, e.g. the slower of two hedged requests, so
+ * whatever the service did after that is not a verdict on its health. Circuit breakers ignore it
+ * and give back the permission of the call. Preallocated without a stack trace.
+ */
+public class CallCancelledException extends RemoteServiceException {
+
+    CallCancelledException(String message) {
+        super(message, null, false, false);
+    }
+}
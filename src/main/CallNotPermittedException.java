@@ -0,0 +1,24 @@
+package main;
+
+import java.util.function.Supplier;
+
+/**
+ * Thrown instead of calling the remote service while the circuit is OPEN, or HALF_OPEN with all
+ * trial requests taken. Every circuit breaker preallocates a single instance without a stack
+ * trace, so turning a caller away costs neither an allocation nor a stack walk. The cause is the
+ * last failure recorded by the circuit breaker at the time it is read.
+ */
+public class CallNotPermittedException extends RemoteServiceException {
+
+    private final transient Supplier<Throwable> lastFailure;
+
+    CallNotPermittedException(Supplier<Throwable> lastFailure) {
+        super("Circuit breaker does not permit calls", null, false, false);
+        this.lastFailure = lastFailure;
+    }
+
+    @Override
+    public synchronized Throwable getCause() {
+        return lastFailure.get();
+    }
+}
@@ -0,0 +1,11 @@
+package main;
+
+/**
+ * Thrown when a remote call did not finish within the timeout of its circuit breaker.
+ */
+public class CallTimeoutException extends RemoteServiceException {
+
+    public CallTimeoutException(long timeoutMillis) {
+        super("Remote call timed out after " + timeoutMillis + " ms");
+    }
+}
@@ -1,17 +1,74 @@
-public interface CircuitBreaker {
+package main;
 
-    // Success response. Reset everything to defaults
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+public interface CircuitBreaker<T> {
+
+    // Success response. Reset the failure count, or close the circuit after enough successful
+    // trial requests. A late success while OPEN is ignored, and so is a success while HALF_OPEN
+    // once every trial permit has reported
     void recordSuccess();
 
-    // Failure response. Handle accordingly with response and change state if required.
-    void recordFailure(String response);
+    // Failure response. Handle accordingly with the error and change state if required.
+    void recordFailure(Throwable error);
 
-    // Get the current state of circuit breaker
+    // Outcomes of calls other nodes made to the same service, counted towards tripping the circuit
+    // while CLOSED but not in the metrics of this node.
+    void recordRemoteOutcomes(long failures, long successes);
+
+    // Get the current state of circuit breaker, without changing it
     String getState();
 
+    // Timeout of a call, in milliseconds. Zero or less if calls are not timed out
+    long getTimeout();
+
+    // Counters and latencies of the calls made through this circuit breaker.
+    CircuitBreakerMetrics getMetrics();
+
+    // Stream of the state transitions of this circuit breaker.
+    CircuitBreakerEvents getEvents();
+
     // Set the specific state manually.
     void setState(State state);
 
+    // Check if a call may go through now, without calling the service. Callers that get a permit
+    // must report the outcome with recordSuccess or recordFailure.
+    boolean tryAcquirePermission();
+
+    // Give back a permit without reporting an outcome, for a call that was never made.
+    void releasePermission();
+
     // Attempt to fetch response from the remote service.
-    String attemptRequest() throws RemoteServiceException;
+    T attemptRequest() throws RemoteServiceException;
+
+    // Attempt to fetch response from the remote service without blocking the caller.
+    CompletableFuture<T> attemptRequestAsync();
+
+    // Same as attemptRequestAsync(), running a blocking remote service on the given executor.
+    CompletableFuture<T> attemptRequestAsync(Executor executor);
+
+    // Run any call under the protection of this circuit breaker.
+    T execute(Callable<? extends T> callable) throws Exception;
+
+    // Wrap a call so that every invocation goes through this circuit breaker.
+    default Callable<T> decorateCallable(Callable<? extends T> callable) {
+        return () -> execute(callable);
+    }
+
+    // Same as decorateCallable(), checked exceptions are rethrown wrapped in a CompletionException.
+    default Supplier<T> decorateSupplier(Supplier<? extends T> supplier) {
+        return () -> {
+            try {
+                return execute(supplier::get);
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        };
+    }
 }
\ No newline at end of file
@@ -0,0 +1,208 @@
+package main;
+
+import java.util.function.Predicate;
+
+/**
+ * Immutable settings for creating circuit breakers. A single instance can be shared by every
+ * breaker of a {@link CircuitBreakerRegistry}, so thousands of breakers do not each carry their own
+ * copy of the configuration.
+ */
+public final class CircuitBreakerConfig {
+
+    private static final CircuitBreakerConfig DEFAULTS = builder().build();
+
+    private final long timeout;
+    private final int failureThreshold;
+    private final IntervalStrategy waitInterval;
+    private final int permittedCallsInHalfOpen;
+    private final double halfOpenSuccessRatio;
+    private final int slidingWindowSize;
+    private final int minimumCalls;
+    private final float failureRateThreshold;
+    private final Predicate<Throwable> recordFailurePredicate;
+    private final NanoClock clock;
+
+    private CircuitBreakerConfig(Builder builder) {
+        this.timeout = builder.timeout;
+        this.failureThreshold = builder.failureThreshold;
+        this.waitInterval = builder.waitInterval;
+        this.permittedCallsInHalfOpen = builder.permittedCallsInHalfOpen;
+        this.halfOpenSuccessRatio = builder.halfOpenSuccessRatio;
+        this.slidingWindowSize = builder.slidingWindowSize;
+        this.minimumCalls = builder.minimumCalls;
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.recordFailurePredicate = builder.recordFailurePredicate;
+        this.clock = builder.clock;
+    }
+
+    // Configuration with every setting at its default
+    public static CircuitBreakerConfig ofDefaults() {
+        return DEFAULTS;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Create a new circuit breaker for the service. Without a sliding window it opens after
+     * failureThreshold consecutive failures, otherwise on the failure rate over the window.
+     *
+     * @param serviceToCall the service protected by the circuit breaker
+     * @param <T>           type of the responses of the service
+     * @return a new circuit breaker in CLOSED state
+     */
+    public <T> CircuitBreaker<T> createCircuitBreaker(RemoteService<T> serviceToCall) {
+        if (slidingWindowSize == 0) {
+            return new DefaultCircuitBreaker<>(serviceToCall, timeout, failureThreshold,
+                    waitInterval, permittedCallsInHalfOpen, halfOpenSuccessRatio,
+                    recordFailurePredicate, null, clock);
+        }
+        return new SlidingWindowCircuitBreaker<>(serviceToCall, timeout,
+                new CountBasedSlidingWindow(slidingWindowSize), minimumCalls, failureRateThreshold,
+                Long.MAX_VALUE, 100, waitInterval, permittedCallsInHalfOpen,
+                halfOpenSuccessRatio, recordFailurePredicate, null, clock);
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public IntervalStrategy getWaitInterval() {
+        return waitInterval;
+    }
+
+    public int getSlidingWindowSize() {
+        return slidingWindowSize;
+    }
+
+    public NanoClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Builder for {@link CircuitBreakerConfig}. Not thread-safe, the built configuration is.
+     */
+    public static final class Builder {
+
+        private long timeout = 3000;
+        private int failureThreshold = 5;
+        private IntervalStrategy waitInterval = IntervalStrategy.fixed(2000L * 1000 * 1000);
+        private int permittedCallsInHalfOpen = 1;
+        private double halfOpenSuccessRatio = 1.0;
+        private int slidingWindowSize;
+        private int minimumCalls = 10;
+        private float failureRateThreshold = 50;
+        private Predicate<Throwable> recordFailurePredicate = error -> true;
+        private NanoClock clock = NanoClock.SYSTEM;
+
+        private Builder() {
+        }
+
+        /**
+         * Timeout, in milliseconds, for the API request. Zero or less disables the timeout.
+         */
+        public Builder timeout(long timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        /**
+         * Number of consecutive failures before changing state to 'OPEN'. Only used without a
+         * sliding window.
+         */
+        public Builder failureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+            return this;
+        }
+
+        /**
+         * Time, in nanoseconds, period after which a new request is made to remote service for
+         * status check.
+         */
+        public Builder retryTimePeriod(long retryTimePeriod) {
+            return waitInterval(IntervalStrategy.fixed(retryTimePeriod));
+        }
+
+        /**
+         * Time to wait while OPEN before a new request is made to remote service, e.g.
+         * {@link IntervalStrategy#exponential} with jitter. Every breaker created from the
+         * configuration keeps its own attempt count.
+         */
+        public Builder waitInterval(IntervalStrategy waitInterval) {
+            this.waitInterval = waitInterval;
+            return this;
+        }
+
+        /**
+         * Number of trial requests let through while HALF_OPEN, and the fraction of them that must
+         * succeed for the circuit to close.
+         */
+        public Builder halfOpen(int permittedCallsInHalfOpen, double halfOpenSuccessRatio) {
+            this.permittedCallsInHalfOpen = permittedCallsInHalfOpen;
+            this.halfOpenSuccessRatio = halfOpenSuccessRatio;
+            return this;
+        }
+
+        /**
+         * Trip on the failure rate over the last windowSize calls instead of on consecutive
+         * failures.
+         *
+         * @param windowSize           number of most recent calls taken into account
+         * @param minimumCalls         number of calls needed before the rate is taken into account
+         * @param failureRateThreshold failure rate, in percent, at or above which the circuit opens
+         */
+        public Builder slidingWindow(int windowSize, int minimumCalls, float failureRateThreshold) {
+            this.slidingWindowSize = windowSize;
+            this.minimumCalls = minimumCalls;
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * Decides which errors of the service count as failures.
+         */
+        public Builder recordFailurePredicate(Predicate<Throwable> recordFailurePredicate) {
+            this.recordFailurePredicate = recordFailurePredicate;
+            return this;
+        }
+
+        /**
+         * Source of time for the circuit breakers.
+         */
+        public Builder clock(NanoClock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public CircuitBreakerConfig build() {
+            if (failureThreshold < 1) {
+                throw new IllegalArgumentException("failureThreshold must be positive");
+            }
+            if (slidingWindowSize < 0) {
+                throw new IllegalArgumentException("slidingWindowSize must not be negative");
+            }
+            if (slidingWindowSize > 0
+                    && !(failureRateThreshold > 0 && failureRateThreshold <= 100)) {
+                throw new IllegalArgumentException("failureRateThreshold must be in (0, 100]");
+            }
+            if (permittedCallsInHalfOpen < 1
+                    || permittedCallsInHalfOpen > AbstractCircuitBreaker.MAX_TRIAL_CALLS) {
+                throw new IllegalArgumentException("permittedCallsInHalfOpen must be between 1 and "
+                        + AbstractCircuitBreaker.MAX_TRIAL_CALLS);
+            }
+            if (!(halfOpenSuccessRatio > 0 && halfOpenSuccessRatio <= 1)) {
+                throw new IllegalArgumentException("halfOpenSuccessRatio must be in (0, 1]");
+            }
+            if (waitInterval == null || recordFailurePredicate == null || clock == null) {
+                throw new IllegalArgumentException(
+                        "waitInterval, recordFailurePredicate and clock are required");
+            }
+            return new CircuitBreakerConfig(this);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package main;
+
+/**
+ * A state transition of a circuit breaker.
+ */
+public final class CircuitBreakerEvent {
+
+    private final long sequence;
+    private final State fromState;
+    private final State toState;
+    private final long nanoTime;
+
+    CircuitBreakerEvent(long sequence, State fromState, State toState, long nanoTime) {
+        this.sequence = sequence;
+        this.fromState = fromState;
+        this.toState = toState;
+        this.nanoTime = nanoTime;
+    }
+
+    // Position of the event in the stream of its circuit breaker, starting at 0
+    public long getSequence() {
+        return sequence;
+    }
+
+    public State getFromState() {
+        return fromState;
+    }
+
+    public State getToState() {
+        return toState;
+    }
+
+    // Time of the transition, read from the clock of the circuit breaker
+    public long getNanoTime() {
+        return nanoTime;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + fromState + " -> " + toState;
+    }
+}
@@ -0,0 +1,117 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Stream of the state transitions of a circuit breaker. The most recent events are kept in a
+ * bounded ring buffer, older ones are overwritten, so a breaker that flaps does not grow memory.
+ * Publishing never waits for readers.
+ *
+ * <p>The position of an event in the stream is decided by the CAS that made the transition, which
+ * counts it in the epoch of the state word, not by the order the threads publish in. A thread
+ * that publishes late, after other threads made and published transitions of their own, still
+ * gets the sequence of its transition.
+ *
+ * <p>Subscribers are called on the thread that made the transition, right after it happened. They
+ * must return quickly and must not call back into the circuit breaker, hand the event to a queue
+ * or executor for anything slow.
+ */
+public final class CircuitBreakerEvents {
+
+    private final AtomicReferenceArray<CircuitBreakerEvent> ring;
+    private final int mask;
+    // One past the highest sequence published so far
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final List<Consumer<? super CircuitBreakerEvent>> subscribers =
+            new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructor to create a stream.
+     *
+     * @param capacity number of recent events kept, rounded up to a power of two
+     */
+    CircuitBreakerEvents(int capacity) {
+        if (capacity < 1 || capacity > 1 << 20) {
+            throw new IllegalArgumentException("capacity must be between 1 and " + (1 << 20));
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Publish a transition.
+     *
+     * @param epoch     the number of the transition, counting from 1, modulo 256
+     * @param fromState the state before the transition
+     * @param toState   the state after the transition
+     * @param nanoTime  time of the transition
+     */
+    void publish(int epoch, State fromState, State toState, long nanoTime) {
+        // The epoch holds the low 8 bits of the sequence plus one, the rest comes from the
+        // sequences published so far. Correct as long as a thread does not publish so late that
+        // 128 transitions were published in between
+        long published = nextSequence.get();
+        long sequence = Math.max(0, published + (byte) (epoch - 1 - published));
+        nextSequence.accumulateAndGet(sequence + 1, Math::max);
+        var event = new CircuitBreakerEvent(sequence, fromState, toState, nanoTime);
+        int slot = (int) sequence & mask;
+        for (;;) {
+            CircuitBreakerEvent previous = ring.get(slot);
+            // Don't overwrite a newer event that a faster thread already put into the slot
+            if (previous != null && previous.getSequence() > sequence
+                    || ring.compareAndSet(slot, previous, event)) {
+                break;
+            }
+        }
+        for (Consumer<? super CircuitBreakerEvent> subscriber : subscribers) {
+            try {
+                subscriber.accept(event);
+            } catch (RuntimeException ex) {
+                // A broken subscriber must not break the calls that caused the transition
+            }
+        }
+    }
+
+    // Call the subscriber on every future transition
+    public void subscribe(Consumer<? super CircuitBreakerEvent> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public void unsubscribe(Consumer<? super CircuitBreakerEvent> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    // Number of events published so far, including those no longer in the buffer
+    public long publishedEvents() {
+        return nextSequence.get();
+    }
+
+    /**
+     * The events still in the buffer, oldest first. Events that are being published concurrently
+     * may be missing.
+     *
+     * @return a copy of the recent events
+     */
+    public List<CircuitBreakerEvent> recentEvents() {
+        long end = nextSequence.get();
+        long start = Math.max(0, end - ring.length());
+        var events = new ArrayList<CircuitBreakerEvent>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            CircuitBreakerEvent event = ring.get((int) sequence & mask);
+            // Skip slots not written yet, or already overwritten by a newer event
+            if (event != null && event.getSequence() == sequence) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+}
@@ -0,0 +1,93 @@
+package main;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the calls seen by a circuit breaker. Every counter is a striped {@link LongAdder},
+ * so callers on different cores do not contend on a single cache line, and reading a counter sums
+ * its stripes without stopping the writers.
+ */
+public final class CircuitBreakerMetrics {
+
+    private final LongAdder successfulCalls = new LongAdder();
+    private final LongAdder failedCalls = new LongAdder();
+    private final LongAdder rejectedCalls = new LongAdder();
+    private final LongAdder slowCalls = new LongAdder();
+    private final LongAdder timedOutCalls = new LongAdder();
+    private final LongAdder ignoredCalls = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    void onSuccess(boolean slow) {
+        successfulCalls.increment();
+        if (slow) {
+            slowCalls.increment();
+        }
+    }
+
+    void onFailure(boolean slow) {
+        failedCalls.increment();
+        if (slow) {
+            slowCalls.increment();
+        }
+    }
+
+    void onRejected() {
+        rejectedCalls.increment();
+    }
+
+    void onTimeout() {
+        timedOutCalls.increment();
+    }
+
+    void onIgnored() {
+        ignoredCalls.increment();
+    }
+
+    void onCallFinished(long durationNanos) {
+        latency.record(durationNanos);
+    }
+
+    // Calls that succeeded, including errors that do not count as failures
+    public long getSuccessfulCalls() {
+        return successfulCalls.sum();
+    }
+
+    // Calls that failed, including timed out calls and slow trial calls
+    public long getFailedCalls() {
+        return failedCalls.sum();
+    }
+
+    // Calls turned away without calling the service
+    public long getRejectedCalls() {
+        return rejectedCalls.sum();
+    }
+
+    // Calls, successful or not, that took longer than the slow call threshold
+    public long getSlowCalls() {
+        return slowCalls.sum();
+    }
+
+    // Calls cut off by the timeout
+    public long getTimedOutCalls() {
+        return timedOutCalls.sum();
+    }
+
+    // Calls that never reached the service, e.g. turned away by a bulkhead or a rate limiter, or
+    // that were cancelled by the caller. They count as neither success nor failure
+    public long getIgnoredCalls() {
+        return ignoredCalls.sum();
+    }
+
+    // Durations of the calls made to the service
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String toString() {
+        return "successful=" + getSuccessfulCalls() + ", failed=" + getFailedCalls()
+                + ", rejected=" + getRejectedCalls() + ", slow=" + getSlowCalls()
+                + ", timedOut=" + getTimedOutCalls() + ", ignored=" + getIgnoredCalls()
+                + ", p50=" + latency.percentile(50) + "ns, p99=" + latency.percentile(99) + "ns";
+    }
+}
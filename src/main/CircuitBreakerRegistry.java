@@ -0,0 +1,231 @@
+package main;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Circuit breakers by key, e.g. one per downstream host or endpoint. Breakers are created lazily on
+ * first lookup and shared by every caller of the same key afterwards. Breakers that are not looked
+ * up for idleTimeout are evicted, and the registry never holds much more than maximumSize of them,
+ * so per-host breakers do not pile up as hosts come and go.
+ *
+ * <p>An evicted breaker forgets its state, the next lookup of its key starts over with a CLOSED
+ * one. Keep idleTimeout well above the retry time period of the breakers. State saved by a
+ * {@link CircuitBreakerStateStore} before a restart is handed to {@link #restore}.
+ *
+ * @param <K> type of the keys
+ * @param <T> type of the responses of the protected services
+ */
+public class CircuitBreakerRegistry<K, T> {
+
+    // Lookups only write the access time when it moved by more than this, so that hot breakers do
+    // not bounce the cache line of their entry between cores on every call
+    private static final long TOUCH_GRANULARITY = 1000 * 1000;
+
+    private final ConcurrentHashMap<K, Entry<T>> breakers = new ConcurrentHashMap<>();
+    // Snapshots by key name, waiting for the first lookup of their key
+    private final ConcurrentHashMap<String, CircuitBreakerSnapshot> restored =
+            new ConcurrentHashMap<>();
+    private final Function<? super K, ? extends RemoteService<T>> serviceFactory;
+    private final CircuitBreakerConfig defaultConfig;
+    private final int maximumSize;
+    private final long idleTimeout;
+    private final NanoClock clock;
+    // Only one thread sweeps the map at a time, the others carry on
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private volatile long lastSweep;
+
+    /**
+     * Constructor to create a registry.
+     *
+     * @param serviceFactory Creates the service called by the breaker of a key, on first lookup
+     * @param defaultConfig  Configuration of breakers looked up without one. Its clock also tracks
+     *                       how long breakers have been idle
+     * @param maximumSize    Number of breakers above which the least recently used are evicted
+     * @param idleTimeout    Time, in nanoseconds, after which a breaker that is not looked up is
+     *                       evicted
+     */
+    public CircuitBreakerRegistry(Function<? super K, ? extends RemoteService<T>> serviceFactory,
+                                  CircuitBreakerConfig defaultConfig, int maximumSize,
+                                  long idleTimeout) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        if (idleTimeout <= 0) {
+            throw new IllegalArgumentException("idleTimeout must be positive");
+        }
+        this.serviceFactory = serviceFactory;
+        this.defaultConfig = defaultConfig;
+        this.maximumSize = maximumSize;
+        this.idleTimeout = idleTimeout;
+        this.clock = defaultConfig.getClock();
+        this.lastSweep = clock.nanoTime();
+    }
+
+    /**
+     * Look up the breaker of a key, creating it with the default configuration if needed.
+     *
+     * @param key key of the breaker
+     * @return the breaker shared by every caller of the key
+     */
+    public CircuitBreaker<T> circuitBreaker(K key) {
+        return circuitBreaker(key, defaultConfig);
+    }
+
+    /**
+     * Look up the breaker of a key, creating it with the given configuration if needed. The
+     * configuration is ignored if the breaker already exists.
+     *
+     * @param key    key of the breaker
+     * @param config configuration for a new breaker
+     * @return the breaker shared by every caller of the key
+     */
+    public CircuitBreaker<T> circuitBreaker(K key, CircuitBreakerConfig config) {
+        long now = clock.nanoTime();
+        // Plain get first, computeIfAbsent locks the bin even when the key is present
+        Entry<T> entry = breakers.get(key);
+        if (entry == null) {
+            entry = breakers.computeIfAbsent(key, k -> new Entry<>(create(k, config), now));
+            maybeSweep(now);
+        }
+        entry.touch(now);
+        return entry.breaker;
+    }
+
+    private CircuitBreaker<T> create(K key, CircuitBreakerConfig config) {
+        CircuitBreaker<T> breaker = config.createCircuitBreaker(serviceFactory.apply(key));
+        if (!restored.isEmpty()) {
+            restore(breaker, restored.remove(String.valueOf(key)));
+        }
+        return breaker;
+    }
+
+    private static void restore(CircuitBreaker<?> breaker, CircuitBreakerSnapshot snapshot) {
+        if (snapshot != null && breaker instanceof AbstractCircuitBreaker) {
+            ((AbstractCircuitBreaker<?>) breaker).restore(snapshot);
+        }
+    }
+
+    /**
+     * Restore breakers from snapshots, e.g. loaded from a {@link CircuitBreakerStateStore} at
+     * startup. Breakers that already exist are restored right away, the others when their key is
+     * first looked up. Keys are matched by their toString().
+     *
+     * @param snapshots snapshots by key name
+     */
+    public void restore(Map<String, CircuitBreakerSnapshot> snapshots) {
+        restored.putAll(snapshots);
+        for (Map.Entry<K, Entry<T>> e : breakers.entrySet()) {
+            restore(e.getValue().breaker, restored.remove(String.valueOf(e.getKey())));
+        }
+    }
+
+    // Call the action for every breaker currently held, without counting it as a use
+    public void forEach(BiConsumer<? super K, ? super CircuitBreaker<T>> action) {
+        for (Map.Entry<K, Entry<T>> e : breakers.entrySet()) {
+            action.accept(e.getKey(), e.getValue().breaker);
+        }
+    }
+
+    /**
+     * Look up the breaker of a key without creating it. Does not count as a use of the breaker.
+     *
+     * @param key key of the breaker
+     * @return the breaker, or null if there is none
+     */
+    public CircuitBreaker<T> find(K key) {
+        Entry<T> entry = breakers.get(key);
+        return entry != null ? entry.breaker : null;
+    }
+
+    /**
+     * Drop the breaker of a key.
+     *
+     * @param key key of the breaker
+     * @return the removed breaker, or null if there was none
+     */
+    public CircuitBreaker<T> remove(K key) {
+        Entry<T> entry = breakers.remove(key);
+        return entry != null ? entry.breaker : null;
+    }
+
+    // Number of breakers currently held
+    public int size() {
+        return breakers.size();
+    }
+
+    // Evict idle breakers now, e.g. from a scheduled task. Lookups also do it as breakers are added
+    public void cleanUp() {
+        long now = clock.nanoTime();
+        if (sweeping.compareAndSet(false, true)) {
+            try {
+                sweep(now);
+            } finally {
+                sweeping.set(false);
+            }
+        }
+    }
+
+    // Called after a lookup missed, the only way the map grows
+    private void maybeSweep(long now) {
+        if (breakers.size() <= maximumSize && now - lastSweep < idleTimeout) {
+            return;
+        }
+        cleanUp();
+    }
+
+    private void sweep(long now) {
+        lastSweep = now;
+        for (Map.Entry<K, Entry<T>> e : breakers.entrySet()) {
+            if (now - e.getValue().lastAccess > idleTimeout) {
+                breakers.remove(e.getKey(), e.getValue());
+            }
+        }
+        int excess = breakers.size() - maximumSize;
+        if (excess <= 0) {
+            return;
+        }
+        // Trim below the limit, so that the next sweep only happens after that many new keys and
+        // the cost of the scan is spread over them
+        excess += maximumSize / 8;
+        long[] accessTimes = new long[breakers.size()];
+        int n = 0;
+        for (Entry<T> entry : breakers.values()) {
+            if (n == accessTimes.length) {
+                break;
+            }
+            accessTimes[n++] = entry.lastAccess - now;
+        }
+        if (n == 0) {
+            return;
+        }
+        Arrays.sort(accessTimes, 0, n);
+        long cutoff = accessTimes[Math.min(excess, n) - 1];
+        // Breakers used since the snapshot survive, eviction is only approximately LRU
+        for (Map.Entry<K, Entry<T>> e : breakers.entrySet()) {
+            if (e.getValue().lastAccess - now <= cutoff) {
+                breakers.remove(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private static final class Entry<T> {
+        final CircuitBreaker<T> breaker;
+        volatile long lastAccess;
+
+        Entry(CircuitBreaker<T> breaker, long now) {
+            this.breaker = breaker;
+            this.lastAccess = now;
+        }
+
+        void touch(long now) {
+            if (now - lastAccess > TOUCH_GRANULARITY) {
+                lastAccess = now;
+            }
+        }
+    }
+}
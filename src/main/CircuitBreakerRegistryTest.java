@@ -0,0 +1,146 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Circuit breaker registry test
+ */
+class CircuitBreakerRegistryTest {
+
+    private static final long SECOND = 1000L * 1000 * 1000;
+
+    private static final RemoteServiceException FAILURE = new RemoteServiceException("Down");
+
+    private final ManualNanoClock clock = new ManualNanoClock();
+
+    private final CircuitBreakerConfig config = CircuitBreakerConfig.builder()
+            .failureThreshold(2)
+            .retryTimePeriod(2 * SECOND)
+            .clock(clock)
+            .build();
+
+    private CircuitBreakerRegistry<String, String> registry(int maximumSize, long idleTimeout) {
+        return new CircuitBreakerRegistry<>(host -> () -> "Response of " + host, config,
+                maximumSize, idleTimeout);
+    }
+
+    @Test
+    void testBreakerIsCreatedLazilyAndShared() throws RemoteServiceException {
+        var registry = registry(100, 60 * SECOND);
+        assertNull(registry.find("a"));
+        var breaker = registry.circuitBreaker("a");
+        assertSame(breaker, registry.circuitBreaker("a"));
+        assertSame(breaker, registry.find("a"));
+        assertNotSame(breaker, registry.circuitBreaker("b"));
+        assertEquals("Response of a", breaker.attemptRequest());
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    void testBreakersOfDifferentKeysAreIndependent() {
+        var registry = registry(100, 60 * SECOND);
+        registry.circuitBreaker("a").recordFailure(FAILURE);
+        registry.circuitBreaker("a").recordFailure(FAILURE);
+        assertEquals("OPEN", registry.circuitBreaker("a").getState());
+        assertEquals("CLOSED", registry.circuitBreaker("b").getState());
+    }
+
+    @Test
+    void testConfigPerKey() {
+        var registry = registry(100, 60 * SECOND);
+        var slidingWindow = CircuitBreakerConfig.builder()
+                .slidingWindow(10, 4, 50)
+                .clock(clock)
+                .build();
+        var breaker = registry.circuitBreaker("a", slidingWindow);
+        assertTrue(breaker instanceof SlidingWindowCircuitBreaker);
+        //The configuration only matters when the breaker is created
+        assertSame(breaker, registry.circuitBreaker("a"));
+        assertTrue(registry.circuitBreaker("b") instanceof DefaultCircuitBreaker);
+    }
+
+    @Test
+    void testIdleBreakersAreEvicted() {
+        var registry = registry(100, 60 * SECOND);
+        var idle = registry.circuitBreaker("idle");
+        var busy = registry.circuitBreaker("busy");
+        for (int i = 0; i < 4; i++) {
+            clock.advanceSeconds(20);
+            registry.circuitBreaker("busy");
+        }
+        //Looking up a new key sweeps breakers that were not used for a minute
+        registry.circuitBreaker("new");
+        assertNull(registry.find("idle"));
+        assertSame(busy, registry.find("busy"));
+        assertEquals(2, registry.size());
+        //The key starts over with a new breaker
+        assertNotSame(idle, registry.circuitBreaker("idle"));
+    }
+
+    @Test
+    void testSizeIsBounded() {
+        var registry = registry(16, 3600 * SECOND);
+        var hot = registry.circuitBreaker("hot");
+        for (int i = 0; i < 1000; i++) {
+            clock.advance(SECOND);
+            registry.circuitBreaker("host-" + i);
+            registry.circuitBreaker("hot");
+        }
+        assertTrue(registry.size() <= 17, "size " + registry.size());
+        //The least recently used breakers go first
+        assertSame(hot, registry.find("hot"));
+        assertNull(registry.find("host-0"));
+        assertTrue(registry.find("host-999") != null);
+    }
+
+    @Test
+    void testConcurrentLookupsShareOneBreaker() throws InterruptedException {
+        var created = new AtomicInteger();
+        var registry = new CircuitBreakerRegistry<String, String>(host -> {
+            created.incrementAndGet();
+            return () -> host;
+        }, config, 100, 60 * SECOND);
+        var seen = ConcurrentHashMap.<CircuitBreaker<String>>newKeySet();
+        int threads = 8;
+        var start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 1000; i++) {
+                    seen.add(registry.circuitBreaker("shared"));
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(1, seen.size());
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    void testMonitoringServiceLooksUpEndpoints() {
+        var registry = registry(100, 60 * SECOND);
+        var monitoringService = new MonitoringService(registry);
+        assertEquals("Response of quick", monitoringService.quickServiceResponse());
+        assertEquals("Response of host-1", monitoringService.remoteServiceResponse("host-1"));
+        assertEquals(2, registry.size());
+    }
+}
@@ -0,0 +1,62 @@
+package main;
+
+/**
+ * State of a circuit breaker at one point in time, see {@link AbstractCircuitBreaker#snapshot()}.
+ * Times are nanoseconds of the clock of the circuit breaker, they only mean something to circuit
+ * breakers reading the same clock. {@link CircuitBreakerStateStore} converts them to wall-clock
+ * time and back to carry a snapshot over a restart.
+ */
+public final class CircuitBreakerSnapshot {
+
+    private final State state;
+    private final int attempt;
+    private final long closedPayload;
+    private final long remainingWait;
+    private final long[] window;
+    private final long takenAt;
+
+    CircuitBreakerSnapshot(State state, int attempt, long closedPayload, long remainingWait,
+                           long[] window, long takenAt) {
+        this.state = state;
+        this.attempt = attempt;
+        this.closedPayload = closedPayload;
+        this.remainingWait = remainingWait;
+        this.window = window;
+        this.takenAt = takenAt;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    // Times the circuit opened in a row, 0 while CLOSED
+    public int getAttempt() {
+        return attempt;
+    }
+
+    // Counters kept in the state word while CLOSED, e.g. consecutive failures
+    long getClosedPayload() {
+        return closedPayload;
+    }
+
+    // Time, in nanoseconds, left until the next trial call while OPEN
+    public long getRemainingWait() {
+        return remainingWait;
+    }
+
+    // Buckets of the sliding window, null for circuit breakers without one
+    long[] getWindow() {
+        return window;
+    }
+
+    // Time the snapshot was taken at
+    public long getTakenAt() {
+        return takenAt;
+    }
+
+    @Override
+    public String toString() {
+        return state + (state == State.OPEN ? " for another " + remainingWait + "ns" : "")
+                + ", attempt=" + attempt;
+    }
+}
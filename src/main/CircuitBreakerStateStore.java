@@ -0,0 +1,359 @@
+package main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the state of the circuit breakers of a registry in a memory-mapped file, so that a restart
+ * during an outage does not flood the broken services again: breakers that were OPEN come back OPEN
+ * for what is left of their wait interval, CLOSED ones keep their counters and sliding windows.
+ *
+ * <p>Monotonic time does not survive a restart, so every snapshot is written with the wall-clock
+ * time it was taken at, and converted back to the monotonic clock of the breakers on load. A
+ * snapshot older than maxAge is not restored at all.
+ *
+ * <p>The file holds two slots that saves take turns on, so a save never overwrites the last
+ * complete one. Each slot has a header with a sequence number and a CRC of the header and body.
+ * The body is written and forced to disk before the header that points to it. Load takes the
+ * valid slot with the highest sequence number, so a crash in the middle of a save falls back to
+ * the save before it.
+ */
+public class CircuitBreakerStateStore implements AutoCloseable {
+
+    private static final int MAGIC = 0x43425353;
+    private static final int VERSION = 2;
+    // magic, version, sequence number, body offset, body length, wall-clock time of the save,
+    // number of breakers, then the CRC of all of them and the body
+    private static final int CRC_OFFSET = 4 + 4 + 8 + 4 + 4 + 8 + 4;
+    // Headers of the two slots, bodies after them
+    private static final int SLOT_SIZE = 64;
+    private static final int BODIES_OFFSET = 2 * SLOT_SIZE;
+    private static final State[] STATES = State.values();
+
+    private final Path path;
+    private final NanoClock clock;
+    private final Clock wallClock;
+    private final long maxAge;
+    private final LongAdder saveFailures = new LongAdder();
+    // Guarded by this
+    private FileChannel file;
+    private MappedByteBuffer mapped;
+    private ScheduledThreadPoolExecutor saver;
+    private CircuitBreakerRegistry<?, ?> savedRegistry;
+    // Slot of the last complete save and its sequence number, found in the file on the first save
+    private boolean slotsRead;
+    private int lastSlot = -1;
+    private long lastSequence = -1;
+
+    /**
+     * Constructor to create a store on the system clocks.
+     *
+     * @param path   the file, created on the first save
+     * @param maxAge time, in nanoseconds, after which a saved state is too old to be restored
+     */
+    public CircuitBreakerStateStore(Path path, long maxAge) {
+        this(path, maxAge, NanoClock.SYSTEM, Clock.systemUTC());
+    }
+
+    /**
+     * Constructor to create a store on the given clocks.
+     *
+     * @param clock     the clock of the circuit breakers
+     * @param wallClock wall-clock time, shared by the runs before and after a restart
+     */
+    public CircuitBreakerStateStore(Path path, long maxAge, NanoClock clock, Clock wallClock) {
+        if (maxAge <= 0) {
+            throw new IllegalArgumentException("maxAge must be positive");
+        }
+        this.path = path;
+        this.maxAge = maxAge;
+        this.clock = clock;
+        this.wallClock = wallClock;
+    }
+
+    /**
+     * Write the state of every circuit breaker of the registry as the newest save, over the one
+     * before the last. Breakers are named by the toString() of their key.
+     *
+     * @param registry the registry
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void save(CircuitBreakerRegistry<?, ?> registry) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        var body = new DataOutputStream(bytes);
+        long now = clock.nanoTime();
+        long wallNow = wallClock.millis();
+        int[] count = new int[1];
+        IOException[] failure = new IOException[1];
+        registry.forEach((key, circuitBreaker) -> {
+            if (!(circuitBreaker instanceof AbstractCircuitBreaker) || failure[0] != null) {
+                return;
+            }
+            try {
+                write(body, String.valueOf(key),
+                        ((AbstractCircuitBreaker<?>) circuitBreaker).snapshot(), now);
+                count[0]++;
+            } catch (IOException ex) {
+                failure[0] = ex;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        byte[] content = bytes.toByteArray();
+        MappedByteBuffer buffer = map(BODIES_OFFSET);
+        if (!slotsRead) {
+            // Saves of a previous run count, a fresh sequence would make them look newer
+            lastSlot = newestSlot(buffer);
+            lastSequence = lastSlot >= 0 ? buffer.getLong(headerOffset(lastSlot) + 8) : -1;
+            slotsRead = true;
+        }
+        int slot = lastSlot == 0 ? 1 : 0;
+        // The body goes before or after that of the last save, never over it
+        int bodyOffset = BODIES_OFFSET;
+        if (lastSlot >= 0) {
+            int keptOffset = buffer.getInt(headerOffset(lastSlot) + 16);
+            if (BODIES_OFFSET + content.length > keptOffset) {
+                bodyOffset = keptOffset + buffer.getInt(headerOffset(lastSlot) + 20);
+            }
+        }
+        buffer = map(bodyOffset + content.length);
+        buffer.duplicate().position(bodyOffset).put(content);
+        buffer.force();
+        // Written once the body is on disk, a crash before the header is complete leaves a slot
+        // that fails its CRC, and the last save in the other one
+        int header = headerOffset(slot);
+        long sequence = lastSequence + 1;
+        buffer.putInt(header, MAGIC)
+                .putInt(header + 4, VERSION)
+                .putLong(header + 8, sequence)
+                .putInt(header + 16, bodyOffset)
+                .putInt(header + 20, content.length)
+                .putLong(header + 24, wallNow)
+                .putInt(header + 32, count[0]);
+        buffer.putInt(header + CRC_OFFSET, crcOf(buffer, header));
+        buffer.force();
+        lastSlot = slot;
+        lastSequence = sequence;
+    }
+
+    private static int headerOffset(int slot) {
+        return slot * SLOT_SIZE;
+    }
+
+    // CRC of the header of the slot and of its body, which must lie within the buffer
+    private static int crcOf(ByteBuffer buffer, int header) {
+        int bodyOffset = buffer.getInt(header + 16);
+        var crc = new CRC32();
+        crc.update(buffer.duplicate().position(header).limit(header + CRC_OFFSET));
+        crc.update(buffer.duplicate().position(bodyOffset)
+                .limit(bodyOffset + buffer.getInt(header + 20)));
+        return (int) crc.getValue();
+    }
+
+    // Slot of the valid save with the highest sequence number, -1 if neither slot is valid
+    private static int newestSlot(ByteBuffer buffer) {
+        int newest = -1;
+        for (int slot = 0; slot < 2; slot++) {
+            if (isValid(buffer, headerOffset(slot)) && (newest < 0
+                    || buffer.getLong(headerOffset(slot) + 8)
+                    > buffer.getLong(headerOffset(newest) + 8))) {
+                newest = slot;
+            }
+        }
+        return newest;
+    }
+
+    private static boolean isValid(ByteBuffer buffer, int header) {
+        if (buffer.capacity() < BODIES_OFFSET || buffer.getInt(header) != MAGIC
+                || buffer.getInt(header + 4) != VERSION) {
+            return false;
+        }
+        int bodyOffset = buffer.getInt(header + 16);
+        int length = buffer.getInt(header + 20);
+        return bodyOffset >= BODIES_OFFSET && length >= 0
+                && bodyOffset <= buffer.capacity() - length
+                && crcOf(buffer, header) == buffer.getInt(header + CRC_OFFSET);
+    }
+
+    private static void write(DataOutputStream out, String name, CircuitBreakerSnapshot snapshot,
+                              long now) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > Short.MAX_VALUE) {
+            return;
+        }
+        out.writeShort(nameBytes.length);
+        out.write(nameBytes);
+        out.writeByte(snapshot.getState().ordinal());
+        out.writeByte(snapshot.getAttempt());
+        out.writeLong(snapshot.getClosedPayload());
+        out.writeLong(snapshot.getRemainingWait());
+        // How long before the save the snapshot was taken
+        out.writeLong(now - snapshot.getTakenAt());
+        long[] window = snapshot.getWindow();
+        out.writeInt(window != null ? window.length : -1);
+        if (window != null) {
+            for (long value : window) {
+                out.writeLong(value);
+            }
+        }
+    }
+
+    // Map at least size bytes of the file, growing the mapping in steps to limit remapping
+    private MappedByteBuffer map(int size) throws IOException {
+        if (mapped == null || mapped.capacity() < size) {
+            if (file == null) {
+                file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+            }
+            // The first mapping covers what earlier runs wrote
+            int capacity = Math.max(size, mapped != null ? 2 * mapped.capacity()
+                    : (int) Math.max(4096, Math.min(file.size(), Integer.MAX_VALUE)));
+            mapped = file.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+        return mapped;
+    }
+
+    /**
+     * Read the last save, with every time converted to the clock of the circuit breakers.
+     *
+     * @return snapshots by breaker name, empty if there is no valid save or it is too old
+     * @throws IOException if the file exists but cannot be read
+     */
+    public synchronized Map<String, CircuitBreakerSnapshot> load() throws IOException {
+        if (!Files.exists(path)) {
+            return Collections.emptyMap();
+        }
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < BODIES_OFFSET) {
+                return Collections.emptyMap();
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int slot = newestSlot(buffer);
+        if (slot < 0) {
+            return Collections.emptyMap();
+        }
+        int header = headerOffset(slot);
+        byte[] content = new byte[buffer.getInt(header + 20)];
+        buffer.position(buffer.getInt(header + 16)).get(content);
+        long now = clock.nanoTime();
+        // A wall clock stepped back makes the save look younger than it is, never negative
+        long sinceSave = TimeUnit.MILLISECONDS.toNanos(
+                Math.max(0, wallClock.millis() - buffer.getLong(header + 24)));
+        if (sinceSave > maxAge) {
+            return Collections.emptyMap();
+        }
+        return read(ByteBuffer.wrap(content), buffer.getInt(header + 32), now - sinceSave);
+    }
+
+    // savedAt is the time of the save on the clock of the circuit breakers
+    private static Map<String, CircuitBreakerSnapshot> read(ByteBuffer body, int count,
+                                                            long savedAt) {
+        var snapshots = new HashMap<String, CircuitBreakerSnapshot>();
+        try {
+            for (int i = 0; i < count; i++) {
+                var nameBytes = new byte[body.getShort()];
+                body.get(nameBytes);
+                int state = body.get();
+                int attempt = body.get() & 0xFF;
+                long closedPayload = body.getLong();
+                long remainingWait = body.getLong();
+                long age = body.getLong();
+                int windowLength = body.getInt();
+                long[] window = windowLength >= 0 ? new long[windowLength] : null;
+                if (window != null) {
+                    body.asLongBuffer().get(window);
+                    body.position(body.position() + 8 * windowLength);
+                }
+                if (state >= 0 && state < STATES.length) {
+                    snapshots.put(new String(nameBytes, StandardCharsets.UTF_8),
+                            new CircuitBreakerSnapshot(STATES[state], attempt, closedPayload,
+                                    remainingWait, window, savedAt - age));
+                }
+            }
+        } catch (BufferUnderflowException | NegativeArraySizeException ex) {
+            // Matches its CRC, so written by another version, nothing is trusted
+            return Collections.emptyMap();
+        }
+        return snapshots;
+    }
+
+    /**
+     * Save the registry now and then from a background thread, and once more on close.
+     *
+     * @param registry the registry
+     * @param interval time, in nanoseconds, between two saves
+     */
+    public synchronized void saveEvery(CircuitBreakerRegistry<?, ?> registry, long interval) {
+        if (saver != null) {
+            throw new IllegalStateException("Already saving a registry");
+        }
+        saver = new ScheduledThreadPoolExecutor(1, task -> {
+            var thread = new Thread(task, "circuit-breaker-state-saver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        savedRegistry = registry;
+        saver.scheduleWithFixedDelay(() -> saveQuietly(registry), interval, interval,
+                TimeUnit.NANOSECONDS);
+    }
+
+    private void saveQuietly(CircuitBreakerRegistry<?, ?> registry) {
+        try {
+            save(registry);
+        } catch (IOException | RuntimeException ex) {
+            saveFailures.increment();
+        }
+    }
+
+    // Number of background saves that failed
+    public long getSaveFailures() {
+        return saveFailures.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        ScheduledThreadPoolExecutor running;
+        synchronized (this) {
+            running = saver;
+            saver = null;
+        }
+        if (running != null) {
+            // Let a save in progress finish before the last one
+            running.shutdown();
+            try {
+                running.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            saveQuietly(savedRegistry);
+        }
+        synchronized (this) {
+            if (file != null) {
+                file.close();
+                file = null;
+                mapped = null;
+                slotsRead = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Circuit breaker state store test. Each run gets its own monotonic clock, starting somewhere else,
+ * as after a restart. Only the wall clock is shared.
+ */
+class CircuitBreakerStateStoreTest {
+
+    private static final long MILLISECOND = 1000L * 1000;
+    private static final long SECOND = 1000 * MILLISECOND;
+    private static final long HOUR = 3600 * SECOND;
+
+    private static final RemoteServiceException FAILURE = new RemoteServiceException("Down");
+
+    //Wall clock that only moves when told to
+    private static final class WallClock extends Clock {
+        long millis = 1_700_000_000_000L;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+    }
+
+    private final WallClock wallClock = new WallClock();
+    private final Path file = Path.of(System.getProperty("java.io.tmpdir"),
+            "circuit-breakers-" + System.nanoTime() + ".state");
+
+    @AfterEach
+    void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static CircuitBreakerRegistry<String, String> registry(CircuitBreakerConfig config) {
+        return new CircuitBreakerRegistry<>(endpoint -> () -> "Response", config, 100, HOUR);
+    }
+
+    private static CircuitBreakerConfig config(ManualNanoClock clock) {
+        return CircuitBreakerConfig.builder()
+                .failureThreshold(2)
+                .retryTimePeriod(2 * SECOND)
+                .clock(clock)
+                .build();
+    }
+
+    @Test
+    void testOpenCircuitSurvivesRestart() throws IOException {
+        var clock = new ManualNanoClock(5 * HOUR);
+        var registry = registry(config(clock));
+        registry.circuitBreaker("delayed").recordFailure(FAILURE);
+        registry.circuitBreaker("delayed").recordFailure(FAILURE);
+        registry.circuitBreaker("quick").recordFailure(FAILURE);
+        clock.advance(500 * MILLISECOND);
+        try (var store = new CircuitBreakerStateStore(file, HOUR, clock, wallClock)) {
+            store.save(registry);
+        }
+
+        //Restart one second later
+        wallClock.millis += 1000;
+        var restartedClock = new ManualNanoClock(-7 * HOUR);
+        var restarted = registry(config(restartedClock));
+        try (var store = new CircuitBreakerStateStore(file, HOUR, restartedClock, wallClock)) {
+            restarted.restore(store.load());
+        }
+        var delayed = restarted.circuitBreaker("delayed");
+        assertEquals("OPEN", delayed.getState());
+        //Half a second of the wait interval is left
+        restartedClock.advance(400 * MILLISECOND);
+        assertEquals("OPEN", delayed.getState());
+        restartedClock.advance(200 * MILLISECOND);
+        assertEquals("HALF_OPEN", delayed.getState());
+        //The quick service keeps its failure, the next one trips it
+        var quick = restarted.circuitBreaker("quick");
+        assertEquals("CLOSED", quick.getState());
+        quick.recordFailure(FAILURE);
+        assertEquals("OPEN", quick.getState());
+    }
+
+    @Test
+    void testBreakersAlreadyCreatedAreRestored() throws IOException {
+        var clock = new ManualNanoClock();
+        var registry = registry(config(clock));
+        registry.circuitBreaker("delayed").setState(State.OPEN);
+        try (var store = new CircuitBreakerStateStore(file, HOUR, clock, wallClock)) {
+            store.save(registry);
+        }
+        var restarted = registry(config(new ManualNanoClock()));
+        var delayed = restarted.circuitBreaker("delayed");
+        try (var store = new CircuitBreakerStateStore(file, HOUR, clock, wallClock)) {
+            restarted.restore(store.load());
+        }
+        assertEquals("OPEN", delayed.getState());
+    }
+
+    @Test
+    void testSlidingWindowSurvivesRestart() throws IOException {
+        var clock = new ManualNanoClock();
+        var config = CircuitBreakerConfig.builder()
+                .slidingWindow(10, 5, 50)
+                .clock(clock)
+                .build();
+        var registry = registry(config);
+        var breaker = (SlidingWindowCircuitBreaker<String>) registry.circuitBreaker("quick");
+        for (int i = 0; i < 4; i++) {
+            breaker.recordFailure(FAILURE);
+            breaker.recordSuccess();
+            breaker.recordSuccess();
+        }
+        //The last 10 calls hold 3 failures
+        assertEquals(30.0f, breaker.failureRate());
+        try (var store = new CircuitBreakerStateStore(file, HOUR, clock, wallClock)) {
+            store.save(registry);
+            var restarted = registry(config);
+            restarted.restore(store.load());
+            var restored = (SlidingWindowCircuitBreaker<String>) restarted.circuitBreaker("quick");
+            assertEquals(30.0f, restored.failureRate());
+        }
+    }
+
+    @Test
+    void testTimeBasedWindowAgesOverRestart() {
+        var clock = new ManualNanoClock();
+        var window = new TimeBasedSlidingWindow(10 * SECOND, 10, clock);
+        for (int i = 0; i < 5; i++) {
+            window.record(true);
+        }
+        clock.advance(3 * SECOND);
+        for (int i = 0; i < 5; i++) {
+            window.record(false);
+        }
+        long[] snapshot = window.snapshot();
+
+        var restartedClock = new ManualNanoClock(42 * HOUR);
+        var stillInside = new TimeBasedSlidingWindow(10 * SECOND, 10, restartedClock);
+        stillInside.restore(snapshot, 6 * SECOND);
+        assertEquals(10, stillInside.totalCalls());
+        assertEquals(5, stillInside.failedCalls());
+        //The failures slide out one bucket later, as they would have without the restart
+        restartedClock.advance(SECOND);
+        assertEquals(5, stillInside.totalCalls());
+        assertEquals(0, stillInside.failedCalls());
+
+        var slidOut = new TimeBasedSlidingWindow(10 * SECOND, 10, restartedClock);
+        slidOut.restore(snapshot, 7 * SECOND);
+        assertEquals(5, slidOut.totalCalls());
+        assertEquals(0, slidOut.failedCalls());
+        //New calls land in the restored window as usual
+        slidOut.record(true);
+        assertEquals(6, slidOut.totalCalls());
+        assertEquals(1, slidOut.failedCalls());
+    }
+
+    @Test
+    void testOldOrTornSaveIsIgnored() throws IOException {
+        var clock = new ManualNanoClock();
+        var registry = registry(config(clock));
+        registry.circuitBreaker("delayed").setState(State.OPEN);
+        try (var store = new CircuitBreakerStateStore(file, HOUR, clock, wallClock)) {
+            store.save(registry);
+            assertEquals(1, store.load().size());
+            wallClock.millis += 2 * 3600 * 1000;
+            assertTrue(store.load().isEmpty());
+            wallClock.millis -= 2 * 3600 * 1000;
+
+            //Flip a byte of the body, as a crash in the middle of a save could leave it
+            try (var channel = FileChannel.open(file, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                var content = ByteBuffer.allocate(1);
+                channel.read(content, 32);
+                content.put(0, (byte) ~content.get(0)).rewind();
+                channel.write(content, 32);
+            }
+            assertTrue(store.load().isEmpty());
+        }
+    }
+
+    @Test
+    void testTornSaveFallsBackToTheSaveBefore() throws IOException {
+        var clock = new ManualNanoClock();
+        var registry = registry(config(clock));
+        registry.circuitBreaker("delayed").setState(State.OPEN);
+        try (var store = new CircuitBreakerStateStore(file, HOUR, clock, wallClock)) {
+            store.save(registry);
+            registry.circuitBreaker("slow").setState(State.OPEN);
+            store.save(registry);
+            assertEquals(2, store.load().size());
+        }
+        //A crash in the middle of writing the second save, whose header is the second one
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            var bodyOffset = ByteBuffer.allocate(4);
+            channel.read(bodyOffset, 64 + 16);
+            channel.write(ByteBuffer.allocate(8), bodyOffset.getInt(0) + 4);
+        }
+        try (var store = new CircuitBreakerStateStore(file, HOUR, clock, wallClock)) {
+            var loaded = store.load();
+            assertEquals(1, loaded.size());
+            assertEquals(State.OPEN, loaded.get("delayed").getState());
+            //Saves after a restart still replace the older slot, and are the ones loaded
+            registry.circuitBreaker("quick").setState(State.OPEN);
+            store.save(registry);
+            assertEquals(3, store.load().size());
+            store.save(registry);
+            assertEquals(3, store.load().size());
+        }
+        try (var store = new CircuitBreakerStateStore(file, HOUR, clock, wallClock)) {
+            store.save(registry);
+            assertEquals(3, store.load().size());
+        }
+    }
+}
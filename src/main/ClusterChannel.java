@@ -0,0 +1,22 @@
+package main;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Carries {@link ClusterStateMessage}s between the nodes of a cluster. Delivery is best effort:
+ * messages may be lost, duplicated or reordered, and a node may receive its own messages.
+ */
+public interface ClusterChannel extends AutoCloseable {
+
+    // Send a message to every node listening on the channel.
+    void publish(ClusterStateMessage message) throws IOException;
+
+    // Start delivering received messages to the listener, on a thread of the channel. A channel
+    // has a single listener.
+    void subscribe(Consumer<ClusterStateMessage> listener);
+
+    // Stop receiving and release the channel.
+    @Override
+    void close() throws IOException;
+}
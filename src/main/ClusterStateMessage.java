@@ -0,0 +1,157 @@
+package main;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * What one node tells the others about one of its circuit breakers: a state transition, or a
+ * heartbeat with its call counters. Encoded in a fixed layout of at most {@link #MAX_SIZE} bytes,
+ * so that it fits in a single datagram or a slot of a shared file.
+ *
+ * <p>The counters are the total numbers of failed and successful calls the node ever recorded.
+ * They only grow, so the latest values of every node are all that needs to be kept to know the
+ * calls of the whole cluster, however many messages were lost or reordered.
+ */
+public final class ClusterStateMessage {
+
+    public static final int MAX_SIZE = 120;
+    // magic, version, kind, state, name length, node id, sequence, failed and successful calls
+    private static final int FIXED_SIZE = 4 + 1 + 1 + 1 + 1 + 8 + 8 + 8 + 8;
+    public static final int MAX_NAME_BYTES = MAX_SIZE - FIXED_SIZE;
+    private static final int MAGIC = 0x43425354;
+    private static final byte VERSION = 2;
+    private static final byte TRANSITION = 0;
+    private static final byte HEARTBEAT = 1;
+    private static final State[] STATES = State.values();
+
+    private final String name;
+    private final byte[] nameBytes;
+    private final boolean transition;
+    private final State state;
+    private final long nodeId;
+    private final long sequence;
+    private final long failedCalls;
+    private final long successfulCalls;
+
+    /**
+     * Constructor to create a message.
+     *
+     * @param name        name of the circuit breaker, the same on every node
+     * @param transition  true if the circuit breaker just changed to the state, false for a
+     *                    heartbeat
+     * @param state       state of the circuit breaker on the sending node
+     * @param nodeId      id of the sending node
+     * @param sequence    position of the message among those sent by the node
+     * @param failedCalls     failed calls recorded so far by the node
+     * @param successfulCalls successful calls recorded so far by the node
+     */
+    public ClusterStateMessage(String name, boolean transition, State state, long nodeId,
+                               long sequence, long failedCalls, long successfulCalls) {
+        this(name, name.getBytes(StandardCharsets.UTF_8), transition, state, nodeId, sequence,
+                failedCalls, successfulCalls);
+        if (nameBytes.length > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException(
+                    "name must not be longer than " + MAX_NAME_BYTES + " bytes in UTF-8");
+        }
+    }
+
+    private ClusterStateMessage(String name, byte[] nameBytes, boolean transition, State state,
+                                long nodeId, long sequence, long failedCalls,
+                                long successfulCalls) {
+        this.name = name;
+        this.nameBytes = nameBytes;
+        this.transition = transition;
+        this.state = state;
+        this.nodeId = nodeId;
+        this.sequence = sequence;
+        this.failedCalls = failedCalls;
+        this.successfulCalls = successfulCalls;
+    }
+
+    /**
+     * Write the message at the position of the buffer, advancing it.
+     *
+     * @param buffer buffer with at least {@link #MAX_SIZE} bytes remaining
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(MAGIC)
+                .put(VERSION)
+                .put(transition ? TRANSITION : HEARTBEAT)
+                .put((byte) state.ordinal())
+                .put((byte) nameBytes.length)
+                .putLong(nodeId)
+                .putLong(sequence)
+                .putLong(failedCalls)
+                .putLong(successfulCalls)
+                .put(nameBytes);
+    }
+
+    /**
+     * Read a message from the position of the buffer.
+     *
+     * @param buffer buffer holding a message written by {@link #writeTo}
+     * @return the message, or null if the bytes are not a message of this version
+     */
+    public static ClusterStateMessage readFrom(ByteBuffer buffer) {
+        try {
+            if (buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+                return null;
+            }
+            byte kind = buffer.get();
+            int state = buffer.get();
+            int nameLength = buffer.get() & 0xFF;
+            if ((kind != TRANSITION && kind != HEARTBEAT) || state < 0 || state >= STATES.length
+                    || nameLength > MAX_NAME_BYTES) {
+                return null;
+            }
+            long nodeId = buffer.getLong();
+            long sequence = buffer.getLong();
+            long failedCalls = buffer.getLong();
+            long successfulCalls = buffer.getLong();
+            var nameBytes = new byte[nameLength];
+            buffer.get(nameBytes);
+            return new ClusterStateMessage(new String(nameBytes, StandardCharsets.UTF_8),
+                    nameBytes, kind == TRANSITION, STATES[state], nodeId, sequence, failedCalls,
+                    successfulCalls);
+        } catch (BufferUnderflowException ex) {
+            return null;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // true for a state transition, false for a heartbeat
+    public boolean isTransition() {
+        return transition;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getFailedCalls() {
+        return failedCalls;
+    }
+
+    public long getSuccessfulCalls() {
+        return successfulCalls;
+    }
+
+    @Override
+    public String toString() {
+        return (transition ? "transition " : "heartbeat ") + name + " " + state + " from node "
+                + Long.toHexString(nodeId) + " #" + sequence + ", failed=" + failedCalls
+                + ", successful=" + successfulCalls;
+    }
+}
@@ -0,0 +1,251 @@
+package main;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Shares the state of circuit breakers between the nodes of a cluster, so that a dependency that
+ * went down is paid for with failures on one node only:
+ * <ul>
+ *   <li>when a shared circuit breaker opens, every other node opens its circuit breaker of the
+ *       same name,</li>
+ *   <li>when it closes after its trial calls succeeded, every other node whose circuit is not
+ *       CLOSED closes it too,</li>
+ *   <li>HALF_OPEN is not shared, every node runs its own trial calls.</li>
+ * </ul>
+ * Transitions applied on behalf of another node are not sent on again. Heartbeats carry the
+ * call counters of every shared circuit breaker, see {@link #clusterFailedCalls}. The calls other
+ * nodes made since their previous heartbeat count towards tripping the local circuit breaker, see
+ * {@link CircuitBreaker#recordRemoteOutcomes}, so failures spread over the cluster trip it even
+ * when no single node saw enough of them. The first message of a node only tells where its
+ * counters start.
+ *
+ * <p>Messages are sent from a single thread of the sync, never from the thread that made the
+ * transition. Lost messages are not sent again, a node that missed a transition learns about the
+ * failures the hard way, as it would without sharing. A transition overtaken by a later one before
+ * it was sent is dropped, the other nodes only hear of the later one.
+ */
+public class ClusterStateSync implements AutoCloseable {
+
+    private final ClusterChannel channel;
+    private final long nodeId = ThreadLocalRandom.current().nextLong();
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final Map<String, Shared> shared = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor sender;
+    // Set while a transition received from another node is applied, on the receiving thread
+    private final ThreadLocal<Boolean> applying = ThreadLocal.withInitial(() -> false);
+    private final LongAdder appliedTransitions = new LongAdder();
+    private final LongAdder publishFailures = new LongAdder();
+
+    /**
+     * Constructor to start sharing over a channel.
+     *
+     * @param channel           channel to the other nodes, closed with the sync
+     * @param heartbeatInterval time, in nanoseconds, between heartbeats. Zero or less to send
+     *                          transitions only
+     */
+    public ClusterStateSync(ClusterChannel channel, long heartbeatInterval) {
+        this.channel = channel;
+        this.sender = new ScheduledThreadPoolExecutor(1, task -> {
+            var thread = new Thread(task, "cluster-state-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (heartbeatInterval > 0) {
+            sender.scheduleAtFixedRate(this::heartbeat, heartbeatInterval, heartbeatInterval,
+                    TimeUnit.NANOSECONDS);
+        }
+        channel.subscribe(this::receive);
+    }
+
+    /**
+     * Share the state of a circuit breaker with the circuit breakers of the same name on the other
+     * nodes.
+     *
+     * @param name           name of the circuit breaker, the same on every node
+     * @param circuitBreaker the local circuit breaker
+     */
+    public void share(String name, CircuitBreaker<?> circuitBreaker) {
+        // Fails early on names that do not fit in a message
+        new ClusterStateMessage(name, false, State.CLOSED, nodeId, 0, 0, 0);
+        var entry = new Shared(name, circuitBreaker);
+        if (shared.putIfAbsent(name, entry) != null) {
+            throw new IllegalArgumentException(name + " is already shared");
+        }
+        circuitBreaker.getEvents().subscribe(entry);
+    }
+
+    // Stop sharing the circuit breaker
+    public void unshare(String name) {
+        Shared entry = shared.remove(name);
+        if (entry != null) {
+            entry.circuitBreaker.getEvents().unsubscribe(entry);
+        }
+    }
+
+    // Send the call counters of every shared circuit breaker now
+    public void heartbeat() {
+        for (Shared entry : shared.values()) {
+            send(entry, false, State.valueOf(entry.circuitBreaker.getState()));
+        }
+    }
+
+    private void send(Shared entry, boolean transition, State state) {
+        // Only the calls of this node, the outcomes received from others are not in the metrics
+        CircuitBreakerMetrics metrics = entry.circuitBreaker.getMetrics();
+        var message = new ClusterStateMessage(entry.name, transition, state, nodeId,
+                nextSequence.getAndIncrement(), metrics.getFailedCalls(),
+                metrics.getSuccessfulCalls());
+        try {
+            channel.publish(message);
+        } catch (IOException | RuntimeException ex) {
+            publishFailures.increment();
+        }
+    }
+
+    private void receive(ClusterStateMessage message) {
+        if (message.getNodeId() == nodeId) {
+            return;
+        }
+        Shared entry = shared.get(message.getName());
+        if (entry == null) {
+            return;
+        }
+        long[] calls = entry.accept(message);
+        if (calls == null) {
+            return;
+        }
+        if (message.isTransition()) {
+            // The calls that led to the transition belong to the period it ended
+            entry.apply(message.getState());
+        } else {
+            entry.circuitBreaker.recordRemoteOutcomes(calls[0], calls[1]);
+        }
+    }
+
+    /**
+     * Failed calls of a shared circuit breaker on every node, as far as this node heard of them.
+     *
+     * @param name name of the circuit breaker
+     * @return failed calls of the local circuit breaker plus the last counters of the other nodes
+     */
+    public long clusterFailedCalls(String name) {
+        Shared entry = shared.get(name);
+        if (entry == null) {
+            return 0;
+        }
+        long failedCalls = entry.circuitBreaker.getMetrics().getFailedCalls();
+        for (long[] node : entry.nodes.values()) {
+            synchronized (node) {
+                failedCalls += node[1];
+            }
+        }
+        return failedCalls;
+    }
+
+    // Number of transitions of other nodes applied to local circuit breakers
+    public long getAppliedTransitions() {
+        return appliedTransitions.sum();
+    }
+
+    // Number of messages that could not be sent
+    public long getPublishFailures() {
+        return publishFailures.sum();
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (String name : shared.keySet()) {
+            unshare(name);
+        }
+        sender.shutdown();
+        channel.close();
+    }
+
+    // A shared circuit breaker, and what the other nodes last said about it
+    private final class Shared implements Consumer<CircuitBreakerEvent> {
+
+        final String name;
+        final CircuitBreaker<?> circuitBreaker;
+        // Node id -> last sequence number, failure and success counters received from the node
+        final Map<Long, long[]> nodes = new ConcurrentHashMap<>();
+        // Sequence of the latest local OPEN or CLOSED transition, sent or applied
+        final AtomicLong lastTransition = new AtomicLong(-1);
+
+        Shared(String name, CircuitBreaker<?> circuitBreaker) {
+            this.name = name;
+            this.circuitBreaker = circuitBreaker;
+        }
+
+        // Local transition, called on the thread that made it
+        @Override
+        public void accept(CircuitBreakerEvent event) {
+            State state = event.getToState();
+            if (state == State.HALF_OPEN) {
+                return;
+            }
+            long sequence = event.getSequence();
+            lastTransition.accumulateAndGet(sequence, Math::max);
+            if (applying.get()) {
+                return;
+            }
+            try {
+                sender.execute(() -> {
+                    // Threads may publish their transitions out of order, a transition that was
+                    // overtaken by a later one would tell the other nodes the wrong state
+                    if (lastTransition.get() == sequence) {
+                        send(this, true, state);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                // Closed
+            }
+        }
+
+        // Failed and successful calls the node made since its previous message, null for a
+        // message older than one already received from the same node
+        long[] accept(ClusterStateMessage message) {
+            long[] node = nodes.computeIfAbsent(message.getNodeId(), id -> new long[] {-1, 0, 0});
+            synchronized (node) {
+                if (message.getSequence() <= node[0]) {
+                    return null;
+                }
+                boolean first = node[0] < 0;
+                long[] calls = {Math.max(0, message.getFailedCalls() - node[1]),
+                        Math.max(0, message.getSuccessfulCalls() - node[2])};
+                node[0] = message.getSequence();
+                node[1] = message.getFailedCalls();
+                node[2] = message.getSuccessfulCalls();
+                return first ? new long[2] : calls;
+            }
+        }
+
+        void apply(State state) {
+            String current = circuitBreaker.getState();
+            boolean open = State.OPEN.name().equals(current);
+            boolean closed = State.CLOSED.name().equals(current);
+            if ((state == State.OPEN && open) || (state == State.CLOSED && closed)) {
+                return;
+            }
+            applying.set(true);
+            try {
+                circuitBreaker.setState(state);
+                appliedTransitions.increment();
+            } finally {
+                applying.set(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Cluster state sync test. Every node maps the shared file on its own, as separate processes on
+ * the same host would.
+ */
+class ClusterStateSyncTest {
+
+    private static final long ONE_HOUR = TimeUnit.HOURS.toNanos(1);
+    private static final long POLL_INTERVAL = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static DefaultCircuitBreaker<String> circuitBreaker(int failureThreshold) {
+        return new DefaultCircuitBreaker<>(() -> "Response", 10_000, failureThreshold, ONE_HOUR);
+    }
+
+    @Test
+    void testOpeningOnOneNodeOpensEverywhere() throws Exception {
+        Path file = Files.createTempFile("cluster", ".state");
+        try (var first = new ClusterStateSync(new MappedFileClusterChannel(file, POLL_INTERVAL), 0);
+             var second = new ClusterStateSync(new MappedFileClusterChannel(file, POLL_INTERVAL),
+                     0);
+             var third = new ClusterStateSync(new MappedFileClusterChannel(file, POLL_INTERVAL),
+                     0)) {
+            var firstBreaker = circuitBreaker(1);
+            var secondBreaker = circuitBreaker(1);
+            var thirdBreaker = circuitBreaker(1);
+            first.share("delayed", firstBreaker);
+            second.share("delayed", secondBreaker);
+            third.share("delayed", thirdBreaker);
+
+            firstBreaker.recordFailure(new RemoteServiceException("Down"));
+            awaitTrue(() -> "OPEN".equals(secondBreaker.getState())
+                    && "OPEN".equals(thirdBreaker.getState()));
+            //Nodes that applied the transition did not pay for any failure
+            assertEquals(0, secondBreaker.getMetrics().getFailedCalls());
+            assertEquals(1, second.getAppliedTransitions());
+
+            //A successful trial on one node closes the circuit everywhere
+            thirdBreaker.setState(State.CLOSED);
+            awaitTrue(() -> "CLOSED".equals(firstBreaker.getState())
+                    && "CLOSED".equals(secondBreaker.getState()));
+            //Applied transitions are not sent on, nothing bounces back
+            Thread.sleep(50);
+            assertEquals(2, firstBreaker.getEvents().publishedEvents());
+            assertEquals(2, thirdBreaker.getEvents().publishedEvents());
+            assertEquals(2, first.getAppliedTransitions() + third.getAppliedTransitions());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testOvertakenTransitionIsNotSent() throws Exception {
+        Path file = Files.createTempFile("cluster", ".state");
+        try (var first = new ClusterStateSync(new MappedFileClusterChannel(file, POLL_INTERVAL), 0);
+             var second = new ClusterStateSync(new MappedFileClusterChannel(file, POLL_INTERVAL),
+                     0)) {
+            var firstBreaker = circuitBreaker(100);
+            var secondBreaker = circuitBreaker(100);
+            first.share("delayed", firstBreaker);
+            second.share("delayed", secondBreaker);
+            //The thread that opened the circuit publishes after the one that closed it again
+            firstBreaker.getEvents().publish(2, State.OPEN, State.CLOSED, System.nanoTime());
+            firstBreaker.getEvents().publish(1, State.CLOSED, State.OPEN, System.nanoTime());
+            Thread.sleep(50);
+            //Messages arrive in order, once the heartbeat is in the stale OPEN would be too
+            firstBreaker.recordFailure(new RemoteServiceException("Down"));
+            first.heartbeat();
+            awaitTrue(() -> second.clusterFailedCalls("delayed") == 1);
+            assertEquals("CLOSED", secondBreaker.getState());
+            assertEquals(0, second.getAppliedTransitions());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testHeartbeatsShareFailureCounters() throws Exception {
+        Path file = Files.createTempFile("cluster", ".state");
+        try (var first = new ClusterStateSync(new MappedFileClusterChannel(file, POLL_INTERVAL), 0);
+             var second = new ClusterStateSync(new MappedFileClusterChannel(file, POLL_INTERVAL),
+                     TimeUnit.MILLISECONDS.toNanos(5))) {
+            var firstBreaker = circuitBreaker(100);
+            var secondBreaker = circuitBreaker(100);
+            first.share("quick", firstBreaker);
+            second.share("quick", secondBreaker);
+            for (int i = 0; i < 3; i++) {
+                secondBreaker.recordFailure(new RemoteServiceException("Down"));
+            }
+            firstBreaker.recordFailure(new RemoteServiceException("Down"));
+            awaitTrue(() -> first.clusterFailedCalls("quick") == 4);
+            first.heartbeat();
+            awaitTrue(() -> second.clusterFailedCalls("quick") == 4);
+            //Far below the threshold, the remote failures did not open the circuit
+            assertEquals("CLOSED", firstBreaker.getState());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testFailuresOnOtherNodesTripTheCircuit() throws Exception {
+        Path file = Files.createTempFile("cluster", ".state");
+        try (var first = new ClusterStateSync(new MappedFileClusterChannel(file, POLL_INTERVAL), 0);
+             var second = new ClusterStateSync(new MappedFileClusterChannel(file, POLL_INTERVAL),
+                     0)) {
+            var firstBreaker = circuitBreaker(5);
+            var secondBreaker = circuitBreaker(5);
+            first.share("delayed", firstBreaker);
+            second.share("delayed", secondBreaker);
+            //The first heartbeat only tells where the counters of the node start
+            secondBreaker.recordFailure(new RemoteServiceException("Down"));
+            second.heartbeat();
+            awaitTrue(() -> first.clusterFailedCalls("delayed") == 1);
+            for (int i = 0; i < 2; i++) {
+                firstBreaker.recordFailure(new RemoteServiceException("Down"));
+            }
+            for (int i = 0; i < 3; i++) {
+                secondBreaker.recordFailure(new RemoteServiceException("Down"));
+            }
+            second.heartbeat();
+            //Neither node saw 5 failures in a row, together they did
+            awaitTrue(() -> "OPEN".equals(firstBreaker.getState()));
+            assertEquals(2, firstBreaker.getMetrics().getFailedCalls());
+            //The node that tripped on remote failures tells the others
+            awaitTrue(() -> second.getAppliedTransitions() == 1);
+            assertEquals("OPEN", secondBreaker.getState());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testSlotOfDeadWriterIsSkipped() throws Exception {
+        Path file = Files.createTempFile("cluster", ".state");
+        try (var reader = new MappedFileClusterChannel(file, POLL_INTERVAL);
+             var writer = new MappedFileClusterChannel(file, POLL_INTERVAL);
+             var mapping = FileChannel.open(file, StandardOpenOption.READ,
+                     StandardOpenOption.WRITE)) {
+            var received = new LinkedBlockingQueue<ClusterStateMessage>();
+            reader.subscribe(received::add);
+            //A writer claims a slot, then dies before stamping it
+            VarHandle counter = MethodHandles.byteBufferViewVarHandle(long[].class,
+                    ByteOrder.nativeOrder());
+            counter.getAndAdd(mapping.map(FileChannel.MapMode.READ_WRITE, 0,
+                    MappedFileClusterChannel.FILE_SIZE), 0, 1L);
+            writer.publish(new ClusterStateMessage("delayed", true, State.OPEN, 42, 0, 1, 0));
+            var message = received.poll(5, TimeUnit.SECONDS);
+            assertEquals(42, message.getNodeId());
+            assertEquals(1, reader.getSkippedSlots());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testStateIsSharedWithAnotherProcess() throws Exception {
+        Path file = Files.createTempFile("cluster", ".state");
+        try (var sync = new ClusterStateSync(new MappedFileClusterChannel(file, POLL_INTERVAL),
+                0)) {
+            var circuitBreaker = circuitBreaker(1);
+            sync.share("delayed", circuitBreaker);
+            String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+            var node = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    OtherNode.class.getName(), file.toString()).inheritIO().start();
+            try {
+                //The other process opens its circuit, then waits for this one to close it
+                awaitTrue(() -> "OPEN".equals(circuitBreaker.getState()));
+                circuitBreaker.setState(State.CLOSED);
+                assertTrue(node.waitFor(10, TimeUnit.SECONDS));
+                assertEquals(0, node.exitValue());
+            } finally {
+                node.destroyForcibly();
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    //Node of the cluster in a process of its own, exits with 0 once another node closed the
+    //circuit it opened
+    static final class OtherNode {
+        public static void main(String[] args) throws Exception {
+            try (var sync = new ClusterStateSync(new MappedFileClusterChannel(Path.of(args[0]),
+                    POLL_INTERVAL), 0)) {
+                var circuitBreaker = circuitBreaker(1);
+                sync.share("delayed", circuitBreaker);
+                circuitBreaker.recordFailure(new RemoteServiceException("Down"));
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (!"CLOSED".equals(circuitBreaker.getState())) {
+                    if (System.nanoTime() > deadline) {
+                        System.exit(1);
+                    }
+                    Thread.sleep(1);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testMessageEncoding() {
+        var message = new ClusterStateMessage("delayed", true, State.OPEN, 42, 7, 3, 5);
+        var buffer = ByteBuffer.allocate(ClusterStateMessage.MAX_SIZE);
+        message.writeTo(buffer);
+        var decoded = ClusterStateMessage.readFrom(buffer.flip());
+        assertEquals("delayed", decoded.getName());
+        assertTrue(decoded.isTransition());
+        assertEquals(State.OPEN, decoded.getState());
+        assertEquals(42, decoded.getNodeId());
+        assertEquals(7, decoded.getSequence());
+        assertEquals(3, decoded.getFailedCalls());
+        assertEquals(5, decoded.getSuccessfulCalls());
+        //Anything else, e.g. a stray datagram, is not a message
+        assertNull(ClusterStateMessage.readFrom(ByteBuffer.wrap(new byte[] {1, 2, 3})));
+        assertThrows(IllegalArgumentException.class, () -> new ClusterStateMessage(
+                "x".repeat(ClusterStateMessage.MAX_NAME_BYTES + 1), true, State.OPEN, 1, 1, 1, 1));
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in time");
+            Thread.sleep(1);
+        }
+    }
+}
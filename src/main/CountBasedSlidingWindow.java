@@ -0,0 +1,141 @@
+package main;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sliding window over the last N calls. Outcomes are kept as one bit per call in a preallocated
+ * ring, so recording a call is a counter increment plus a CAS on a single word.
+ */
+public class CountBasedSlidingWindow implements SlidingWindow {
+
+    private final int size;
+    // Bit i is set if the i-th slot of the ring holds a failed call
+    private final AtomicLongArray failureBits;
+    // Same for slow calls
+    private final AtomicLongArray slowBits;
+    // Total number of calls ever recorded, the ring position is calls % size
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger slowCalls = new AtomicInteger();
+
+    /**
+     * Constructor to create a window over the last calls.
+     *
+     * @param size number of most recent calls taken into account
+     */
+    public CountBasedSlidingWindow(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be positive");
+        }
+        this.size = size;
+        this.failureBits = new AtomicLongArray((size + 63) >>> 6);
+        this.slowBits = new AtomicLongArray((size + 63) >>> 6);
+    }
+
+    @Override
+    public void record(boolean failure, boolean slow) {
+        int slot = (int) (calls.getAndIncrement() % size);
+        int index = slot >>> 6;
+        long mask = 1L << (slot & 63);
+        if (swapBit(failureBits, index, mask, failure)) {
+            failures.addAndGet(failure ? 1 : -1);
+        }
+        if (swapBit(slowBits, index, mask, slow)) {
+            slowCalls.addAndGet(slow ? 1 : -1);
+        }
+    }
+
+    // Set or clear a bit, returns false if the call falling out of the window had the same outcome
+    private static boolean swapBit(AtomicLongArray bits, int index, long mask, boolean set) {
+        long current;
+        long next;
+        do {
+            current = bits.get(index);
+            next = set ? current | mask : current & ~mask;
+            if (current == next) {
+                return false;
+            }
+        } while (!bits.compareAndSet(index, current, next));
+        return true;
+    }
+
+    @Override
+    public int totalCalls() {
+        return (int) Math.min(calls.get(), size);
+    }
+
+    @Override
+    public int failedCalls() {
+        return Math.max(0, failures.get());
+    }
+
+    @Override
+    public int slowCalls() {
+        return Math.max(0, slowCalls.get());
+    }
+
+    @Override
+    public float failureRate(int minimumCalls) {
+        return rate(failedCalls(), minimumCalls);
+    }
+
+    @Override
+    public float slowCallRate(int minimumCalls) {
+        return rate(slowCalls(), minimumCalls);
+    }
+
+    private float rate(int count, int minimumCalls) {
+        int total = totalCalls();
+        if (total == 0 || total < minimumCalls) {
+            return -1;
+        }
+        return Math.min(count, total) * 100.0f / total;
+    }
+
+    // Size, calls recorded so far, then the failure bits and the slow bits
+    @Override
+    public long[] snapshot() {
+        int words = failureBits.length();
+        long[] snapshot = new long[2 + 2 * words];
+        snapshot[0] = size;
+        snapshot[1] = calls.get();
+        for (int i = 0; i < words; i++) {
+            snapshot[2 + i] = failureBits.get(i);
+            snapshot[2 + words + i] = slowBits.get(i);
+        }
+        return snapshot;
+    }
+
+    // The calls do not age, the window holds the last calls however long ago they were made
+    @Override
+    public void restore(long[] snapshot, long elapsedNanos) {
+        int words = failureBits.length();
+        if (snapshot.length != 2 + 2 * words || snapshot[0] != size || snapshot[1] < 0) {
+            return;
+        }
+        int failed = 0;
+        int slow = 0;
+        for (int i = 0; i < words; i++) {
+            failureBits.set(i, snapshot[2 + i]);
+            slowBits.set(i, snapshot[2 + words + i]);
+            failed += Long.bitCount(snapshot[2 + i]);
+            slow += Long.bitCount(snapshot[2 + words + i]);
+        }
+        calls.set(snapshot[1]);
+        failures.set(failed);
+        slowCalls.set(slow);
+    }
+
+    @Override
+    public void reset() {
+        calls.set(0);
+        for (int i = 0; i < failureBits.length(); i++) {
+            failureBits.set(i, 0);
+            slowBits.set(i, 0);
+        }
+        failures.set(0);
+        slowCalls.set(0);
+    }
+}
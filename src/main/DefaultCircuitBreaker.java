@@ -1,125 +1,103 @@
-public class DefaultCircuitBreaker implements CircuitBreaker {
+package main;
+
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Circuit breaker that opens after a number of consecutive failures.
+ *
+ * @param <T> type of the responses of the protected service
+ */
+public class DefaultCircuitBreaker<T> extends AbstractCircuitBreaker<T> {
 
-    private final long timeout;
-    private final long retryTimePeriod;
-    private final RemoteService service;
-    long lastFailureTime;
-    private String lastFailureResponse;
-    int failureCount;
     private final int failureThreshold;
-    private State state;
-    private final long futureTime = 1000L * 1000 * 1000 * 1000;
 
     /**
      * Constructor to create an instance of Circuit Breaker.
      *
-     * @param timeout          Timeout for the API request. Not necessary for this simple example
+     * @param timeout          Timeout, in milliseconds, for the API request. Calls running longer
+     *                         are interrupted and count as failures
      * @param failureThreshold Number of failures we receive from the depended on service before
      *                         changing state to 'OPEN'
      * @param retryTimePeriod  Time, in nanoseconds, period after which a new request is made to
      *                         remote service for status check.
      */
-    DefaultCircuitBreaker(RemoteService serviceToCall, long timeout, int failureThreshold,
+    DefaultCircuitBreaker(RemoteService<T> serviceToCall, long timeout, int failureThreshold,
                           long retryTimePeriod) {
-        this.service = serviceToCall;
-        // We start in a closed state hoping that everything is fine
-        this.state = State.CLOSED;
-        this.failureThreshold = failureThreshold;
-        // Timeout for the API request.
-        // Used to break the calls made to remote resource if it exceeds the limit
-        this.timeout = timeout;
-        this.retryTimePeriod = retryTimePeriod;
-        //An absurd amount of time in future which basically indicates the last failure never happened
-        this.lastFailureTime = System.nanoTime() + futureTime;
-        this.failureCount = 0;
+        this(serviceToCall, timeout, failureThreshold, retryTimePeriod, NanoClock.SYSTEM);
     }
 
-    // Reset everything to defaults
-    @Override
-    public void recordSuccess() {
-        this.failureCount = 0;
-        this.lastFailureTime = System.nanoTime() + futureTime;
-        this.state = State.CLOSED;
+    /**
+     * Constructor to create an instance of Circuit Breaker reading time from the given clock.
+     *
+     * @param clock Source of time for retry periods and call durations
+     */
+    DefaultCircuitBreaker(RemoteService<T> serviceToCall, long timeout, int failureThreshold,
+                          long retryTimePeriod, NanoClock clock) {
+        this(serviceToCall, timeout, failureThreshold, IntervalStrategy.fixed(retryTimePeriod), 1,
+                1.0, error -> true, null, clock);
     }
 
-    @Override
-    public void recordFailure(String response) {
-        failureCount = failureCount + 1;
-        this.lastFailureTime = System.nanoTime();
-        // Cache the failure response for returning on open state
-        this.lastFailureResponse = response;
+    /**
+     * Constructor to create an instance of Circuit Breaker with a limited number of trial calls
+     * in HALF_OPEN state.
+     *
+     * @param permittedCallsInHalfOpen Number of trial requests let through to the remote service
+     *                                 while HALF_OPEN. Other callers are turned away
+     * @param halfOpenSuccessRatio     Fraction, in (0, 1], of the trial requests that must succeed
+     *                                 for the circuit to close. Otherwise it opens again
+     */
+    DefaultCircuitBreaker(RemoteService<T> serviceToCall, long timeout, int failureThreshold,
+                          long retryTimePeriod, int permittedCallsInHalfOpen,
+                          double halfOpenSuccessRatio) {
+        this(serviceToCall, timeout, failureThreshold, IntervalStrategy.fixed(retryTimePeriod),
+                permittedCallsInHalfOpen, halfOpenSuccessRatio, error -> true, null,
+                NanoClock.SYSTEM);
     }
 
-    // Evaluate the current state based on failureThreshold, failureCount and lastFailureTime.
-    protected void evaluateState() {
-        if (failureCount >= failureThreshold) { //Then something is wrong with remote service
-            if ((System.nanoTime() - lastFailureTime) > retryTimePeriod) {
-                //We have waited long enough and should try checking if service is up
-                state = State.HALF_OPEN;
-            } else {
-                //Service would still probably be down
-                state = State.OPEN;
-            }
-        } else {
-            //Everything is working fine
-            state = State.CLOSED;
-        }
+    /**
+     * Constructor to create an instance of Circuit Breaker with its own wait interval, failure
+     * classification and fallback.
+     *
+     * @param waitInterval           Time to wait while OPEN before a new request is made to remote
+     *                               service, e.g. growing while the service stays down
+     * @param recordFailurePredicate Decides which errors of the service count as failures. Other
+     *                               errors count as successful calls
+     * @param fallback               Computes the response, from the last failure, while the circuit
+     *                               does not permit calls. Null to throw CallNotPermittedException
+     *                               instead
+     * @param clock                  Source of time for retry periods and call durations
+     */
+    DefaultCircuitBreaker(RemoteService<T> serviceToCall, long timeout, int failureThreshold,
+                          IntervalStrategy waitInterval, int permittedCallsInHalfOpen,
+                          double halfOpenSuccessRatio, Predicate<Throwable> recordFailurePredicate,
+                          Function<Throwable, ? extends T> fallback, NanoClock clock) {
+        super(serviceToCall, timeout, Long.MAX_VALUE, waitInterval, permittedCallsInHalfOpen,
+                halfOpenSuccessRatio, recordFailurePredicate, fallback, clock);
+        this.failureThreshold = failureThreshold;
     }
 
+    // While CLOSED the payload is the number of consecutive failures, a success resets it
     @Override
-    public String getState() {
-        evaluateState();
-        return state.name();
+    protected long closedPayloadAfter(long payload, boolean failure) {
+        return failure ? payload + 1 : 0;
     }
 
-    /**
-     * Break the circuit beforehand if it is known service is down Or connect the circuit manually if
-     * service comes online before expected.
-     *
-     * @param state State at which circuit is in
-     */
+    // Failures of other nodes add to the count, but their successes do not prove that the service
+    // works for this node, so they do not reset it
     @Override
-    public void setState(State state) {
-        this.state = state;
-        switch (state) {
-            case OPEN:
-                this.failureCount = failureThreshold;
-                this.lastFailureTime = System.nanoTime();
-                break;
-            case HALF_OPEN:
-                this.failureCount = failureThreshold;
-                this.lastFailureTime = System.nanoTime() - retryTimePeriod;
-                break;
-            default:
-                this.failureCount = 0;
-        }
+    protected long closedPayloadAfterRemote(long payload, boolean failure) {
+        return failure ? payload + 1 : payload;
     }
 
-    /**
-     * Executes service call.
-     *
-     * @return Value from the remote resource, stale response or a custom exception
-     */
     @Override
-    public String attemptRequest() throws RemoteServiceException {
-        evaluateState();
-        if (state == State.OPEN) {
-            // return cached response if the circuit is in OPEN state
-            return this.lastFailureResponse;
-        } else {
-            // Make the API request if the circuit is not OPEN
-            try {
-                //In a real application, this would be run in a thread and the timeout
-                //parameter of the circuit breaker would be utilized to know if service
-                //is working. Here, we simulate that based on server response itself
-                String response = service.call();
-                // Yay!! the API responded fine. Let's reset everything.
-                recordSuccess();
-                return response;
-            } catch (RemoteServiceException ex) {
-                recordFailure(ex.getMessage());
-                throw ex;
-            }
-        }
+    protected boolean shouldTrip(long payload) {
+        return payload >= failureThreshold;
+    }
+
+    // Number of consecutive failures seen while CLOSED, or the threshold once the circuit tripped
+    int failureCount() {
+        long payload = closedPayload();
+        return payload >= 0 ? (int) payload : failureThreshold;
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,22 @@
-package unittest;
+package main;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -9,32 +24,51 @@ import org.junit.jupiter.api.Test;
  */
 class DefaultCircuitBreakerTest {
 
+    private static final RemoteServiceException FAILURE = new RemoteServiceException("Failure");
+
     //long timeout, int failureThreshold, long retryTimePeriod
     @Test
     void testEvaluateState() {
-        var circuitBreaker = new DefaultCircuitBreaker(null, 1, 1, 100);
+        var circuitBreaker = new DefaultCircuitBreaker<String>(null, 1, 4, 1000L * 1000 * 1000 * 1000);
         //Right now, failureCount<failureThreshold, so state should be closed
         assertEquals(circuitBreaker.getState(), "CLOSED");
-        circuitBreaker.failureCount = 4;
-        circuitBreaker.lastFailureTime = System.nanoTime();
-        circuitBreaker.evaluateState();
-        //Since failureCount>failureThreshold, and lastFailureTime is nearly equal to current time,
-        //state should be half-open
-        assertEquals(circuitBreaker.getState(), "HALF_OPEN");
-        //Since failureCount>failureThreshold, and lastFailureTime is much lesser current time,
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.recordFailure(FAILURE);
+        }
+        assertEquals(3, circuitBreaker.failureCount());
+        assertEquals(circuitBreaker.getState(), "CLOSED");
+        //Since failureCount reaches failureThreshold and the retry period is far away,
         //state should be open
-        circuitBreaker.lastFailureTime = System.nanoTime() - 1000 * 1000 * 1000 * 1000;
-        circuitBreaker.evaluateState();
+        circuitBreaker.recordFailure(FAILURE);
+        assertEquals(circuitBreaker.getState(), "OPEN");
+        //A late success of a call made before the trip leaves the circuit OPEN
+        circuitBreaker.recordSuccess();
         assertEquals(circuitBreaker.getState(), "OPEN");
         //Now set it back again to closed to test idempotency
-        circuitBreaker.failureCount = 0;
-        circuitBreaker.evaluateState();
+        circuitBreaker.setState(State.CLOSED);
+        assertEquals(0, circuitBreaker.failureCount());
+        assertEquals(circuitBreaker.getState(), "CLOSED");
+    }
+
+    @Test
+    void testEvaluateStateAfterRetryPeriod() {
+        var clock = new ManualNanoClock();
+        var circuitBreaker = new DefaultCircuitBreaker<String>(null, 1, 1, 100, clock);
+        circuitBreaker.recordFailure(FAILURE);
+        assertEquals(State.OPEN, circuitBreaker.evaluateState());
+        //Since failureCount>=failureThreshold, and lastFailureTime is more than 100ns in past,
+        //state should be half-open
+        clock.advance(101);
+        assertEquals(State.HALF_OPEN, circuitBreaker.evaluateState());
+        //A successful trial request closes the circuit again
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.recordSuccess();
         assertEquals(circuitBreaker.getState(), "CLOSED");
     }
 
     @Test
     void testSetStateForBypass() {
-        var circuitBreaker = new DefaultCircuitBreaker(null, 1, 1, 2000 * 1000 * 1000);
+        var circuitBreaker = new DefaultCircuitBreaker<String>(null, 1, 1, 2000 * 1000 * 1000);
         //Right now, failureCount<failureThreshold, so state should be closed
         //Bypass it and set it to open
         circuitBreaker.setState(State.OPEN);
@@ -43,17 +77,544 @@ class DefaultCircuitBreakerTest {
 
     @Test
     void testApiResponses() throws RemoteServiceException {
-        RemoteService mockService = new RemoteService() {
+        RemoteService<String> mockService = new RemoteService<>() {
             @Override
             public String call() throws RemoteServiceException {
                 return "Remote Success";
             }
         };
-        var circuitBreaker = new DefaultCircuitBreaker(mockService, 1, 1, 100);
+        var circuitBreaker = new DefaultCircuitBreaker<String>(mockService, 1000, 1, 100);
         //Call with the paramater start_time set to huge amount of time in past so that service
         //replies with "Ok". Also, state is CLOSED in start
         var serviceStartTime = System.nanoTime() - 60 * 1000 * 1000 * 1000;
         var response = circuitBreaker.attemptRequest();
         assertEquals(response, "Remote Success");
     }
+
+    /**
+     * Many threads recording failures at once must not lose a single increment.
+     */
+    @Test
+    void testConcurrentFailureCount() throws InterruptedException {
+        int threads = 64;
+        int failuresPerThread = 10_000;
+        var circuitBreaker = new DefaultCircuitBreaker<String>(null, 1, threads * failuresPerThread + 1,
+                1000L * 1000 * 1000 * 1000);
+        runConcurrently(threads, () -> {
+            for (int i = 0; i < failuresPerThread; i++) {
+                circuitBreaker.recordFailure(FAILURE);
+            }
+        });
+        assertEquals(threads * failuresPerThread, circuitBreaker.failureCount());
+        assertEquals("CLOSED", circuitBreaker.getState());
+        //One more failure reaches the threshold
+        circuitBreaker.recordFailure(FAILURE);
+        assertEquals("OPEN", circuitBreaker.getState());
+    }
+
+    /**
+     * When exactly failureThreshold threads fail together, the circuit must always end up OPEN.
+     */
+    @Test
+    void testConcurrentTripIsNeverLost() throws InterruptedException {
+        int threads = 16;
+        for (int round = 0; round < 200; round++) {
+            var circuitBreaker = new DefaultCircuitBreaker<String>(null, 1, threads, 1000L * 1000 * 1000 * 1000);
+            runConcurrently(threads, () -> circuitBreaker.recordFailure(FAILURE));
+            assertEquals("OPEN", circuitBreaker.getState());
+        }
+    }
+
+    /**
+     * Calls that were already in flight when the circuit tripped finish successfully afterwards.
+     * Their late successes must not close the circuit again.
+     */
+    @Test
+    void testLateSuccessesDoNotCloseTrippedCircuit() throws InterruptedException {
+        int threads = 16;
+        for (int round = 0; round < 50; round++) {
+            var entered = new CountDownLatch(threads);
+            var tripped = new CountDownLatch(1);
+            RemoteService<String> slowService = () -> {
+                entered.countDown();
+                try {
+                    tripped.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "Remote Success";
+            };
+            var circuitBreaker = new DefaultCircuitBreaker<String>(slowService, 10_000, 1,
+                    1000L * 1000 * 1000 * 1000);
+            var tripper = new Thread(() -> {
+                try {
+                    entered.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                circuitBreaker.recordFailure(FAILURE);
+                tripped.countDown();
+            });
+            tripper.start();
+            runConcurrently(threads, () -> {
+                try {
+                    assertEquals("Remote Success", circuitBreaker.attemptRequest());
+                } catch (RemoteServiceException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            tripper.join();
+            assertEquals("OPEN", circuitBreaker.getState());
+            assertEquals(1, circuitBreaker.getEvents().publishedEvents());
+        }
+    }
+
+    /**
+     * Calls admitted while CLOSED that finish once the circuit went OPEN and then HALF_OPEN are not
+     * trial requests, their outcomes neither close nor reopen the circuit.
+     */
+    @Test
+    void testCallsAdmittedBeforeHalfOpenAreNotTrials() throws Exception {
+        var release = new CountDownLatch(1);
+        var calls = new AtomicInteger();
+        RemoteService<String> slowService = () -> {
+            int call = calls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (call == 2) {
+                throw new RemoteServiceException("Remote Failure");
+            }
+            return "Remote Success";
+        };
+        var circuitBreaker = new DefaultCircuitBreaker<String>(slowService, 10_000, 1,
+                1000L * 1000 * 1000 * 1000);
+        var straddling = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < 2; i++) {
+            straddling.add(circuitBreaker.attemptRequestAsync());
+        }
+        circuitBreaker.recordFailure(FAILURE);
+        circuitBreaker.setState(State.HALF_OPEN);
+        release.countDown();
+        for (var call : straddling) {
+            call.handle((response, error) -> response).get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(2, calls.get());
+        assertEquals("HALF_OPEN", circuitBreaker.getState());
+        //The trial permit is left for an actual trial request
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.recordSuccess();
+        assertEquals("CLOSED", circuitBreaker.getState());
+    }
+
+    /**
+     * While HALF_OPEN only a single trial request reaches the recovering service, every other
+     * concurrent caller gets the cached failure straight away.
+     */
+    @Test
+    void testSingleTrialRequestInHalfOpen() throws InterruptedException {
+        int threads = 32;
+        var calls = new AtomicInteger();
+        var rejected = new AtomicInteger();
+        var othersDone = new CountDownLatch(threads - 1);
+        RemoteService<String> slowRecovery = () -> {
+            calls.incrementAndGet();
+            try {
+                othersDone.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "Remote Success";
+        };
+        var circuitBreaker = new DefaultCircuitBreaker<String>(slowRecovery, 10_000, 1,
+                1000L * 1000 * 1000 * 1000);
+        circuitBreaker.recordFailure(new RemoteServiceException("Remote Failure"));
+        circuitBreaker.setState(State.HALF_OPEN);
+        runConcurrently(threads, () -> {
+            try {
+                circuitBreaker.attemptRequest();
+            } catch (CallNotPermittedException e) {
+                assertEquals("Remote Failure", e.getCause().getMessage());
+                rejected.incrementAndGet();
+                othersDone.countDown();
+            } catch (RemoteServiceException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertEquals(1, calls.get());
+        assertEquals(threads - 1, rejected.get());
+        assertEquals("CLOSED", circuitBreaker.getState());
+    }
+
+    @Test
+    void testHalfOpenSuccessRatio() {
+        //4 trial requests, half of them have to succeed
+        var circuitBreaker = new DefaultCircuitBreaker<String>(null, 1, 1, 1000L * 1000 * 1000 * 1000, 4, 0.5);
+        circuitBreaker.setState(State.HALF_OPEN);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(circuitBreaker.tryAcquirePermission());
+        }
+        assertFalse(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.recordFailure(FAILURE);
+        circuitBreaker.recordSuccess();
+        circuitBreaker.recordFailure(FAILURE);
+        assertEquals("HALF_OPEN", circuitBreaker.getState());
+        //Second success reaches the ratio
+        circuitBreaker.recordSuccess();
+        assertEquals("CLOSED", circuitBreaker.getState());
+
+        circuitBreaker.setState(State.HALF_OPEN);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(circuitBreaker.tryAcquirePermission());
+        }
+        circuitBreaker.recordFailure(FAILURE);
+        circuitBreaker.recordFailure(FAILURE);
+        assertEquals("HALF_OPEN", circuitBreaker.getState());
+        //Third failure makes a 50% success ratio impossible
+        circuitBreaker.recordFailure(FAILURE);
+        assertEquals("OPEN", circuitBreaker.getState());
+    }
+
+    /**
+     * A hung service is cut off after the timeout instead of pinning the caller thread.
+     */
+    @Test
+    void testTimeoutCutsOffHungService() {
+        var hungService = new DelayedRemoteService(System.nanoTime(), 10, 10_000);
+        var circuitBreaker = new DefaultCircuitBreaker<String>(hungService, 50, 1, 1000L * 1000 * 1000 * 1000);
+        long start = System.nanoTime();
+        assertThrows(CallTimeoutException.class, circuitBreaker::attemptRequest);
+        assertTrue(System.nanoTime() - start < 1000L * 1000 * 1000);
+        //The watchdog interrupt must not leak into the caller thread
+        assertFalse(Thread.currentThread().isInterrupted());
+        assertEquals("OPEN", circuitBreaker.getState());
+    }
+
+    @Test
+    void testTimeoutRunsOnTheClockOfTheCircuitBreaker() throws Exception {
+        var clock = new ManualNanoClock();
+        RemoteService<String> hungService = () -> {
+            //The call hangs once the clock is past the timeout
+            clock.advance(60 * 1000L * 1000);
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                throw new RemoteServiceException("Interrupted", e);
+            }
+            return "Too late";
+        };
+        var circuitBreaker = new DefaultCircuitBreaker<String>(hungService, 50, 1,
+                1000L * 1000 * 1000 * 1000, clock);
+        assertThrows(CallTimeoutException.class, circuitBreaker::attemptRequest);
+        assertFalse(Thread.currentThread().isInterrupted());
+        //Slower than the timeout in real time, but not on the clock of the circuit breaker
+        var slowService = new DefaultCircuitBreaker<String>(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                throw new RemoteServiceException("Interrupted", e);
+            }
+            return "In time";
+        }, 50, 1, 1000L * 1000 * 1000 * 1000, clock);
+        assertEquals("In time", slowService.attemptRequest());
+    }
+
+    @Test
+    void testNestedTimeouts() throws Exception {
+        var hungService = new DelayedRemoteService(System.nanoTime(), 10, 10_000);
+        var inner = new DefaultCircuitBreaker<String>(hungService, 50, 1, 1000L * 1000 * 1000 * 1000);
+        var outer = new DefaultCircuitBreaker<String>(new QuickRemoteService(), 10_000, 5,
+                1000L * 1000 * 1000 * 1000);
+        //The inner, shorter timeout fires while the outer call is still in time
+        assertThrows(CallTimeoutException.class, () -> outer.execute(inner::attemptRequest));
+        assertFalse(Thread.currentThread().isInterrupted());
+        //Once the inner circuit is OPEN, the outer call is fast and nothing interrupts it
+        assertThrows(CallNotPermittedException.class, () -> outer.execute(inner::attemptRequest));
+        for (int i = 0; i < 100; i++) {
+            assertEquals("Quick Service is working", outer.attemptRequest());
+        }
+        assertFalse(Thread.currentThread().isInterrupted());
+        assertEquals("CLOSED", outer.getState());
+    }
+
+    @Test
+    void testAsyncTimeoutDoesNotBlock() {
+        var hungService = new DelayedRemoteService(System.nanoTime(), 10, 10_000);
+        var circuitBreaker = new DefaultCircuitBreaker<String>(hungService, 50, 1, 1000L * 1000 * 1000 * 1000);
+        var response = circuitBreaker.attemptRequestAsync();
+        //The caller gets the future straight away, the timeout completes it
+        var error = assertThrows(CompletionException.class, response::join);
+        assertTrue(error.getCause() instanceof CallTimeoutException);
+        assertEquals("OPEN", circuitBreaker.getState());
+        //While OPEN, callers are turned away without calling the service
+        var rejected = assertThrows(CompletionException.class,
+                () -> circuitBreaker.attemptRequestAsync().join());
+        assertTrue(rejected.getCause() instanceof CallNotPermittedException);
+        assertSame(error.getCause(), rejected.getCause().getCause());
+        //Every caller gets a future of its own, only the exception is shared
+        var hijacked = circuitBreaker.attemptRequestAsync();
+        hijacked.obtrudeValue("Hijacked");
+        var next = assertThrows(CompletionException.class,
+                () -> circuitBreaker.attemptRequestAsync().join());
+        assertSame(rejected.getCause(), next.getCause());
+    }
+
+    @Test
+    void testAsyncRemoteService() {
+        var pending = new CompletableFuture<String>();
+        AsyncRemoteService<String> asyncService = () -> pending;
+        var circuitBreaker = new DefaultCircuitBreaker<String>(asyncService, 1000, 1, 1000L * 1000 * 1000 * 1000);
+        var response = circuitBreaker.attemptRequestAsync();
+        assertFalse(response.isDone());
+        pending.complete("Remote Success");
+        assertEquals("Remote Success", response.join());
+        assertEquals("CLOSED", circuitBreaker.getState());
+    }
+
+    @Test
+    void testBlockingCallOfHungAsyncServiceTimesOut() {
+        var pending = new CompletableFuture<String>();
+        AsyncRemoteService<String> hungService = () -> pending;
+        var circuitBreaker = new DefaultCircuitBreaker<String>(hungService, 100, 1, 1000L * 1000 * 1000 * 1000);
+        long start = System.nanoTime();
+        assertThrows(CallTimeoutException.class, circuitBreaker::attemptRequest);
+        assertTrue(System.nanoTime() - start < 1000L * 1000 * 1000);
+        //The abandoned asynchronous call is cancelled, and the interrupt does not leak
+        assertTrue(pending.isCancelled());
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    void testTypedResponsesAndFallback() throws Exception {
+        byte[] payload = {1, 2, 3};
+        byte[] cached = {0};
+        var down = new AtomicInteger(1);
+        RemoteService<byte[]> binaryService = () -> {
+            if (down.get() == 1) {
+                throw new RemoteServiceException("Binary service is down");
+            }
+            return payload;
+        };
+        var circuitBreaker = new DefaultCircuitBreaker<byte[]>(binaryService, 1000, 1,
+                IntervalStrategy.fixed(1000L * 1000 * 1000 * 1000), 1, 1.0, error -> true,
+                error -> cached, NanoClock.SYSTEM);
+        assertThrows(RemoteServiceException.class, circuitBreaker::attemptRequest);
+        //While OPEN the typed fallback value is served
+        assertSame(cached, circuitBreaker.attemptRequest());
+        down.set(0);
+        circuitBreaker.setState(State.CLOSED);
+        assertSame(payload, circuitBreaker.attemptRequest());
+    }
+
+    @Test
+    void testFailurePredicate() {
+        //Only remote errors say something about the health of the service
+        var circuitBreaker = new DefaultCircuitBreaker<String>(null, 1000, 1,
+                IntervalStrategy.fixed(1000L * 1000 * 1000 * 1000), 1, 1.0,
+                error -> error instanceof RemoteServiceException, null, NanoClock.SYSTEM);
+        Callable<String> invalidRequest = circuitBreaker.decorateCallable(() -> {
+            throw new IllegalArgumentException("Invalid request");
+        });
+        assertThrows(IllegalArgumentException.class, invalidRequest::call);
+        assertEquals("CLOSED", circuitBreaker.getState());
+        Supplier<String> failingRequest = circuitBreaker.decorateSupplier(() -> {
+            throw new CompletionException(FAILURE);
+        });
+        assertThrows(CompletionException.class, failingRequest::get);
+        assertEquals("CLOSED", circuitBreaker.getState());
+        Callable<String> remoteFailure = circuitBreaker.decorateCallable(() -> {
+            throw FAILURE;
+        });
+        assertThrows(RemoteServiceException.class, remoteFailure::call);
+        assertEquals("OPEN", circuitBreaker.getState());
+        //The decorated call is not even made while OPEN
+        assertSame(FAILURE, assertThrows(CallNotPermittedException.class, invalidRequest::call)
+                .getCause());
+    }
+
+    @Test
+    void testGetStateDoesNotChangeState() {
+        var clock = new ManualNanoClock();
+        var circuitBreaker = new DefaultCircuitBreaker<String>(null, 1, 1, 100, clock);
+        circuitBreaker.recordFailure(FAILURE);
+        clock.advance(101);
+        //Reported as the next caller will find it, without moving the circuit
+        assertEquals("HALF_OPEN", circuitBreaker.getState());
+        assertEquals(1, circuitBreaker.getEvents().publishedEvents());
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertEquals(2, circuitBreaker.getEvents().publishedEvents());
+    }
+
+    @Test
+    void testMetrics() throws RemoteServiceException {
+        var down = new AtomicInteger(0);
+        RemoteService<String> service = () -> {
+            if (down.get() == 1) {
+                throw FAILURE;
+            }
+            return "Remote Success";
+        };
+        var circuitBreaker = new DefaultCircuitBreaker<String>(service, 1000, 2,
+                1000L * 1000 * 1000 * 1000);
+        circuitBreaker.attemptRequest();
+        circuitBreaker.attemptRequest();
+        down.set(1);
+        assertThrows(RemoteServiceException.class, circuitBreaker::attemptRequest);
+        assertThrows(RemoteServiceException.class, circuitBreaker::attemptRequest);
+        assertThrows(CallNotPermittedException.class, circuitBreaker::attemptRequest);
+        var metrics = circuitBreaker.getMetrics();
+        assertEquals(2, metrics.getSuccessfulCalls());
+        assertEquals(2, metrics.getFailedCalls());
+        assertEquals(1, metrics.getRejectedCalls());
+        assertEquals(0, metrics.getTimedOutCalls());
+        //Rejected calls never reach the service, so they have no latency
+        assertEquals(4, metrics.getLatency().count());
+    }
+
+    @Test
+    void testTimedOutCallsAreCounted() {
+        var hungService = new DelayedRemoteService(System.nanoTime(), 10, 10_000);
+        var circuitBreaker = new DefaultCircuitBreaker<String>(hungService, 50, 2, 1000L * 1000 * 1000 * 1000);
+        assertThrows(CallTimeoutException.class, circuitBreaker::attemptRequest);
+        var metrics = circuitBreaker.getMetrics();
+        assertEquals(1, metrics.getTimedOutCalls());
+        assertEquals(1, metrics.getFailedCalls());
+        assertTrue(metrics.getLatency().percentile(100) >= 50L * 1000 * 1000);
+    }
+
+    @Test
+    void testStateTransitionEvents() {
+        var clock = new ManualNanoClock();
+        var circuitBreaker = new DefaultCircuitBreaker<String>(null, 1, 1, 100, clock);
+        var received = new ArrayList<CircuitBreakerEvent>();
+        circuitBreaker.getEvents().subscribe(received::add);
+        circuitBreaker.recordFailure(FAILURE);
+        //Failures while OPEN do not change the state, so they publish nothing
+        circuitBreaker.recordFailure(FAILURE);
+        clock.advance(101);
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.recordSuccess();
+        assertEquals(3, received.size());
+        assertEquals(State.CLOSED, received.get(0).getFromState());
+        assertEquals(State.OPEN, received.get(0).getToState());
+        assertEquals(State.HALF_OPEN, received.get(1).getToState());
+        assertEquals(State.CLOSED, received.get(2).getToState());
+        assertEquals(101, received.get(2).getNanoTime() - received.get(0).getNanoTime());
+        assertEquals(received, circuitBreaker.getEvents().recentEvents());
+    }
+
+    @Test
+    void testEventBufferIsBounded() {
+        var circuitBreaker = new DefaultCircuitBreaker<String>(null, 1, 1, 1000L * 1000 * 1000 * 1000);
+        for (int i = 0; i < 1000; i++) {
+            circuitBreaker.setState(State.OPEN);
+            circuitBreaker.setState(State.CLOSED);
+        }
+        var events = circuitBreaker.getEvents().recentEvents();
+        assertEquals(2000, circuitBreaker.getEvents().publishedEvents());
+        assertTrue(events.size() < 100, "kept " + events.size());
+        //Only the most recent events are kept, oldest first
+        assertEquals(1999, events.get(events.size() - 1).getSequence());
+        assertEquals(State.CLOSED, events.get(events.size() - 1).getToState());
+    }
+
+    /**
+     * Threads racing to open and close the circuit publish their transitions late, after other
+     * threads made transitions of their own. Ordered by sequence, the events must still chain up
+     * and end in the final state.
+     */
+    @Test
+    void testConcurrentTransitionsAreSequencedInOrder() throws InterruptedException {
+        int threads = 4;
+        //Reading the clock between the CAS and the publish lets other threads overtake
+        NanoClock yieldingClock = () -> {
+            Thread.yield();
+            return System.nanoTime();
+        };
+        for (int round = 0; round < 20; round++) {
+            var circuitBreaker = new DefaultCircuitBreaker<String>(null, 1, 1,
+                    1000L * 1000 * 1000 * 1000, yieldingClock);
+            var received = new ConcurrentLinkedQueue<CircuitBreakerEvent>();
+            circuitBreaker.getEvents().subscribe(received::add);
+            runConcurrently(threads, () -> {
+                for (int i = 0; i < 200; i++) {
+                    circuitBreaker.setState(i % 2 == 0 ? State.OPEN : State.CLOSED);
+                }
+            });
+            var events = new ArrayList<>(received);
+            events.sort(Comparator.comparingLong(CircuitBreakerEvent::getSequence));
+            assertEquals(circuitBreaker.getEvents().publishedEvents(), events.size());
+            State state = State.CLOSED;
+            for (int i = 0; i < events.size(); i++) {
+                assertEquals(i, events.get(i).getSequence());
+                assertEquals(state, events.get(i).getFromState());
+                state = events.get(i).getToState();
+            }
+            assertEquals(state.name(), circuitBreaker.getState());
+            var recent = circuitBreaker.getEvents().recentEvents();
+            assertEquals(state, recent.get(recent.size() - 1).getToState());
+        }
+    }
+
+    /**
+     * Turning callers away while OPEN reuses one stackless exception and allocates nothing.
+     */
+    @Test
+    void testRejectionDoesNotAllocate() {
+        var circuitBreaker = new DefaultCircuitBreaker<String>(new QuickRemoteService(), 1000, 1,
+                1000L * 1000 * 1000 * 1000);
+        circuitBreaker.setState(State.OPEN);
+        var first = assertThrows(CallNotPermittedException.class, circuitBreaker::attemptRequest);
+        assertEquals(0, first.getStackTrace().length);
+        var threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        //Warm up, so that the measurement does not include class loading and compilation
+        int rejected = rejectAll(circuitBreaker, 100_000);
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        rejected += rejectAll(circuitBreaker, 100_000);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        assertEquals(200_000, rejected);
+        //Allow for the odd allocation of the measurement itself, far below a byte per call
+        assertTrue(allocated < 10_000, "allocated " + allocated + " bytes");
+        assertFalse(circuitBreaker.tryAcquirePermission());
+    }
+
+    private static int rejectAll(CircuitBreaker<String> circuitBreaker, int calls) {
+        int rejected = 0;
+        for (int i = 0; i < calls; i++) {
+            try {
+                circuitBreaker.attemptRequest();
+            } catch (CallNotPermittedException e) {
+                rejected++;
+            } catch (RemoteServiceException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return rejected;
+    }
+
+    private static void runConcurrently(int threads, Runnable task) throws InterruptedException {
+        var start = new CountDownLatch(1);
+        var workers = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            var worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                task.run();
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
 }
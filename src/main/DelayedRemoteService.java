@@ -1,9 +1,11 @@
 package main;
 
-public class DelayedRemoteService implements RemoteService {
+public class DelayedRemoteService implements RemoteService<String> {
 
     private final long serverStartTime;
     private final int delay;
+    private final long hangMillis;
+    private final NanoClock clock;
 
     /**
      * Constructor to create an instance of DelayedService, which is down for first few seconds.
@@ -11,13 +13,40 @@ public class DelayedRemoteService implements RemoteService {
      * @param delay the delay after which service would behave properly, in seconds
      */
     public DelayedRemoteService(long serverStartTime, int delay) {
+        this(serverStartTime, delay, 0);
+    }
+
+    /**
+     * Constructor to create an instance of DelayedService, which hangs for a while on every call
+     * during the first few seconds, before failing.
+     *
+     * @param delay      the delay after which service would behave properly, in seconds
+     * @param hangMillis how long a call blocks while the service is down, in milliseconds
+     */
+    public DelayedRemoteService(long serverStartTime, int delay, long hangMillis) {
+        this(serverStartTime, delay, hangMillis, NanoClock.SYSTEM);
+    }
+
+    /**
+     * Constructor to create an instance of DelayedService reading time from the given clock.
+     *
+     * @param serverStartTime start time of the server, read from the same clock
+     * @param delay           the delay after which service would behave properly, in seconds
+     * @param clock           source of time
+     */
+    public DelayedRemoteService(long serverStartTime, int delay, NanoClock clock) {
+        this(serverStartTime, delay, 0, clock);
+    }
+
+    private DelayedRemoteService(long serverStartTime, int delay, long hangMillis, NanoClock clock) {
         this.serverStartTime = serverStartTime;
         this.delay = delay;
+        this.hangMillis = hangMillis;
+        this.clock = clock;
     }
 
     public DelayedRemoteService() {
-        this.serverStartTime = System.nanoTime();
-        this.delay = 20;
+        this(System.nanoTime(), 20);
     }
 
     /**
@@ -27,13 +56,21 @@ public class DelayedRemoteService implements RemoteService {
      */
     @Override
     public String call() throws RemoteServiceException {
-        long currentTime = System.nanoTime();
+        long currentTime = clock.nanoTime();
         //Since currentTime and serverStartTime are both in nanoseconds, we convert it to
         //seconds by diving by 10e9 and ensure floating point division by multiplying it
         //with 1.0 first. We then check if it is greater or less than specified delay and then
         //send the reply
         if ((currentTime - serverStartTime) * 1.0 / (1000 * 1000 * 1000) < delay) {
-            //Can use Thread.sleep() here to block and simulate a hung server
+            if (hangMillis > 0) {
+                //Block to simulate a hung server
+                try {
+                    Thread.sleep(hangMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RemoteServiceException("Delayed service call interrupted");
+                }
+            }
             throw new RemoteServiceException("Delayed service is down");
         }
         return "Delayed service is working";
@@ -1,4 +1,4 @@
-package unittest;
+package main;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -0,0 +1,103 @@
+package main;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate access frequency of keys, a count-min sketch of 4 bit counters as used by TinyLFU.
+ * Every key is counted in four counters and its frequency is the smallest of them, so collisions
+ * can only overestimate it. Once the number of increments reaches ten times the capacity, all
+ * counters are halved, so that the sketch forgets keys that used to be popular.
+ */
+final class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    // One seed per row, so that two keys colliding in one row rarely collide in the others
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private final AtomicLongArray table;
+    private final int counterMask;
+    private final int sampleSize;
+    private final AtomicInteger samples = new AtomicInteger();
+
+    /**
+     * Constructor to create a sketch.
+     *
+     * @param capacity number of keys whose frequency should be told apart well
+     */
+    FrequencySketch(int capacity) {
+        int keys = Math.max(16, Math.min(1 << 26, capacity));
+        // 16 counters of 4 bits fit into a long, one long per key keeps collisions rare
+        int counters = Integer.highestOneBit(keys * 2 - 1) * 16;
+        this.table = new AtomicLongArray(counters / 16);
+        this.counterMask = counters - 1;
+        this.sampleSize = Math.max(10, 10 * capacity);
+    }
+
+    // Estimated number of recent accesses of the key, at most 15
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = 15;
+        for (int i = 0; i < DEPTH; i++) {
+            int index = indexOf(hash, i);
+            long counter = (table.get(index >>> 4) >>> shiftOf(index)) & 0xF;
+            frequency = Math.min(frequency, (int) counter);
+        }
+        return frequency;
+    }
+
+    // Count one access of the key
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            added |= incrementCounter(indexOf(hash, i));
+        }
+        if (added && samples.incrementAndGet() == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementCounter(int index) {
+        int slot = index >>> 4;
+        int shift = shiftOf(index);
+        for (;;) {
+            long current = table.get(slot);
+            if (((current >>> shift) & 0xF) == 0xF) {
+                return false;
+            }
+            if (table.compareAndSet(slot, current, current + (1L << shift))) {
+                return true;
+            }
+        }
+    }
+
+    // Halve every counter. Increments racing with it may be lost, which only adds to the error
+    private void reset() {
+        for (int slot = 0; slot < table.length(); slot++) {
+            long current;
+            do {
+                current = table.get(slot);
+            } while (!table.compareAndSet(slot, current, (current >>> 1) & 0x7777777777777777L));
+        }
+        samples.set(0);
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & counterMask;
+    }
+
+    private static int shiftOf(int index) {
+        return (index & 15) << 2;
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 17;
+        hash *= 0xed5ad4bb;
+        hash ^= hash >>> 11;
+        return hash;
+    }
+}
@@ -0,0 +1,86 @@
+package main;
+
+/**
+ * Latency driven limit. Compares the round-trip time of each call with a long-term average: as
+ * long as calls are not slower than the average, the limit grows by a small queue allowance; once
+ * they queue up in the service and get slower, the limit shrinks in proportion, before the service
+ * starts failing. The long-term average slowly follows the service, so a permanent change of its
+ * latency becomes the new normal.
+ */
+public final class GradientLimit implements LimitAlgorithm {
+
+    // Weight of a new limit against the current one
+    private static final double SMOOTHING = 0.2;
+    // Number of samples the long-term average round-trip time covers
+    private static final int LONG_WINDOW = 600;
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+    private double estimatedLimit;
+    private double longRtt;
+
+    /**
+     * Constructor to create the algorithm with a tolerance of 1.5, i.e. calls may get 50% slower
+     * than the long-term average before the limit shrinks.
+     */
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, 1.5);
+    }
+
+    /**
+     * Constructor to create the algorithm.
+     *
+     * @param initialLimit limit before the first sample
+     * @param minLimit     the limit never drops below this
+     * @param maxLimit     the limit never grows above this
+     * @param rttTolerance ratio, at least 1, by which calls may be slower than the long-term average
+     *                     without shrinking the limit
+     */
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit, double rttTolerance) {
+        if (minLimit < 1 || minLimit > maxLimit || initialLimit < minLimit
+                || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("limits must satisfy 1 <= min <= initial <= max");
+        }
+        if (!(rttTolerance >= 1)) {
+            throw new IllegalArgumentException("rttTolerance must be at least 1");
+        }
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.rttTolerance = rttTolerance;
+        this.estimatedLimit = initialLimit;
+    }
+
+    @Override
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    @Override
+    public int update(int limit, long rttNanos, int inFlight, boolean dropped) {
+        double shortRtt = Math.max(1, rttNanos);
+        if (longRtt == 0) {
+            longRtt = shortRtt;
+        } else {
+            longRtt += (shortRtt - longRtt) / LONG_WINDOW;
+        }
+        // Calls got much faster again, e.g. after a spike: let the average catch up quickly
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+        // Too few calls to say anything about the capacity of the service
+        if (!dropped && inFlight * 2 < estimatedLimit) {
+            return (int) estimatedLimit;
+        }
+        double gradient = dropped ? 0.5
+                : Math.max(0.5, Math.min(1.0, rttTolerance * longRtt / shortRtt));
+        // Room for a few queued calls, so the limit can grow while latency stays flat
+        double queueSize = Math.sqrt(estimatedLimit);
+        double newLimit = estimatedLimit * gradient + queueSize;
+        newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        return (int) estimatedLimit;
+    }
+}
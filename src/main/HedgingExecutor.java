@@ -0,0 +1,227 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Calls one of several replicas of a service, each behind its own circuit breaker:
+ * <ul>
+ *   <li>replicas whose circuit is OPEN are skipped, the others take turns being called first,</li>
+ *   <li>if the first replica fails, the next one is called straight away (failover),</li>
+ *   <li>if the first replica is slower than its usual latency at the hedge percentile, the next
+ *       one is called as well (hedging), without giving up on the first.</li>
+ * </ul>
+ * The first good response wins and the other call is cancelled. A cancelled call counts as
+ * neither success nor failure for its circuit breaker, losing the race says nothing about the
+ * health of a replica.
+ *
+ * <p>A request is hedged at most once, so hedging costs at most one extra call per request, and
+ * only for the slowest requests. Until a replica made enough calls to know its latency, requests
+ * to it are not hedged.
+ *
+ * @param <T> type of the responses
+ */
+public class HedgingExecutor<T> {
+
+    // Calls a replica needs before its latency percentile is trusted to time a hedge
+    static final int MIN_LATENCY_SAMPLES = 100;
+
+    private final List<RemoteService<T>> replicas;
+    private final List<CircuitBreaker<T>> circuitBreakers;
+    private final double hedgePercentile;
+    private final long minHedgeDelay;
+    private final ExecutorService executor;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private volatile Throwable lastFailure;
+    // Preallocated, thrown often while replicas are down or losing races
+    private final CallNotPermittedException noReplicaAvailable =
+            new CallNotPermittedException(() -> this.lastFailure);
+    private final CallCancelledException cancelled =
+            new CallCancelledException("Another replica answered first");
+    private final LongAdder hedgedCalls = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+
+    /**
+     * Constructor that calls the replicas on the default executor for remote calls.
+     *
+     * @param replicas        replicas of the service, in order of preference
+     * @param config          configuration of the circuit breaker of every replica
+     * @param hedgePercentile latency percentile, e.g. 95, of a replica after which the next
+     *                        replica is called as well
+     * @param minHedgeDelay   time, in nanoseconds, to wait at least before hedging
+     */
+    public HedgingExecutor(List<? extends RemoteService<T>> replicas, CircuitBreakerConfig config,
+                           double hedgePercentile, long minHedgeDelay) {
+        this(replicas, config, hedgePercentile, minHedgeDelay,
+                RemoteCallExecutors.defaultExecutor());
+    }
+
+    /**
+     * Constructor to create the executor.
+     *
+     * @param executor executor making the calls, cancelling a call interrupts its thread
+     */
+    public HedgingExecutor(List<? extends RemoteService<T>> replicas, CircuitBreakerConfig config,
+                           double hedgePercentile, long minHedgeDelay, ExecutorService executor) {
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("replicas must not be empty");
+        }
+        if (!(hedgePercentile > 0 && hedgePercentile <= 100)) {
+            throw new IllegalArgumentException("hedgePercentile must be in (0, 100]");
+        }
+        this.replicas = List.copyOf(replicas);
+        var breakers = new ArrayList<CircuitBreaker<T>>(replicas.size());
+        for (RemoteService<T> replica : this.replicas) {
+            breakers.add(config.createCircuitBreaker(replica));
+        }
+        this.circuitBreakers = List.copyOf(breakers);
+        this.hedgePercentile = hedgePercentile;
+        this.minHedgeDelay = Math.max(0, minHedgeDelay);
+        this.executor = executor;
+    }
+
+    /**
+     * Fetch the response from the first replica that answers well.
+     *
+     * @return the response of the winning replica
+     * @throws CallNotPermittedException if the circuit of every replica is OPEN
+     * @throws InterruptedException      if interrupted while waiting, the calls are cancelled
+     * @throws Exception                 the failure of the last replica, if every replica failed
+     */
+    public T execute() throws Exception {
+        List<Integer> candidates = candidates();
+        if (candidates.isEmpty()) {
+            throw noReplicaAvailable;
+        }
+        var completed = new LinkedBlockingQueue<Attempt>();
+        var running = new ArrayList<Attempt>(2);
+        int next = 0;
+        running.add(start(candidates.get(next++), completed));
+        long hedgeDelay = hedgeDelay(candidates.get(0));
+        boolean hedged = false;
+        Throwable failure = null;
+        try {
+            while (!running.isEmpty()) {
+                Attempt done = !hedged && next < candidates.size()
+                        ? completed.poll(hedgeDelay, TimeUnit.NANOSECONDS)
+                        : completed.take();
+                if (done == null) {
+                    // The first replica is slower than usual, ask the next one as well
+                    hedged = true;
+                    hedgedCalls.increment();
+                    running.add(start(candidates.get(next++), completed));
+                    continue;
+                }
+                if (!running.remove(done)) {
+                    continue;
+                }
+                try {
+                    return done.get();
+                } catch (ExecutionException ex) {
+                    failure = ex.getCause();
+                    lastFailure = failure;
+                }
+                if (running.isEmpty() && next < candidates.size()) {
+                    failovers.increment();
+                    running.add(start(candidates.get(next++), completed));
+                }
+            }
+        } finally {
+            for (Attempt attempt : running) {
+                attempt.abandon();
+            }
+        }
+        if (failure instanceof Exception) {
+            throw (Exception) failure;
+        }
+        throw (Error) failure;
+    }
+
+    // Replicas whose circuit is not OPEN, starting with the one whose turn it is
+    private List<Integer> candidates() {
+        int size = replicas.size();
+        int first = Math.floorMod(nextReplica.getAndIncrement(), size);
+        var candidates = new ArrayList<Integer>(size);
+        for (int i = 0; i < size; i++) {
+            int replica = (first + i) % size;
+            if (!State.OPEN.name().equals(circuitBreakers.get(replica).getState())) {
+                candidates.add(replica);
+            }
+        }
+        return candidates;
+    }
+
+    private long hedgeDelay(int replica) {
+        LatencyHistogram latency = circuitBreakers.get(replica).getMetrics().getLatency();
+        if (latency.count() < MIN_LATENCY_SAMPLES) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(minHedgeDelay, latency.percentile(hedgePercentile));
+    }
+
+    private Attempt start(int replica, BlockingQueue<Attempt> completed) {
+        var abandoned = new AtomicBoolean();
+        RemoteService<T> service = replicas.get(replica);
+        CircuitBreaker<T> circuitBreaker = circuitBreakers.get(replica);
+        var attempt = new Attempt(() -> circuitBreaker.execute(() -> {
+            try {
+                return service.call();
+            } catch (RemoteServiceException | RuntimeException ex) {
+                // Most likely the interrupt of the cancellation, not a failure of the replica
+                if (abandoned.get()) {
+                    throw cancelled;
+                }
+                throw ex;
+            }
+        }), abandoned, completed);
+        executor.execute(attempt);
+        return attempt;
+    }
+
+    public List<CircuitBreaker<T>> getCircuitBreakers() {
+        return circuitBreakers;
+    }
+
+    // Number of requests that called a second replica because the first one was slow
+    public long getHedgedCalls() {
+        return hedgedCalls.sum();
+    }
+
+    // Number of times a replica was called because the previous one failed
+    public long getFailovers() {
+        return failovers.sum();
+    }
+
+    // A call to one replica, reports itself to the waiting caller once it is done
+    private final class Attempt extends FutureTask<T> {
+
+        private final AtomicBoolean abandoned;
+        private final BlockingQueue<Attempt> completed;
+
+        Attempt(Callable<T> call, AtomicBoolean abandoned, BlockingQueue<Attempt> completed) {
+            super(call);
+            this.abandoned = abandoned;
+            this.completed = completed;
+        }
+
+        void abandon() {
+            abandoned.set(true);
+            cancel(true);
+        }
+
+        @Override
+        protected void done() {
+            completed.offer(this);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Hedging executor test
+ */
+class HedgingExecutorTest {
+
+    private static final long MILLISECOND = 1000L * 1000;
+
+    private static final CircuitBreakerConfig CONFIG = CircuitBreakerConfig.builder()
+            .timeout(10_000)
+            .failureThreshold(1)
+            .retryTimePeriod(1000L * 1000 * MILLISECOND)
+            .build();
+
+    //Replica answering with its name, counting its calls
+    private static final class Replica implements RemoteService<String> {
+        final String name;
+        final AtomicInteger calls = new AtomicInteger();
+
+        Replica(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String call() throws RemoteServiceException {
+            calls.incrementAndGet();
+            return name;
+        }
+    }
+
+    @Test
+    void testOpenReplicasAreSkipped() throws Exception {
+        var first = new Replica("first");
+        var second = new Replica("second");
+        var hedging = new HedgingExecutor<String>(List.of(first, second), CONFIG, 95, MILLISECOND);
+        hedging.getCircuitBreakers().get(0).setState(State.OPEN);
+        for (int i = 0; i < 4; i++) {
+            assertEquals("second", hedging.execute());
+        }
+        assertEquals(0, first.calls.get());
+    }
+
+    @Test
+    void testFailoverToNextReplica() throws Exception {
+        var failure = new RemoteServiceException("Down");
+        var second = new Replica("second");
+        RemoteService<String> failing = () -> {
+            throw failure;
+        };
+        var hedging = new HedgingExecutor<String>(List.of(failing, second), CONFIG, 95,
+                MILLISECOND);
+        assertEquals("second", hedging.execute());
+        assertEquals(1, hedging.getFailovers());
+        var failingBreaker = hedging.getCircuitBreakers().get(0);
+        assertEquals(1, failingBreaker.getMetrics().getFailedCalls());
+        assertEquals("OPEN", failingBreaker.getState());
+        //With the failing replica OPEN, every request goes to the other one straight away
+        assertEquals("second", hedging.execute());
+        assertEquals("second", hedging.execute());
+        assertEquals(1, hedging.getFailovers());
+    }
+
+    @Test
+    void testEveryReplicaFails() {
+        var failure = new RemoteServiceException("Down");
+        RemoteService<String> failing = () -> {
+            throw failure;
+        };
+        var hedging = new HedgingExecutor<String>(List.of(failing, failing), CONFIG, 95,
+                MILLISECOND);
+        assertSame(failure, assertThrows(RemoteServiceException.class, hedging::execute));
+        //Both circuits are OPEN now, nothing is called
+        var rejected = assertThrows(CallNotPermittedException.class, hedging::execute);
+        assertSame(failure, rejected.getCause());
+    }
+
+    @Test
+    void testSlowReplicaIsHedged() throws Exception {
+        var release = new CountDownLatch(1);
+        RemoteService<String> slow = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RemoteServiceException("Interrupted", e);
+            }
+            return "slow";
+        };
+        var fast = new Replica("fast");
+        var hedging = new HedgingExecutor<String>(List.of(slow, fast), CONFIG, 95, MILLISECOND);
+        var slowBreaker = hedging.getCircuitBreakers().get(0);
+        //The slow replica usually answers within a millisecond
+        for (int i = 0; i < HedgingExecutor.MIN_LATENCY_SAMPLES; i++) {
+            slowBreaker.getMetrics().getLatency().record(MILLISECOND);
+        }
+        try {
+            assertEquals("fast", hedging.execute());
+            assertEquals(1, hedging.getHedgedCalls());
+            //The losing call is cancelled and not held against the slow replica
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (slowBreaker.getMetrics().getIgnoredCalls() == 0) {
+                assertTrue(System.nanoTime() < deadline, "call was not cancelled");
+                Thread.sleep(1);
+            }
+            assertEquals(0, slowBreaker.getMetrics().getFailedCalls());
+            assertEquals("CLOSED", slowBreaker.getState());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void testNoHedgeWithoutLatencyHistory() throws Exception {
+        var hedging = new HedgingExecutor<String>(List.of(new Replica("first"),
+                new Replica("second")), CONFIG, 95, 0);
+        for (int i = 0; i < 10; i++) {
+            hedging.execute();
+        }
+        assertEquals(0, hedging.getHedgedCalls());
+    }
+}
@@ -0,0 +1,73 @@
+package main;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides how long an OPEN circuit waits before it lets a trial request through. The attempt
+ * counts the times the circuit opened in a row without closing in between, so a service that
+ * stays down can be probed less and less often. It starts over at 1 once the circuit closes.
+ */
+@FunctionalInterface
+public interface IntervalStrategy {
+
+    /**
+     * Wait time before the next trial request.
+     *
+     * @param attempt number of times the circuit opened in a row, starting at 1
+     * @return wait time in nanoseconds
+     */
+    long intervalNanos(int attempt);
+
+    /**
+     * Always wait the same time, as a plain retry time period.
+     *
+     * @param intervalNanos wait time in nanoseconds
+     * @return the strategy
+     */
+    static IntervalStrategy fixed(long intervalNanos) {
+        if (intervalNanos < 0) {
+            throw new IllegalArgumentException("intervalNanos must not be negative");
+        }
+        return attempt -> intervalNanos;
+    }
+
+    /**
+     * Wait initialNanos the first time, multiplier times longer each time the circuit opens again,
+     * and never longer than maxNanos.
+     *
+     * @param initialNanos wait time after the circuit opened for the first time, in nanoseconds
+     * @param multiplier   factor, at least 1, by which the wait time grows with every attempt
+     * @param maxNanos     upper bound of the wait time, in nanoseconds
+     * @return the strategy
+     */
+    static IntervalStrategy exponential(long initialNanos, double multiplier, long maxNanos) {
+        if (initialNanos < 0 || maxNanos < initialNanos) {
+            throw new IllegalArgumentException("intervals must satisfy 0 <= initial <= max");
+        }
+        if (!(multiplier >= 1)) {
+            throw new IllegalArgumentException("multiplier must be at least 1");
+        }
+        return attempt -> {
+            double interval = initialNanos * Math.pow(multiplier, Math.max(0, attempt - 1));
+            return interval >= maxNanos ? maxNanos : (long) interval;
+        };
+    }
+
+    /**
+     * Spread the wait times of this strategy randomly, so that the circuit breakers of a fleet
+     * that opened at the same moment do not all send their trial requests at the same moment.
+     *
+     * @param jitterFactor fraction, in [0, 1], by which a wait time may be shorter or longer
+     * @return the randomized strategy
+     */
+    default IntervalStrategy withJitter(double jitterFactor) {
+        if (!(jitterFactor >= 0 && jitterFactor <= 1)) {
+            throw new IllegalArgumentException("jitterFactor must be in [0, 1]");
+        }
+        return attempt -> {
+            long interval = intervalNanos(attempt);
+            double factor = 1 + jitterFactor * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+            return (long) (interval * factor);
+        };
+    }
+}
@@ -0,0 +1,95 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Wait interval test
+ */
+class IntervalStrategyTest {
+
+    private static final RemoteServiceException FAILURE = new RemoteServiceException("Failure");
+
+    @Test
+    void testExponentialIsCapped() {
+        var strategy = IntervalStrategy.exponential(100, 2, 1000);
+        assertEquals(100, strategy.intervalNanos(1));
+        assertEquals(200, strategy.intervalNanos(2));
+        assertEquals(800, strategy.intervalNanos(4));
+        assertEquals(1000, strategy.intervalNanos(5));
+        assertEquals(1000, strategy.intervalNanos(255));
+    }
+
+    @Test
+    void testJitterSpreadsIntervals() {
+        var strategy = IntervalStrategy.fixed(1000).withJitter(0.5);
+        var seen = new HashSet<Long>();
+        for (int i = 0; i < 1000; i++) {
+            long interval = strategy.intervalNanos(1);
+            assertTrue(interval >= 500 && interval <= 1500, "interval " + interval);
+            seen.add(interval);
+        }
+        assertTrue(seen.size() > 100);
+    }
+
+    @Test
+    void testWaitIntervalGrowsWhileServiceStaysDown() {
+        var clock = new ManualNanoClock();
+        var circuitBreaker = new DefaultCircuitBreaker<String>(null, 1000, 1,
+                IntervalStrategy.exponential(100, 2, 350), 1, 1.0, error -> true, null, clock);
+        circuitBreaker.recordFailure(FAILURE);
+        //Trial requests keep failing, so every time the circuit waits longer, up to the cap
+        for (long interval : new long[] {100, 200, 350, 350}) {
+            clock.advance(interval);
+            assertEquals("OPEN", circuitBreaker.getState());
+            clock.advance(1);
+            assertTrue(circuitBreaker.tryAcquirePermission());
+            circuitBreaker.recordFailure(FAILURE);
+            assertEquals("OPEN", circuitBreaker.getState());
+        }
+        //Once the service is back, the next opening starts over with the initial interval
+        clock.advance(351);
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.recordSuccess();
+        assertEquals("CLOSED", circuitBreaker.getState());
+        circuitBreaker.recordFailure(FAILURE);
+        clock.advance(101);
+        assertEquals("HALF_OPEN", circuitBreaker.getState());
+    }
+
+    @Test
+    void testIntervalFromConfig() {
+        var clock = new ManualNanoClock();
+        var config = CircuitBreakerConfig.builder()
+                .failureThreshold(1)
+                .waitInterval(IntervalStrategy.exponential(100, 10, 10_000))
+                .clock(clock)
+                .build();
+        var circuitBreaker = config.createCircuitBreaker(() -> "Response");
+        circuitBreaker.recordFailure(FAILURE);
+        clock.advance(101);
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.recordFailure(FAILURE);
+        clock.advance(999);
+        assertEquals("OPEN", circuitBreaker.getState());
+        clock.advance(2);
+        assertEquals("HALF_OPEN", circuitBreaker.getState());
+    }
+
+    @Test
+    void testLongRunningBreakerKeepsWorking() {
+        //The deadline wraps around in the state word, the comparison must not care
+        var clock = new ManualNanoClock();
+        var circuitBreaker = new DefaultCircuitBreaker<String>(null, 1000, 1, 100, clock);
+        clock.advance(1L << 54);
+        clock.advance((1L << 53) + 7);
+        circuitBreaker.recordFailure(FAILURE);
+        clock.advance(100);
+        assertEquals("OPEN", circuitBreaker.getState());
+        clock.advance(1);
+        assertEquals("HALF_OPEN", circuitBreaker.getState());
+    }
+}
@@ -0,0 +1,75 @@
+package main;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Response times of a {@link SimulatedRemoteService}. Real services are rarely this tidy, but a
+ * log-normal distribution with a long tail is close enough to tune a circuit breaker against.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+    /**
+     * Draw the response time of a single call.
+     *
+     * @param random source of randomness of the calling thread
+     * @return response time in nanoseconds
+     */
+    long sampleNanos(ThreadLocalRandom random);
+
+    /**
+     * Every call takes the same time.
+     *
+     * @param nanos response time in nanoseconds
+     * @return the distribution
+     */
+    static LatencyDistribution fixed(long nanos) {
+        if (nanos < 0) {
+            throw new IllegalArgumentException("nanos must not be negative");
+        }
+        return random -> nanos;
+    }
+
+    /**
+     * Response times spread evenly between minNanos and maxNanos.
+     *
+     * @param minNanos shortest response time, in nanoseconds
+     * @param maxNanos longest response time, in nanoseconds
+     * @return the distribution
+     */
+    static LatencyDistribution uniform(long minNanos, long maxNanos) {
+        if (minNanos < 0 || maxNanos < minNanos) {
+            throw new IllegalArgumentException("response times must satisfy 0 <= min <= max");
+        }
+        return random -> minNanos == maxNanos ? minNanos : random.nextLong(minNanos, maxNanos + 1);
+    }
+
+    /**
+     * Log-normal response times, given by their median and their 99th percentile.
+     *
+     * @param medianNanos median response time, in nanoseconds
+     * @param p99Nanos    99th percentile of the response times, in nanoseconds
+     * @return the distribution
+     */
+    static LatencyDistribution logNormal(long medianNanos, long p99Nanos) {
+        if (medianNanos <= 0 || p99Nanos < medianNanos) {
+            throw new IllegalArgumentException("response times must satisfy 0 < median <= p99");
+        }
+        // 2.326 is the 99th percentile of the standard normal distribution
+        double sigma = Math.log((double) p99Nanos / medianNanos) / 2.326;
+        return random -> (long) (medianNanos * Math.exp(sigma * random.nextGaussian()));
+    }
+
+    /**
+     * The same distribution, every response time multiplied by factor, e.g. for a brownout.
+     *
+     * @param factor multiplier, not negative
+     * @return the scaled distribution
+     */
+    default LatencyDistribution scaled(double factor) {
+        if (!(factor >= 0)) {
+            throw new IllegalArgumentException("factor must not be negative");
+        }
+        return random -> (long) (sampleNanos(random) * factor);
+    }
+}
@@ -0,0 +1,167 @@
+package main;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Histogram of call durations in the style of HdrHistogram. Every power of two is split into 16
+ * linear sub-buckets, so a recorded value is off by at most 1/16 whatever its magnitude, while the
+ * whole range from 1 ns to over an hour fits into a few hundred counters. Recording is lock-free,
+ * it finds the bucket with a few shifts and increments an atomic counter.
+ *
+ * <p>Like a {@link java.util.concurrent.atomic.LongAdder}, the counters are striped: a histogram
+ * starts with a single stripe and adds stripes, up to the number of CPUs rounded up to a power of
+ * two, once threads contend on a counter. Each thread records into the stripe picked by its id, so
+ * threads recording the same steady latency do not all increment the same cell. Reading sums up
+ * the stripes.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values of 2^42 ns (73 minutes) and more all land in the last bucket
+    private static final int MAX_EXPONENT = 42;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    // Slot of a stripe that sums up the recorded values
+    private static final int TOTAL_NANOS = BUCKETS;
+    // Two cache lines at the end of every stripe, so that the hot total of one stripe never
+    // shares a line with the start of the next one
+    private static final int STRIPE_LENGTH = TOTAL_NANOS + 1 + 16;
+    private static final int MAX_STRIPES =
+            Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+
+    private final int maxStripes;
+    private final AtomicReference<AtomicLongArray[]> stripes =
+            new AtomicReference<>(new AtomicLongArray[] {new AtomicLongArray(STRIPE_LENGTH)});
+
+    public LatencyHistogram() {
+        this(MAX_STRIPES);
+    }
+
+    // Histogram that grows to at most maxStripes stripes, a power of two
+    LatencyHistogram(int maxStripes) {
+        if (maxStripes < 1 || Integer.bitCount(maxStripes) != 1) {
+            throw new IllegalArgumentException("maxStripes must be a power of two");
+        }
+        this.maxStripes = maxStripes;
+    }
+
+    /**
+     * Record a single value.
+     *
+     * @param nanos duration of a call, in nanoseconds. Negative values count as zero
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        int bucket = bucketOf(value);
+        AtomicLongArray[] current = stripes.get();
+        AtomicLongArray stripe = current[threadHash() & (current.length - 1)];
+        long count = stripe.get(bucket);
+        if (!stripe.compareAndSet(bucket, count, count + 1)) {
+            // Another thread records into the same stripe, spread the threads over more stripes
+            stripe.getAndIncrement(bucket);
+            grow(current);
+        }
+        stripe.getAndAdd(TOTAL_NANOS, value);
+    }
+
+    // Stable for a thread, spread evenly over the stripes for consecutive thread ids
+    private static int threadHash() {
+        return (int) ((Thread.currentThread().getId() * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    private void grow(AtomicLongArray[] current) {
+        if (current.length >= maxStripes) {
+            return;
+        }
+        var grown = new AtomicLongArray[current.length * 2];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        for (int i = current.length; i < grown.length; i++) {
+            grown[i] = new AtomicLongArray(STRIPE_LENGTH);
+        }
+        // Losing the race is fine, the winner grew the stripes just the same
+        stripes.compareAndSet(current, grown);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        // The top bit is implied, the next SUB_BUCKET_BITS bits select the sub-bucket
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // Highest value that is recorded into the bucket
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    // Counts of every bucket summed over the stripes, followed by the total of the values
+    private long[] snapshot() {
+        long[] snapshot = new long[TOTAL_NANOS + 1];
+        for (AtomicLongArray stripe : stripes.get()) {
+            for (int i = 0; i < snapshot.length; i++) {
+                snapshot[i] += stripe.get(i);
+            }
+        }
+        return snapshot;
+    }
+
+    private static long countOf(long[] snapshot) {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += snapshot[i];
+        }
+        return count;
+    }
+
+    // Number of recorded values
+    public long count() {
+        return countOf(snapshot());
+    }
+
+    // Mean of the recorded values in nanoseconds, 0 if there are none
+    public double mean() {
+        long[] snapshot = snapshot();
+        long count = countOf(snapshot);
+        return count == 0 ? 0 : (double) snapshot[TOTAL_NANOS] / count;
+    }
+
+    /**
+     * Value at the given percentile. Values recorded concurrently may or may not be taken into
+     * account.
+     *
+     * @param percentile percentile in [0, 100]
+     * @return highest value, in nanoseconds, of the bucket holding the percentile, 0 if no value
+     *         was recorded
+     */
+    public long percentile(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("percentile must be in [0, 100]");
+        }
+        long[] snapshot = snapshot();
+        long count = countOf(snapshot);
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return highestValueOf(i);
+            }
+        }
+        return highestValueOf(BUCKETS - 1);
+    }
+}
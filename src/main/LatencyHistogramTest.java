@@ -0,0 +1,85 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Latency histogram test
+ */
+class LatencyHistogramTest {
+
+    @Test
+    void testEmpty() {
+        var histogram = new LatencyHistogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(99));
+        assertEquals(0, histogram.mean(), 0);
+    }
+
+    @Test
+    void testSmallValuesAreExact() {
+        var histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+        assertEquals(10, histogram.count());
+        assertEquals(5, histogram.percentile(50));
+        assertEquals(10, histogram.percentile(100));
+        assertEquals(5.5, histogram.mean(), 1e-9);
+    }
+
+    @Test
+    void testPercentilesWithinPrecision() {
+        var histogram = new LatencyHistogram();
+        //1 us to 100 ms
+        for (long micros = 1; micros <= 100_000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        assertWithin(50_000_000, histogram.percentile(50));
+        assertWithin(99_000_000, histogram.percentile(99));
+        assertWithin(100_000_000, histogram.percentile(100));
+        assertWithin(1000, histogram.percentile(0));
+    }
+
+    @Test
+    void testHugeAndNegativeValues() {
+        var histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(0, histogram.percentile(50));
+        assertTrue(histogram.percentile(100) > 1L << 42);
+    }
+
+    @Test
+    void testConcurrentRecording() throws InterruptedException {
+        //Also with room for a stripe per thread, whatever the number of CPUs
+        for (var histogram : new LatencyHistogram[] {new LatencyHistogram(),
+                new LatencyHistogram(8)}) {
+            var workers = new ArrayList<Thread>();
+            for (int t = 0; t < 4; t++) {
+                var worker = new Thread(() -> {
+                    for (int i = 0; i < 100_000; i++) {
+                        histogram.record(i);
+                    }
+                });
+                worker.start();
+                workers.add(worker);
+            }
+            for (var worker : workers) {
+                worker.join();
+            }
+            assertEquals(400_000, histogram.count());
+            assertEquals(49_999.5, histogram.mean(), 1e-9);
+            assertWithin(50_000, histogram.percentile(50));
+        }
+    }
+
+    //The reported value is the top of the bucket, at most 1/16 above the actual value
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 16,
+                "expected about " + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,25 @@
+package main;
+
+/**
+ * Estimates how many concurrent calls a remote service can take, from the round-trip times and
+ * outcomes of the calls made to it. An algorithm may keep state between samples, so every
+ * {@link AdaptiveConcurrencyLimiter} needs its own instance. The limiter serialises the calls to
+ * update, which it makes once per window of finished calls.
+ */
+public interface LimitAlgorithm {
+
+    // Limit used before the first sample.
+    int getInitialLimit();
+
+    /**
+     * Compute the new limit after a window of calls finished, often a single call.
+     *
+     * @param limit    the current limit
+     * @param rttNanos average round-trip time of the calls, in nanoseconds
+     * @param inFlight largest number of calls in flight when one of the calls started, including
+     *                 itself
+     * @param dropped  true if any of the calls failed or timed out, a sign of overload
+     * @return the new limit
+     */
+    int update(int limit, long rttNanos, int inFlight, boolean dropped);
+}
@@ -0,0 +1,175 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Puts a circuit breaker under load from several threads for a while and reports how it coped,
+ * see {@link LoadReport}. Together with a {@link SimulatedRemoteService} this tries out breaker
+ * settings against outages, brownouts and hangs offline, before they go to production.
+ *
+ * <p>Without a rate every thread calls again as soon as its last call returned, a closed loop as
+ * in a thread-per-request server. With a rate the threads share a {@link RateLimiter} and calls
+ * arrive at that rate as long as there are threads free to make them.
+ *
+ * <p>The service is called through {@link CircuitBreaker#execute}, so a call counts as rejected
+ * exactly when the circuit breaker did not let it reach the service, whether it threw
+ * CallNotPermittedException or returned its fallback response.
+ */
+public class LoadDriver {
+
+    private final int threads;
+    private final long durationNanos;
+    private final double callsPerSecond;
+
+    /**
+     * Constructor to create a driver where every thread calls as fast as it can.
+     *
+     * @param threads       number of calling threads
+     * @param durationNanos length of a run, in nanoseconds
+     */
+    public LoadDriver(int threads, long durationNanos) {
+        this(threads, durationNanos, 0);
+    }
+
+    /**
+     * Constructor to create a driver calling at a fixed rate.
+     *
+     * @param threads        number of calling threads, enough to keep up with the rate
+     * @param durationNanos  length of a run, in nanoseconds
+     * @param callsPerSecond rate of the calls of all threads together, zero for no limit
+     */
+    public LoadDriver(int threads, long durationNanos, double callsPerSecond) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        if (durationNanos <= 0) {
+            throw new IllegalArgumentException("durationNanos must be positive");
+        }
+        if (!(callsPerSecond >= 0)) {
+            throw new IllegalArgumentException("callsPerSecond must not be negative");
+        }
+        this.threads = threads;
+        this.durationNanos = durationNanos;
+        this.callsPerSecond = callsPerSecond;
+    }
+
+    /**
+     * Run against a circuit breaker protecting a service. If it is a
+     * {@link SimulatedRemoteService}, its schedule restarts with the run, and time to trip and time
+     * to recover are measured from the start and the end of its faults. Otherwise they are
+     * measured from the start of the run.
+     *
+     * @param circuitBreaker circuit breaker to call the service through
+     * @param service        the service behind the circuit breaker
+     * @return the report of the run
+     * @throws InterruptedException if interrupted while waiting for the run to finish
+     */
+    public <T> LoadReport run(CircuitBreaker<T> circuitBreaker, RemoteService<? extends T> service)
+            throws InterruptedException {
+        SimulatedRemoteService<?> simulated = service instanceof SimulatedRemoteService
+                ? (SimulatedRemoteService<?>) service : null;
+        var successful = new LongAdder();
+        var failed = new LongAdder();
+        var rejected = new LongAdder();
+        var latency = new LatencyHistogram();
+        var transitions = new ConcurrentLinkedQueue<LoadReport.Transition>();
+        RateLimiter rateLimiter = callsPerSecond > 0
+                ? new RateLimiter(callsPerSecond, threads) : null;
+        var ready = new CountDownLatch(threads);
+        var go = new CountDownLatch(1);
+        long[] startTime = new long[1];
+
+        // Events are published synchronously, the time they are seen is the time of the change
+        Consumer<CircuitBreakerEvent> subscriber = event -> transitions.add(
+                new LoadReport.Transition(event.getSequence(), System.nanoTime() - startTime[0],
+                        event.getFromState(), event.getToState()));
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            // Set by the call once the circuit breaker let it through to the service
+            boolean[] reached = new boolean[1];
+            Callable<T> call = () -> {
+                reached[0] = true;
+                return service.call();
+            };
+            Thread worker = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                long deadline = startTime[0] + durationNanos;
+                while (true) {
+                    long remaining = deadline - System.nanoTime();
+                    try {
+                        if (remaining <= 0 || rateLimiter != null
+                                && !rateLimiter.tryAcquire(1, remaining)) {
+                            return;
+                        }
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    long begin = System.nanoTime();
+                    reached[0] = false;
+                    boolean success;
+                    try {
+                        circuitBreaker.execute(call);
+                        success = true;
+                    } catch (Exception ex) {
+                        success = false;
+                    }
+                    if (!reached[0]) {
+                        rejected.increment();
+                        continue;
+                    }
+                    if (success) {
+                        successful.increment();
+                    } else {
+                        failed.increment();
+                    }
+                    latency.record(System.nanoTime() - begin);
+                }
+            }, "load-driver-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        ready.await();
+        // Written before the latch opens, so the workers and the subscriber see it
+        startTime[0] = System.nanoTime();
+        circuitBreaker.getEvents().subscribe(subscriber);
+        if (simulated != null) {
+            simulated.restart();
+        }
+        go.countDown();
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } finally {
+            circuitBreaker.getEvents().unsubscribe(subscriber);
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+        }
+        long elapsed = System.nanoTime() - startTime[0];
+        // Subscribers on different threads may see the transitions out of order, their sequences
+        // come from the state word and put them back in the order they happened
+        List<LoadReport.Transition> changes = new ArrayList<>(transitions);
+        changes.sort(Comparator.comparingLong(LoadReport.Transition::getSequence));
+        return new LoadReport(elapsed, successful.sum(), failed.sum(), rejected.sum(), latency,
+                changes, circuitBreaker.getState(),
+                simulated != null ? simulated.getFaultStart() : -1,
+                simulated != null ? simulated.getFaultEnd() : -1);
+    }
+}
@@ -0,0 +1,89 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Load driver test
+ */
+class LoadDriverTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadDriverTest.class);
+    private static final long MILLISECOND = 1000L * 1000;
+
+    @Test
+    void testTripAndRecoverDuringOutage() throws Exception {
+        var service = SimulatedRemoteService.builder("ok")
+                .latency(LatencyDistribution.uniform(100_000, 500_000))
+                .healthy(200 * MILLISECOND)
+                .down(300 * MILLISECOND)
+                .healthy(Long.MAX_VALUE)
+                .build();
+        var circuitBreaker = CircuitBreakerConfig.builder()
+                .timeout(1000)
+                .failureThreshold(5)
+                .retryTimePeriod(50 * MILLISECOND)
+                .build()
+                .createCircuitBreaker(service);
+        LoadReport report = new LoadDriver(4, 1000 * MILLISECOND).run(circuitBreaker, service);
+        LOGGER.info("Outage: {}", report);
+
+        assertTrue(report.getCalls() > 0);
+        assertEquals(report.getCalls(), report.getSuccessfulCalls() + report.getFailedCalls()
+                + report.getRejectedCalls());
+        assertTrue(report.getRejectedCalls() > 0);
+        assertTrue(report.getRejectionRatio() > 0 && report.getRejectionRatio() < 1);
+        //Five failures in a row trip the circuit soon after the outage started
+        assertTrue(report.getTimeToTrip() >= 0 && report.getTimeToTrip() < 150 * MILLISECOND,
+                "timeToTrip " + report.getTimeToTrip());
+        //The first trial request after the outage closes it again
+        assertEquals("CLOSED", report.getFinalState());
+        assertTrue(report.getTimeToRecover() >= 0
+                && report.getTimeToRecover() < 200 * MILLISECOND,
+                "timeToRecover " + report.getTimeToRecover());
+        assertEquals(State.OPEN, report.getTransitions().get(0).getToState());
+        assertTrue(report.getLatencyPercentile(50) >= 100_000);
+        assertTrue(report.getLatencyPercentile(99.9) >= report.getLatencyPercentile(50));
+    }
+
+    @Test
+    void testFallbackResponsesCountAsRejected() throws Exception {
+        var service = SimulatedRemoteService.builder("ok")
+                .down(300 * MILLISECOND)
+                .healthy(Long.MAX_VALUE)
+                .build();
+        var circuitBreaker = new DefaultCircuitBreaker<String>(service, 1000, 5,
+                IntervalStrategy.fixed(50 * MILLISECOND), 1, 1.0, error -> true,
+                error -> "fallback", NanoClock.SYSTEM);
+        LoadReport report = new LoadDriver(2, 500 * MILLISECOND).run(circuitBreaker, service);
+        LOGGER.info("Fallback: {}", report);
+
+        //The breaker answers rejected callers with its fallback instead of throwing
+        assertTrue(report.getRejectedCalls() > 0);
+        assertEquals(service.getCalls(), report.getSuccessfulCalls() + report.getFailedCalls());
+        assertEquals(circuitBreaker.getMetrics().getRejectedCalls(), report.getRejectedCalls());
+        assertEquals(service.getFailedCalls(), report.getFailedCalls());
+    }
+
+    @Test
+    void testRateAndHealthyService() throws Exception {
+        var service = SimulatedRemoteService.builder("ok").build();
+        var circuitBreaker = CircuitBreakerConfig.ofDefaults().createCircuitBreaker(service);
+        LoadReport report = new LoadDriver(2, 500 * MILLISECOND, 200).run(circuitBreaker,
+                service);
+        LOGGER.info("Healthy: {}", report);
+
+        //Up to a burst of 2 on top of 200 calls per second for half a second
+        assertTrue(report.getCalls() >= 90 && report.getCalls() <= 102,
+                "calls " + report.getCalls());
+        assertEquals(report.getCalls(), report.getSuccessfulCalls());
+        assertEquals(0.0, report.getRejectionRatio());
+        assertEquals(-1, report.getTimeToTrip());
+        assertEquals(-1, report.getTimeToRecover());
+        assertTrue(report.getTransitions().isEmpty());
+    }
+}
@@ -0,0 +1,184 @@
+package main;
+
+import java.util.List;
+
+/**
+ * Outcome of a {@link LoadDriver} run against a circuit breaker. Times are relative to the start
+ * of the run.
+ *
+ * <p>Time to trip is how long the circuit stayed CLOSED once the service started failing, and time
+ * to recover how long it took to close for good once the service was healthy again, trial requests
+ * and any flapping included. Without a known fault window the run counts as failing from its start,
+ * and recovery is measured from the first trip.
+ */
+public final class LoadReport {
+
+    private final long durationNanos;
+    private final long successfulCalls;
+    private final long failedCalls;
+    private final long rejectedCalls;
+    private final LatencyHistogram latency;
+    private final List<Transition> transitions;
+    private final String finalState;
+    private final long faultStart;
+    private final long faultEnd;
+
+    LoadReport(long durationNanos, long successfulCalls, long failedCalls, long rejectedCalls,
+               LatencyHistogram latency, List<Transition> transitions, String finalState,
+               long faultStart, long faultEnd) {
+        this.durationNanos = durationNanos;
+        this.successfulCalls = successfulCalls;
+        this.failedCalls = failedCalls;
+        this.rejectedCalls = rejectedCalls;
+        this.latency = latency;
+        this.transitions = List.copyOf(transitions);
+        this.finalState = finalState;
+        this.faultStart = faultStart;
+        this.faultEnd = faultEnd;
+    }
+
+    // Calls made by the driver, whether the circuit breaker let them through or not
+    public long getCalls() {
+        return successfulCalls + failedCalls + rejectedCalls;
+    }
+
+    public long getSuccessfulCalls() {
+        return successfulCalls;
+    }
+
+    // Calls that reached the service and failed, timed out calls included
+    public long getFailedCalls() {
+        return failedCalls;
+    }
+
+    // Calls turned away by the circuit breaker
+    public long getRejectedCalls() {
+        return rejectedCalls;
+    }
+
+    // Calls per second over the whole run
+    public double getThroughput() {
+        return getCalls() * 1e9 / durationNanos;
+    }
+
+    // Share of the calls turned away by the circuit breaker
+    public double getRejectionRatio() {
+        long calls = getCalls();
+        return calls == 0 ? 0 : (double) rejectedCalls / calls;
+    }
+
+    // Durations of the calls the circuit breaker let through
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Percentile of the durations of the calls the circuit breaker let through.
+     *
+     * @param percentile e.g. 50, 99 or 99.9
+     * @return duration in nanoseconds
+     */
+    public long getLatencyPercentile(double percentile) {
+        return latency.percentile(percentile);
+    }
+
+    // State changes of the circuit breaker during the run, in order
+    public List<Transition> getTransitions() {
+        return transitions;
+    }
+
+    public String getFinalState() {
+        return finalState;
+    }
+
+    /**
+     * Time from the start of the fault to the first time the circuit opened.
+     *
+     * @return time in nanoseconds, or -1 if the circuit never opened during the fault
+     */
+    public long getTimeToTrip() {
+        long from = Math.max(0, faultStart);
+        for (Transition transition : transitions) {
+            if (transition.toState == State.OPEN && transition.offsetNanos >= from) {
+                return transition.offsetNanos - from;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Time from the end of the fault to the last time the circuit closed.
+     *
+     * @return time in nanoseconds, zero if the circuit closed before the fault was over, or -1 if
+     *         it never opened or is not CLOSED at the end of the run
+     */
+    public long getTimeToRecover() {
+        long trip = getTimeToTrip();
+        if (trip < 0 || faultEnd == Long.MAX_VALUE || !State.CLOSED.name().equals(finalState)) {
+            return -1;
+        }
+        long from = faultEnd >= 0 ? faultEnd : Math.max(0, faultStart) + trip;
+        for (int i = transitions.size() - 1; i >= 0; i--) {
+            Transition transition = transitions.get(i);
+            if (transition.toState == State.CLOSED) {
+                return Math.max(0, transition.offsetNanos - from);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("calls=%d, successful=%d, failed=%d, rejected=%d, "
+                        + "throughput=%.1f/s, rejectionRatio=%.3f, p50=%.3fms, p99=%.3fms, "
+                        + "p999=%.3fms, timeToTrip=%s, timeToRecover=%s, finalState=%s",
+                getCalls(), successfulCalls, failedCalls, rejectedCalls, getThroughput(),
+                getRejectionRatio(), latency.percentile(50) / 1e6, latency.percentile(99) / 1e6,
+                latency.percentile(99.9) / 1e6, millis(getTimeToTrip()),
+                millis(getTimeToRecover()), finalState);
+    }
+
+    private static String millis(long nanos) {
+        return nanos < 0 ? "never" : String.format("%.1fms", nanos / 1e6);
+    }
+
+    /**
+     * State change of the circuit breaker, as seen by the driver.
+     */
+    public static final class Transition {
+        final long sequence;
+        final long offsetNanos;
+        final State fromState;
+        final State toState;
+
+        Transition(long sequence, long offsetNanos, State fromState, State toState) {
+            this.sequence = sequence;
+            this.offsetNanos = offsetNanos;
+            this.fromState = fromState;
+            this.toState = toState;
+        }
+
+        // Position of the transition in the event stream of the circuit breaker
+        public long getSequence() {
+            return sequence;
+        }
+
+        // Time since the start of the run, in nanoseconds
+        public long getOffsetNanos() {
+            return offsetNanos;
+        }
+
+        public State getFromState() {
+            return fromState;
+        }
+
+        public State getToState() {
+            return toState;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.1fms %s -> %s", offsetNanos / 1e6, fromState, toState);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package main;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clock that only moves when told to, so that tests can jump over retry periods and service
+ * startup delays instead of sleeping through them.
+ */
+public final class ManualNanoClock implements NanoClock {
+
+    private final AtomicLong now;
+
+    public ManualNanoClock() {
+        this(0);
+    }
+
+    public ManualNanoClock(long startNanos) {
+        this.now = new AtomicLong(startNanos);
+    }
+
+    @Override
+    public long nanoTime() {
+        return now.get();
+    }
+
+    // Move the time forward by the given number of nanoseconds
+    public void advance(long nanos) {
+        now.addAndGet(nanos);
+    }
+
+    // Move the time forward by the given number of seconds
+    public void advanceSeconds(long seconds) {
+        advance(seconds * 1000 * 1000 * 1000);
+    }
+}
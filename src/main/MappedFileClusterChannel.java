@@ -0,0 +1,168 @@
+package main;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Cluster channel for processes on the same host, through a memory-mapped file that every process
+ * maps. The file holds a ring of fixed-size message slots and a counter of the messages written.
+ *
+ * <p>A writer claims a slot with an atomic increment of the counter, so writers never lock. The
+ * slot is stamped with its sequence number once the message is written. Readers poll the slot of
+ * the next sequence number, and check the stamp again after copying the message out, so a message
+ * overwritten by a writer a full ring ahead is dropped instead of read torn. A reader that falls
+ * a full ring behind skips ahead and loses the messages it missed. A slot that was claimed but is
+ * still not stamped after {@link #STALLED_SLOT_TIMEOUT} belongs to a writer that died half-way
+ * through, readers skip it rather than wait for a full ring of later messages. The atomic
+ * operations on the shared memory are those of the hardware, so they hold between processes as
+ * well as threads.
+ *
+ * <p>A new channel only receives messages written after it subscribed.
+ */
+public class MappedFileClusterChannel implements ClusterChannel {
+
+    private static final VarHandle LONG =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final int SLOTS = 1024;
+    // Stamp, then the message
+    private static final int SLOT_SIZE = 8 + ClusterStateMessage.MAX_SIZE;
+    // The counter, alone on its cache line
+    private static final int HEADER_SIZE = 64;
+    private static final int COUNTER_OFFSET = 0;
+    static final int FILE_SIZE = HEADER_SIZE + SLOTS * SLOT_SIZE;
+    // Writing a message takes well under a microsecond, a writer this late is gone for good
+    static final long STALLED_SLOT_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final FileChannel file;
+    private final MappedByteBuffer buffer;
+    private final long pollInterval;
+    private final LongAdder skippedSlots = new LongAdder();
+    private volatile boolean closed;
+    private Thread receiver;
+
+    /**
+     * Constructor to map the shared file, created if missing.
+     *
+     * @param path         file shared by the processes of the cluster
+     * @param pollInterval time, in nanoseconds, a reader waits before looking for new messages
+     *                     again
+     * @throws IOException if the file cannot be mapped
+     */
+    public MappedFileClusterChannel(Path path, long pollInterval) throws IOException {
+        if (pollInterval <= 0) {
+            throw new IllegalArgumentException("pollInterval must be positive");
+        }
+        this.pollInterval = pollInterval;
+        this.file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            // Mapping grows the file to its full size, filled with zeros, i.e. no message yet
+            this.buffer = file.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+        } catch (IOException | RuntimeException ex) {
+            file.close();
+            throw ex;
+        }
+    }
+
+    private static int slotOffset(long sequence) {
+        return HEADER_SIZE + (int) (sequence & (SLOTS - 1)) * SLOT_SIZE;
+    }
+
+    @Override
+    public void publish(ClusterStateMessage message) {
+        long sequence = (long) LONG.getAndAdd(buffer, COUNTER_OFFSET, 1L);
+        int offset = slotOffset(sequence);
+        // Readers of the previous lap must see the slot change under them
+        LONG.setVolatile(buffer, offset, 0L);
+        message.writeTo(buffer.duplicate().position(offset + 8));
+        LONG.setRelease(buffer, offset, sequence + 1);
+    }
+
+    @Override
+    public synchronized void subscribe(Consumer<ClusterStateMessage> listener) {
+        if (receiver != null) {
+            throw new IllegalStateException("Channel already has a listener");
+        }
+        long start = (long) LONG.getVolatile(buffer, COUNTER_OFFSET);
+        receiver = new Thread(() -> receive(listener, start), "cluster-file-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    private void receive(Consumer<ClusterStateMessage> listener, long next) {
+        var copy = new byte[ClusterStateMessage.MAX_SIZE];
+        var view = buffer.duplicate();
+        // When the reader started waiting for a claimed slot to be stamped, 0 if it is not waiting
+        long stalledSince = 0;
+        while (!closed) {
+            int offset = slotOffset(next);
+            long stamp = (long) LONG.getAcquire(buffer, offset);
+            if (stamp == next + 1) {
+                view.position(offset + 8);
+                view.get(copy);
+                VarHandle.loadLoadFence();
+                if ((long) LONG.getVolatile(buffer, offset) == stamp) {
+                    deliver(listener, ClusterStateMessage.readFrom(ByteBuffer.wrap(copy)));
+                }
+                next++;
+                stalledSince = 0;
+                continue;
+            }
+            long written = (long) LONG.getVolatile(buffer, COUNTER_OFFSET);
+            if (written - next > SLOTS) {
+                // Lapped, the messages in between were overwritten
+                next = written - SLOTS;
+                stalledSince = 0;
+                continue;
+            }
+            if (written > next) {
+                long now = System.nanoTime();
+                if (stalledSince == 0) {
+                    stalledSince = now;
+                } else if (now - stalledSince > STALLED_SLOT_TIMEOUT) {
+                    // Claimed by a writer that died before stamping it
+                    skippedSlots.increment();
+                    next++;
+                    stalledSince = 0;
+                    continue;
+                }
+            }
+            LockSupport.parkNanos(pollInterval);
+        }
+    }
+
+    // Number of slots skipped because their writer never finished them
+    public long getSkippedSlots() {
+        return skippedSlots.sum();
+    }
+
+    private static void deliver(Consumer<ClusterStateMessage> listener,
+                                ClusterStateMessage message) {
+        if (message == null) {
+            return;
+        }
+        try {
+            listener.accept(message);
+        } catch (RuntimeException ex) {
+            // A broken listener must not stop the receiver
+        }
+    }
+
+    // The mapping itself is released when the buffer is garbage collected
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        file.close();
+    }
+}
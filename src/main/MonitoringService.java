@@ -1,12 +1,42 @@
+package main;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 public class MonitoringService {
 
-    private final CircuitBreaker delayedService;
+    // Registry keys of the two services
+    public static final String DELAYED_SERVICE = "delayed";
+
+    public static final String QUICK_SERVICE = "quick";
+
+    private final CircuitBreaker<String> delayedService;
 
-    private final CircuitBreaker quickService;
+    private final CircuitBreaker<String> quickService;
 
-    public MonitoringService(CircuitBreaker delayedService, CircuitBreaker quickService) {
+    private final CircuitBreakerRegistry<String, String> registry;
+
+    // Concurrent requests for the same endpoint share one remote call
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    public MonitoringService(CircuitBreaker<String> delayedService,
+                             CircuitBreaker<String> quickService) {
         this.delayedService = delayedService;
         this.quickService = quickService;
+        this.registry = null;
+    }
+
+    /**
+     * Constructor looking up the circuit breaker of every remote service in a registry, under
+     * {@link #DELAYED_SERVICE}, {@link #QUICK_SERVICE} or the endpoint passed to
+     * {@link #remoteServiceResponse(String)}.
+     *
+     * @param registry circuit breakers by endpoint
+     */
+    public MonitoringService(CircuitBreakerRegistry<String, String> registry) {
+        this.delayedService = null;
+        this.quickService = null;
+        this.registry = registry;
     }
 
     //Assumption: Local service won't fail, no need to wrap it in a circuit breaker logic
@@ -20,11 +50,7 @@ public class MonitoringService {
      * @return response string
      */
     public String delayedServiceResponse() {
-        try {
-            return this.delayedService.attemptRequest();
-        } catch (RemoteServiceException e) {
-            return e.getMessage();
-        }
+        return response(DELAYED_SERVICE, this.delayedService);
     }
 
     /**
@@ -33,10 +59,119 @@ public class MonitoringService {
      * @return response string
      */
     public String quickServiceResponse() {
+        return response(QUICK_SERVICE, this.quickService);
+    }
+
+    /**
+     * Fetch response from the delayed service without blocking the caller, so that many requests
+     * can be in flight without a thread each.
+     *
+     * @return future of the response string
+     */
+    public CompletableFuture<String> delayedServiceResponseAsync() {
+        return responseAsync(DELAYED_SERVICE, this.delayedService);
+    }
+
+    /**
+     * Fetches response from a healthy service without blocking the caller.
+     *
+     * @return future of the response string
+     */
+    public CompletableFuture<String> quickServiceResponseAsync() {
+        return responseAsync(QUICK_SERVICE, this.quickService);
+    }
+
+    /**
+     * Fetch response from any endpoint of the registry, its circuit breaker is created on first
+     * use.
+     *
+     * @param endpoint key of the remote service in the registry
+     * @return response string
+     */
+    public String remoteServiceResponse(String endpoint) {
+        return response(endpoint, null);
+    }
+
+    // Number of requests that were answered by a call made for a concurrent identical request
+    public long coalescedRequests() {
+        return singleFlight.sharedCalls();
+    }
+
+    private String response(String endpoint, CircuitBreaker<String> fixed) {
         try {
-            return this.quickService.attemptRequest();
-        } catch (RemoteServiceException e) {
-            return e.getMessage();
+            CircuitBreaker<String> circuitBreaker = circuitBreaker(endpoint, fixed);
+            // A request joining a call in flight waits no longer than the call itself may take
+            return singleFlight.execute(endpoint, circuitBreaker::attemptRequest,
+                    circuitBreaker.getTimeout());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            // Gave up waiting for the shared call
+            Thread.currentThread().interrupt();
+            return failureMessage(e);
+        } catch (Exception e) {
+            return failureMessage(e);
+        }
+    }
+
+    private CompletableFuture<String> responseAsync(String endpoint,
+                                                    CircuitBreaker<String> fixed) {
+        CircuitBreaker<String> circuitBreaker = circuitBreaker(endpoint, fixed);
+        return responseOrMessage(singleFlight.executeAsync(endpoint,
+                circuitBreaker::attemptRequestAsync, circuitBreaker.getTimeout()));
+    }
+
+    /**
+     * Counters and latency histogram of the calls to an endpoint, e.g. {@link #DELAYED_SERVICE}.
+     *
+     * @param endpoint key of the remote service
+     * @return metrics of its circuit breaker
+     */
+    public CircuitBreakerMetrics metrics(String endpoint) {
+        return circuitBreaker(endpoint, fixedCircuitBreaker(endpoint)).getMetrics();
+    }
+
+    /**
+     * State transitions of the circuit breaker of an endpoint, to list the recent ones or to
+     * subscribe to the next ones.
+     *
+     * @param endpoint key of the remote service
+     * @return event stream of its circuit breaker
+     */
+    public CircuitBreakerEvents events(String endpoint) {
+        return circuitBreaker(endpoint, fixedCircuitBreaker(endpoint)).getEvents();
+    }
+
+    private CircuitBreaker<String> fixedCircuitBreaker(String endpoint) {
+        if (DELAYED_SERVICE.equals(endpoint)) {
+            return delayedService;
+        }
+        return QUICK_SERVICE.equals(endpoint) ? quickService : null;
+    }
+
+    // Breakers from the registry are looked up on every call, an idle one may have been evicted
+    private CircuitBreaker<String> circuitBreaker(String endpoint, CircuitBreaker<String> fixed) {
+        if (registry == null) {
+            if (fixed == null) {
+                throw new IllegalStateException("No circuit breaker for " + endpoint);
+            }
+            return fixed;
+        }
+        return registry.circuitBreaker(endpoint);
+    }
+
+    // Same as the blocking calls, a failure is reported through its message
+    private static CompletableFuture<String> responseOrMessage(CompletableFuture<String> response) {
+        return response.exceptionally(error -> failureMessage(
+                error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error));
+    }
+
+    // While the circuit is OPEN, report why the service was given up on as a quick fallback
+    private static String failureMessage(Throwable error) {
+        if (error instanceof CallNotPermittedException && error.getCause() != null) {
+            return error.getCause().getMessage();
         }
+        return error.getMessage();
     }
-}
\ No newline at end of file
+}
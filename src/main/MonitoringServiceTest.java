@@ -1,7 +1,9 @@
-package unittest;
+package main;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -20,7 +22,7 @@ class MonitoringServiceTest {
     @Test
     void testDelayedRemoteResponseSuccess() {
         var delayedService = new DelayedRemoteService(System.nanoTime()-2*1000*1000*1000, 2);
-        var delayedServiceCircuitBreaker = new DefaultCircuitBreaker(delayedService, 3000,
+        var delayedServiceCircuitBreaker = new DefaultCircuitBreaker<String>(delayedService, 3000,
                 1,
                 2 * 1000 * 1000 * 1000);
 
@@ -33,7 +35,7 @@ class MonitoringServiceTest {
     @Test
     void testDelayedRemoteResponseFailure() {
         var delayedService = new DelayedRemoteService(System.nanoTime(), 2);
-        var delayedServiceCircuitBreaker = new DefaultCircuitBreaker(delayedService, 3000,
+        var delayedServiceCircuitBreaker = new DefaultCircuitBreaker<String>(delayedService, 3000,
                 1,
                 2 * 1000 * 1000 * 1000);
         var monitoringService = new MonitoringService(delayedServiceCircuitBreaker,null);
@@ -42,10 +44,47 @@ class MonitoringServiceTest {
         assertEquals(response, "Delayed service is down");
     }
 
+    @Test
+    void testDelayedRemoteResponseAsync() {
+        var delayedService = new DelayedRemoteService(System.nanoTime(), 2);
+        var delayedServiceCircuitBreaker = new DefaultCircuitBreaker<String>(delayedService, 3000,
+                1,
+                2 * 1000 * 1000 * 1000);
+        var monitoringService = new MonitoringService(delayedServiceCircuitBreaker,
+                new DefaultCircuitBreaker<String>(new QuickRemoteService(), 3000, 1, 2 * 1000 * 1000 * 1000));
+        //Fan out a burst of asynchronous requests, none of them blocks the caller
+        var responses = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < 1000; i++) {
+            responses.add(monitoringService.delayedServiceResponseAsync());
+            responses.add(monitoringService.quickServiceResponseAsync());
+        }
+        for (int i = 0; i < responses.size(); i += 2) {
+            assertEquals("Delayed service is down", responses.get(i).join());
+            assertEquals("Quick Service is working", responses.get(i + 1).join());
+        }
+    }
+
+    @Test
+    void testMetricsAndEvents() {
+        var delayedService = new DelayedRemoteService(System.nanoTime(), 2);
+        var delayedServiceCircuitBreaker = new DefaultCircuitBreaker<String>(delayedService, 3000,
+                1,
+                2 * 1000 * 1000 * 1000);
+        var monitoringService = new MonitoringService(delayedServiceCircuitBreaker, null);
+        monitoringService.delayedServiceResponse();
+        monitoringService.delayedServiceResponse();
+        var metrics = monitoringService.metrics(MonitoringService.DELAYED_SERVICE);
+        assertEquals(1, metrics.getFailedCalls());
+        assertEquals(1, metrics.getRejectedCalls());
+        var events = monitoringService.events(MonitoringService.DELAYED_SERVICE).recentEvents();
+        assertEquals(1, events.size());
+        assertEquals(State.OPEN, events.get(0).getToState());
+    }
+
     @Test
     void testQuickRemoteServiceResponse() {
         var delayedService = new QuickRemoteService();
-        var delayedServiceCircuitBreaker = new DefaultCircuitBreaker(delayedService, 3000,
+        var delayedServiceCircuitBreaker = new DefaultCircuitBreaker<String>(delayedService, 3000,
                 1,
                 2 * 1000 * 1000 * 1000);
         var monitoringService = new MonitoringService(delayedServiceCircuitBreaker,null);
@@ -0,0 +1,98 @@
+package main;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.function.Consumer;
+
+/**
+ * Cluster channel over UDP multicast, one datagram per message. Every node joins the same group
+ * and port, messages go out to the local network only. Loopback is on, so several processes on the
+ * same host reach each other as well.
+ */
+public class MulticastClusterChannel implements ClusterChannel {
+
+    private final DatagramChannel channel;
+    private final InetSocketAddress target;
+    private volatile boolean closed;
+    private Thread receiver;
+
+    /**
+     * Constructor to join a multicast group.
+     *
+     * @param group            multicast address, e.g. 239.255.27.1
+     * @param port             UDP port shared by every node
+     * @param networkInterface interface to send and receive on
+     * @throws IOException if the group cannot be joined
+     */
+    public MulticastClusterChannel(InetAddress group, int port, NetworkInterface networkInterface)
+            throws IOException {
+        if (!group.isMulticastAddress()) {
+            throw new IllegalArgumentException(group + " is not a multicast address");
+        }
+        this.target = new InetSocketAddress(group, port);
+        this.channel = DatagramChannel.open(group.getAddress().length == 4
+                ? StandardProtocolFamily.INET : StandardProtocolFamily.INET6);
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true)
+                    .bind(new InetSocketAddress(port))
+                    .setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface)
+                    .setOption(StandardSocketOptions.IP_MULTICAST_TTL, 1)
+                    .setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true)
+                    .join(group, networkInterface);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void publish(ClusterStateMessage message) throws IOException {
+        var buffer = ByteBuffer.allocate(ClusterStateMessage.MAX_SIZE);
+        message.writeTo(buffer);
+        channel.send(buffer.flip(), target);
+    }
+
+    @Override
+    public synchronized void subscribe(Consumer<ClusterStateMessage> listener) {
+        if (receiver != null) {
+            throw new IllegalStateException("Channel already has a listener");
+        }
+        receiver = new Thread(() -> receive(listener), "cluster-multicast-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    private void receive(Consumer<ClusterStateMessage> listener) {
+        // Room for one more byte, so that an oversized datagram is not mistaken for a message
+        var buffer = ByteBuffer.allocate(ClusterStateMessage.MAX_SIZE + 1);
+        while (!closed) {
+            try {
+                buffer.clear();
+                channel.receive(buffer);
+                buffer.flip();
+                ClusterStateMessage message = buffer.remaining() <= ClusterStateMessage.MAX_SIZE
+                        ? ClusterStateMessage.readFrom(buffer) : null;
+                if (message != null) {
+                    listener.accept(message);
+                }
+            } catch (ClosedChannelException ex) {
+                return;
+            } catch (IOException | RuntimeException ex) {
+                // A bad datagram or a broken listener must not stop the receiver
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        channel.close();
+    }
+}
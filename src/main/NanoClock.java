@@ -0,0 +1,15 @@
+package main;
+
+/**
+ * Source of monotonic time, in nanoseconds, for the circuit breakers and the services. Injecting it
+ * lets very busy circuit breakers read a cached value instead of calling System.nanoTime(), and
+ * lets tests move time forward instead of sleeping.
+ */
+public interface NanoClock {
+
+    // Clock backed by System.nanoTime()
+    NanoClock SYSTEM = System::nanoTime;
+
+    // Current time in nanoseconds. Only differences between two readings are meaningful.
+    long nanoTime();
+}
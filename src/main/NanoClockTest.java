@@ -0,0 +1,33 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Clock test
+ */
+class NanoClockTest {
+
+    @Test
+    void testManualClock() {
+        var clock = new ManualNanoClock(42);
+        assertEquals(42, clock.nanoTime());
+        clock.advance(8);
+        clock.advanceSeconds(1);
+        assertEquals(1000L * 1000 * 1000 + 50, clock.nanoTime());
+    }
+
+    @Test
+    void testCachedClockTicks() throws InterruptedException {
+        try (var clock = new CachedNanoClock(1)) {
+            long start = clock.nanoTime();
+            Thread.sleep(20);
+            long elapsed = clock.nanoTime() - start;
+            //The cached value lags behind by at most a few ticks
+            assertTrue(elapsed >= 10L * 1000 * 1000, "elapsed " + elapsed);
+            assertTrue(elapsed <= System.nanoTime() - start);
+        }
+    }
+}
@@ -1,4 +1,6 @@
-public class QuickRemoteService implements RemoteService {
+package main;
+
+public class QuickRemoteService implements RemoteService<String> {
 
     @Override
     public String call() throws RemoteServiceException {
@@ -0,0 +1,14 @@
+package main;
+
+/**
+ * Thrown instead of calling the remote service when its rate limit is used up. Every
+ * {@link RateLimitedService} preallocates a single instance without a stack trace. Circuit breakers
+ * ignore it: the call never reached the service, so it says nothing about the health of the
+ * service.
+ */
+public class RateLimitExceededException extends RemoteServiceException {
+
+    RateLimitExceededException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,78 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Service that only calls the wrapped service within the rate of a {@link RateLimiter}. It is the
+ * service given to a circuit breaker, so every attemptRequest() first takes a permit. A call that
+ * gets no permit within maxWaitMillis is turned away with a {@link RateLimitExceededException},
+ * which the circuit breaker does not count as a failure.
+ *
+ * @param <T> type of the responses of the protected service
+ */
+public class RateLimitedService<T> implements RemoteService<T> {
+
+    private final RemoteService<T> service;
+    private final RateLimiter rateLimiter;
+    private final long maxWaitNanos;
+    private final LongAdder rejectedCalls = new LongAdder();
+    // Preallocated so that turning callers away does not create garbage
+    private final RateLimitExceededException rateLimitExceeded;
+
+    /**
+     * Constructor to create a service that turns calls away as soon as the rate is used up.
+     *
+     * @param serviceToCall the service protected by the rate limiter
+     * @param rateLimiter   the rate limiter, may be shared by several services
+     */
+    public RateLimitedService(RemoteService<T> serviceToCall, RateLimiter rateLimiter) {
+        this(serviceToCall, rateLimiter, 0);
+    }
+
+    /**
+     * Constructor to create a service where calls wait for a permit.
+     *
+     * @param maxWaitMillis time, in milliseconds, a call waits for a permit. Zero or less to turn
+     *                      it away straight away
+     */
+    public RateLimitedService(RemoteService<T> serviceToCall, RateLimiter rateLimiter,
+                              long maxWaitMillis) {
+        this.service = serviceToCall;
+        this.rateLimiter = rateLimiter;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+        this.rateLimitExceeded = new RateLimitExceededException("Rate limit of "
+                + rateLimiter.getPermitsPerSecond() + " calls per second exceeded");
+    }
+
+    @Override
+    public T call() throws RemoteServiceException {
+        if (!acquire()) {
+            rejectedCalls.increment();
+            throw rateLimitExceeded;
+        }
+        return service.call();
+    }
+
+    private boolean acquire() throws RemoteServiceException {
+        if (maxWaitNanos == 0) {
+            return rateLimiter.tryAcquire();
+        }
+        try {
+            return rateLimiter.tryAcquire(1, maxWaitNanos);
+        } catch (InterruptedException e) {
+            // Most likely the timeout of the circuit breaker, keep the flag for it
+            Thread.currentThread().interrupt();
+            throw new RemoteServiceException("Interrupted while waiting for the rate limiter", e);
+        }
+    }
+
+    // Number of calls turned away since the service was created
+    public long getRejectedCalls() {
+        return rejectedCalls.sum();
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+}
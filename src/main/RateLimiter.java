@@ -0,0 +1,192 @@
+package main;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Caps the rate of calls to a remote service, so that a fragile service is not overloaded in the
+ * first place, before its circuit breaker ever has to trip. Implemented as GCRA, the generic cell
+ * rate algorithm, which behaves like a token bucket of burst permits refilled at the given rate.
+ *
+ * <p>The whole state is the theoretical arrival time of the next permit, in a single atomic word:
+ * taking a permit is one CAS that moves it forward by the emission interval, and the bucket is
+ * refilled by time passing, so there is no background thread and no lock. A rejected caller only
+ * reads the word, an overloaded limiter does not turn into a contended one. Time is kept in 1/1024
+ * nanoseconds so that rates of tens of millions of permits per second stay accurate.
+ *
+ * <p>In 1/1024 nanoseconds the difference between the arrival time and now wraps around after
+ * about 104 days. So that a limiter left alone for longer does not take a stale arrival time for
+ * one far in the future and turn everybody away, it notes the time of a recent call now and then
+ * and takes the bucket for full once no call was noted for about 52 days.
+ */
+public class RateLimiter {
+
+    private static final int FRACTION_BITS = 10;
+    // How often a call notes its time, and how long after the last note the bucket is full for
+    // sure: the arrival time of the last call was at most a burst and a wait after it
+    private static final long NOTE_INTERVAL = 1L << 50;
+    private static final long STALE_AFTER = 1L << 52;
+    // Longest burst and longest wait, in nanoseconds, about 13 days each
+    private static final long MAX_AHEAD = 1L << 50;
+
+    private final double permitsPerSecond;
+    private final int burst;
+    // Time between two permits, in 1/1024 nanoseconds
+    private final long interval;
+    // How far the theoretical arrival time may run ahead of now, i.e. a full bucket
+    private final long limit;
+    private final NanoClock clock;
+    private final long baseTime;
+    // Theoretical arrival time of the next permit, relative to baseTime, in 1/1024 nanoseconds.
+    // Wraps around like the clock, so it is only ever compared by difference
+    private final AtomicLong arrival;
+    // Time, relative to baseTime, in nanoseconds, of a recent call that took permits
+    private volatile long lastCall;
+
+    /**
+     * Constructor to create a limiter on the system clock.
+     *
+     * @param permitsPerSecond rate at which permits are handed out in the long run
+     * @param burst            number of permits that may be taken at once after a quiet period
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, NanoClock.SYSTEM);
+    }
+
+    /**
+     * Constructor to create a limiter reading time from the given clock.
+     *
+     * @param clock source of time, e.g. {@link CachedNanoClock} for very high call rates
+     */
+    public RateLimiter(double permitsPerSecond, int burst, NanoClock clock) {
+        if (!(permitsPerSecond > 0)) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst must be positive");
+        }
+        double scaledInterval = 1e9 * (1 << FRACTION_BITS) / permitsPerSecond;
+        if (scaledInterval < 1 || scaledInterval * burst >= MAX_AHEAD << FRACTION_BITS) {
+            throw new IllegalArgumentException("permitsPerSecond and burst out of range");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.interval = Math.round(scaledInterval);
+        this.limit = interval * burst;
+        this.clock = clock;
+        this.baseTime = clock.nanoTime();
+        // A full bucket to start with
+        this.arrival = new AtomicLong(0);
+    }
+
+    private long nanos() {
+        return clock.nanoTime() - baseTime;
+    }
+
+    // The arrival time if it is still ahead of now, otherwise now, i.e. the bucket is full or
+    // refilling. After a long quiet period the difference may have wrapped around, but by then
+    // the bucket is full anyway
+    private long start(long current, long now, long nanos) {
+        return current - now > 0 && nanos - lastCall < STALE_AFTER ? current : now;
+    }
+
+    private void noteCall(long nanos) {
+        if (nanos - lastCall >= NOTE_INTERVAL) {
+            lastCall = nanos;
+        }
+    }
+
+    // Take a permit if one is available now, never waits
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * Take permits if they are all available now, never waits.
+     *
+     * @param permits number of permits, at most burst
+     * @return true if the permits were taken
+     */
+    public boolean tryAcquire(int permits) {
+        long increment = increment(permits);
+        for (;;) {
+            long nanos = nanos();
+            long now = nanos << FRACTION_BITS;
+            long current = arrival.get();
+            long next = start(current, now, nanos) + increment;
+            if (next - now > limit) {
+                return false;
+            }
+            if (arrival.compareAndSet(current, next)) {
+                noteCall(nanos);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Take permits, waiting for them if they become available within the timeout. The permits are
+     * reserved before waiting, so callers are served in order, and stay taken if the wait is
+     * interrupted.
+     *
+     * @param permits      number of permits, at most burst
+     * @param timeoutNanos time, in nanoseconds, the caller is willing to wait, at most about 13
+     *                     days
+     * @return true if the permits were taken, false straight away if they would not become
+     *         available in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean tryAcquire(int permits, long timeoutNanos) throws InterruptedException {
+        long increment = increment(permits);
+        long maxWait = Math.min(timeoutNanos, MAX_AHEAD);
+        long wait;
+        for (;;) {
+            long nanos = nanos();
+            long now = nanos << FRACTION_BITS;
+            long current = arrival.get();
+            long next = start(current, now, nanos) + increment;
+            wait = (next - now - limit) >> FRACTION_BITS;
+            if (wait > maxWait) {
+                return false;
+            }
+            if (arrival.compareAndSet(current, next)) {
+                noteCall(nanos);
+                break;
+            }
+        }
+        if (wait > 0) {
+            long deadline = clock.nanoTime() + wait;
+            long remaining;
+            while ((remaining = deadline - clock.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("Interrupted while waiting for permits");
+                }
+            }
+        }
+        return true;
+    }
+
+    private long increment(int permits) {
+        if (permits < 1 || permits > burst) {
+            throw new IllegalArgumentException("permits must be between 1 and " + burst);
+        }
+        return interval * permits;
+    }
+
+    // Number of permits that could be taken right now
+    public int availablePermits() {
+        long nanos = nanos();
+        long now = nanos << FRACTION_BITS;
+        long ahead = start(arrival.get(), now, nanos) - now;
+        return (int) ((limit - ahead) / interval);
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+}
@@ -0,0 +1,149 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Rate limiter test
+ */
+class RateLimiterTest {
+
+    private static final long MILLISECOND = 1000L * 1000;
+
+    @Test
+    void testBurstThenRate() {
+        var clock = new ManualNanoClock();
+        //One permit every 10ms, up to 5 at once
+        var rateLimiter = new RateLimiter(100, 5, clock);
+        assertEquals(5, rateLimiter.availablePermits());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimiter.tryAcquire());
+        }
+        assertFalse(rateLimiter.tryAcquire());
+        clock.advance(9 * MILLISECOND);
+        assertFalse(rateLimiter.tryAcquire());
+        clock.advance(MILLISECOND);
+        assertTrue(rateLimiter.tryAcquire());
+        assertFalse(rateLimiter.tryAcquire());
+        //A quiet period refills the bucket, but never beyond the burst
+        clock.advance(1000 * MILLISECOND);
+        assertEquals(5, rateLimiter.availablePermits());
+        assertTrue(rateLimiter.tryAcquire(5));
+        assertFalse(rateLimiter.tryAcquire());
+        assertThrows(IllegalArgumentException.class, () -> rateLimiter.tryAcquire(6));
+    }
+
+    @Test
+    void testHighRatesStayAccurate() {
+        var clock = new ManualNanoClock();
+        //30 million permits per second is one every 33.3ns, rounding to 33ns would be 1% off
+        var rateLimiter = new RateLimiter(30_000_000, 10, clock);
+        int permits = 0;
+        for (int i = 0; i < 1_000_000; i++) {
+            clock.advance(10);
+            if (rateLimiter.tryAcquire()) {
+                permits++;
+            }
+        }
+        //10ms worth of permits, plus the initial burst
+        assertEquals(300_000, permits, 30);
+    }
+
+    @Test
+    void testLongQuietPeriodsRefillTheBucket() {
+        var clock = new ManualNanoClock();
+        var rateLimiter = new RateLimiter(100, 5, clock);
+        //Quiet periods past the 104 days after which the scaled time difference wraps around,
+        //including one where the wrapped difference looks like a wait of a few weeks
+        for (long days : new long[] {30, 105, 180, 400}) {
+            assertTrue(rateLimiter.tryAcquire(5));
+            assertFalse(rateLimiter.tryAcquire());
+            clock.advanceSeconds(TimeUnit.DAYS.toSeconds(days));
+            assertEquals(5, rateLimiter.availablePermits(), "after " + days + " days");
+            assertTrue(rateLimiter.tryAcquire(5), "after " + days + " days");
+            assertFalse(rateLimiter.tryAcquire());
+            //The limiter keeps counting from the new time
+            clock.advance(10 * MILLISECOND);
+            assertTrue(rateLimiter.tryAcquire());
+            clock.advance(50 * MILLISECOND);
+        }
+    }
+
+    @Test
+    void testBoundedWait() throws InterruptedException {
+        var rateLimiter = new RateLimiter(100, 1);
+        assertTrue(rateLimiter.tryAcquire());
+        //The next permit is about 10ms away
+        assertFalse(rateLimiter.tryAcquire(1, MILLISECOND));
+        long start = System.nanoTime();
+        assertTrue(rateLimiter.tryAcquire(1, 1000 * MILLISECOND));
+        assertTrue(System.nanoTime() - start >= 5 * MILLISECOND);
+        //That permit was reserved, the one after is another 10ms away
+        assertFalse(rateLimiter.tryAcquire());
+    }
+
+    @Test
+    void testConcurrentCallersNeverExceedBurst() throws Exception {
+        var clock = new ManualNanoClock();
+        var rateLimiter = new RateLimiter(1000, 1000, clock);
+        var granted = new AtomicInteger();
+        int threads = 8;
+        var start = new CyclicBarrier(threads);
+        var executor = Executors.newFixedThreadPool(threads);
+        var callers = new ArrayList<CompletableFuture<Void>>();
+        for (int t = 0; t < threads; t++) {
+            callers.add(CompletableFuture.runAsync(() -> {
+                try {
+                    start.await();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                for (int i = 0; i < 10_000; i++) {
+                    if (rateLimiter.tryAcquire()) {
+                        granted.incrementAndGet();
+                    }
+                }
+            }, executor));
+        }
+        try {
+            for (var caller : callers) {
+                caller.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        //Time stood still, exactly the burst was handed out
+        assertEquals(1000, granted.get());
+    }
+
+    @Test
+    void testRejectionsAreIgnoredByCircuitBreaker() throws Exception {
+        var clock = new ManualNanoClock();
+        var service = new RateLimitedService<String>(() -> "Response",
+                new RateLimiter(1, 2, clock));
+        var circuitBreaker = new DefaultCircuitBreaker<String>(service, 0, 1,
+                1000 * MILLISECOND, clock);
+        assertEquals("Response", circuitBreaker.attemptRequest());
+        assertEquals("Response", circuitBreaker.attemptRequest());
+        var first = assertThrows(RateLimitExceededException.class, circuitBreaker::attemptRequest);
+        assertSame(first, assertThrows(RateLimitExceededException.class,
+                circuitBreaker::attemptRequest));
+        assertEquals(0, first.getStackTrace().length);
+        assertEquals(2, service.getRejectedCalls());
+        //Turned away before reaching the service, so the circuit stays CLOSED
+        assertEquals("CLOSED", circuitBreaker.getState());
+        assertEquals(2, circuitBreaker.getMetrics().getIgnoredCalls());
+        assertEquals(0, circuitBreaker.getMetrics().getFailedCalls());
+    }
+}
@@ -0,0 +1,44 @@
+package main;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors for running blocking remote calls off the caller thread.
+ */
+final class RemoteCallExecutors {
+
+    private static final ExecutorService DEFAULT = createDefault();
+
+    private RemoteCallExecutors() {
+    }
+
+    /**
+     * Executor used when the caller does not supply one. On a JVM with virtual threads, every call
+     * gets its own virtual thread, so thousands of blocked calls don't need thousands of platform
+     * threads. Older JVMs fall back to a cached pool of daemon threads.
+     *
+     * @return the shared default executor
+     */
+    static ExecutorService defaultExecutor() {
+        return DEFAULT;
+    }
+
+    private static ExecutorService createDefault() {
+        try {
+            // Looked up reflectively so that the code still runs on JVMs without virtual threads
+            return (ExecutorService) MethodHandles.publicLookup()
+                    .findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                            MethodType.methodType(ExecutorService.class))
+                    .invoke();
+        } catch (Throwable unsupported) {
+            return Executors.newCachedThreadPool(task -> {
+                var thread = new Thread(task, "remote-call");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -1,5 +1,7 @@
-public interface RemoteService {
+package main;
+
+public interface RemoteService<T> {
 
     //Fetch response from remote service.
-    String call() throws RemoteServiceException;
+    T call() throws RemoteServiceException;
 }
\ No newline at end of file
@@ -1,6 +1,17 @@
+package main;
+
 public class RemoteServiceException extends Exception {
 
     public RemoteServiceException(String message) {
         super(message);
     }
+
+    public RemoteServiceException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    protected RemoteServiceException(String message, Throwable cause, boolean enableSuppression,
+                                     boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,206 @@
+package main;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded cache of the last good responses of a remote service, by request key. A response is
+ * fresh for ttl after it was stored, and may be served stale for another maxStale, e.g. while the
+ * circuit is OPEN. After that it is dropped.
+ *
+ * <p>Size is bounded in the style of W-TinyLFU: new keys enter a small window, and a key leaving
+ * the window only makes it into the main part of the cache if it was requested more often than the
+ * oldest key there, as estimated by a {@link FrequencySketch}. A burst of one-off requests thus
+ * cannot flush out the popular responses. Both parts are kept in insertion order.
+ *
+ * <p>Lookups are lock-free, only adding a new key takes a lock.
+ *
+ * @param <K> type of the request keys
+ * @param <T> type of the responses
+ */
+public class ResponseCache<K, T> {
+
+    private final ConcurrentHashMap<K, Node<K, T>> nodes = new ConcurrentHashMap<>();
+    private final FrequencySketch sketch;
+    private final int maximumSize;
+    private final int windowSize;
+    private final long ttl;
+    private final long maxStale;
+    private final NanoClock clock;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    // Guarded by evictionLock. Nodes that were removed from the map stay in the queues until they
+    // reach the head, or until the queues are compacted
+    private final ArrayDeque<Node<K, T>> window = new ArrayDeque<>();
+    private final ArrayDeque<Node<K, T>> main = new ArrayDeque<>();
+
+    /**
+     * Constructor to create a cache.
+     *
+     * @param maximumSize number of responses kept
+     * @param ttl         time, in nanoseconds, a response is fresh for
+     * @param maxStale    time, in nanoseconds, a response may be served after it went stale
+     * @param clock       source of time for the age of the responses
+     */
+    public ResponseCache(int maximumSize, long ttl, long maxStale, NanoClock clock) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        if (ttl < 0 || maxStale < 0) {
+            throw new IllegalArgumentException("ttl and maxStale must not be negative");
+        }
+        this.maximumSize = maximumSize;
+        // 1% of the cache, as in W-TinyLFU, enough to let a new key prove its popularity
+        this.windowSize = Math.max(1, maximumSize / 100);
+        this.ttl = ttl;
+        this.maxStale = maxStale;
+        this.clock = clock;
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * Fresh response for the key.
+     *
+     * @param key request key
+     * @return the response, or null if there is none or it is stale
+     */
+    public T getIfFresh(K key) {
+        CachedResponse<T> response = lookup(key);
+        return response != null && isFresh(response) ? response.value : null;
+    }
+
+    /**
+     * Fresh or stale response for the key.
+     *
+     * @param key request key
+     * @return the response, or null if there is none or it is too old to be served
+     */
+    public T getIfPresent(K key) {
+        CachedResponse<T> response = lookup(key);
+        return response != null ? response.value : null;
+    }
+
+    // Look up a response and count the request, null if there is none that may still be served
+    CachedResponse<T> lookup(K key) {
+        sketch.increment(key);
+        Node<K, T> node = nodes.get(key);
+        if (node == null) {
+            return null;
+        }
+        CachedResponse<T> response = node.response;
+        if (clock.nanoTime() - response.storedAt > ttl + maxStale) {
+            nodes.remove(key, node);
+            return null;
+        }
+        return response;
+    }
+
+    boolean isFresh(CachedResponse<T> response) {
+        return clock.nanoTime() - response.storedAt <= ttl;
+    }
+
+    /**
+     * Store a good response. It may not be kept if the cache is full of more popular responses.
+     *
+     * @param key   request key
+     * @param value the response, null values are not cached
+     */
+    public void put(K key, T value) {
+        if (value == null) {
+            return;
+        }
+        var response = new CachedResponse<>(value, clock.nanoTime());
+        Node<K, T> node = nodes.get(key);
+        if (node != null) {
+            // Already tracked by the queues, only the response changes
+            node.response = response;
+            return;
+        }
+        evictionLock.lock();
+        try {
+            node = nodes.get(key);
+            if (node != null) {
+                node.response = response;
+                return;
+            }
+            node = new Node<>(key, response);
+            nodes.put(key, node);
+            window.addLast(node);
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // Drop the response for the key
+    public void invalidate(K key) {
+        nodes.remove(key);
+    }
+
+    // Number of responses currently held, including stale ones
+    public int size() {
+        return nodes.size();
+    }
+
+    // Must hold evictionLock
+    private void evict() {
+        while (window.size() > windowSize) {
+            Node<K, T> candidate = window.pollFirst();
+            if (!isLive(candidate)) {
+                continue;
+            }
+            Node<K, T> victim = oldestLive(main);
+            if (nodes.size() <= maximumSize || victim == null) {
+                main.addLast(candidate);
+                continue;
+            }
+            long now = clock.nanoTime();
+            if (now - victim.response.storedAt > ttl + maxStale
+                    || sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                main.pollFirst();
+                nodes.remove(victim.key, victim);
+                main.addLast(candidate);
+            } else {
+                // Not popular enough to push out anything, the candidate goes instead
+                nodes.remove(candidate.key, candidate);
+            }
+        }
+        // Keys removed by expiry or invalidation leave dead nodes behind, drop them once they
+        // outnumber the live ones
+        if (window.size() + main.size() > 2 * maximumSize) {
+            main.removeIf(node -> !isLive(node));
+        }
+    }
+
+    private Node<K, T> oldestLive(ArrayDeque<Node<K, T>> queue) {
+        Node<K, T> node;
+        while ((node = queue.peekFirst()) != null && !isLive(node)) {
+            queue.pollFirst();
+        }
+        return node;
+    }
+
+    private boolean isLive(Node<K, T> node) {
+        return nodes.get(node.key) == node;
+    }
+
+    static final class CachedResponse<T> {
+        final T value;
+        final long storedAt;
+
+        CachedResponse(T value, long storedAt) {
+            this.value = value;
+            this.storedAt = storedAt;
+        }
+    }
+
+    private static final class Node<K, T> {
+        final K key;
+        volatile CachedResponse<T> response;
+
+        Node(K key, CachedResponse<T> response) {
+            this.key = key;
+            this.response = response;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Response cache and caching circuit breaker test
+ */
+class ResponseCacheTest {
+
+    private final ManualNanoClock clock = new ManualNanoClock();
+
+    @Test
+    void testFreshStaleAndExpired() {
+        var cache = new ResponseCache<String, String>(10, 100, 1000, clock);
+        cache.put("a", "Response");
+        assertEquals("Response", cache.getIfFresh("a"));
+        clock.advance(101);
+        assertNull(cache.getIfFresh("a"));
+        assertEquals("Response", cache.getIfPresent("a"));
+        clock.advance(1000);
+        assertNull(cache.getIfPresent("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testPopularResponsesSurviveAScan() {
+        var cache = new ResponseCache<Integer, String>(100, 1000, 1000, clock);
+        for (int hot = 0; hot < 50; hot++) {
+            for (int i = 0; i < 5; i++) {
+                cache.getIfFresh(hot);
+            }
+            cache.put(hot, "Hot " + hot);
+        }
+        //A burst of requests that are never repeated, while the popular ones keep coming
+        for (int cold = 1000; cold < 11_000; cold++) {
+            cache.getIfFresh(cold);
+            cache.put(cold, "Cold " + cold);
+            if (cold % 5 == 0) {
+                cache.getIfFresh(cold / 5 % 50);
+            }
+        }
+        assertTrue(cache.size() <= 100, "size " + cache.size());
+        int hits = 0;
+        for (int hot = 0; hot < 50; hot++) {
+            if (cache.getIfPresent(hot) != null) {
+                hits++;
+            }
+        }
+        //A plain LRU would have none of them left, the sketch may lose the odd one to collisions
+        assertTrue(hits >= 45, "hits " + hits);
+    }
+
+    @Test
+    void testFreshResponseSkipsTheService() throws Exception {
+        var calls = new AtomicInteger();
+        var circuitBreaker = new DefaultCircuitBreaker<String>(null, 1000, 1, 500, clock);
+        var caching = new CachingCircuitBreaker<>(circuitBreaker,
+                new ResponseCache<String, String>(10, 100, 10_000, clock), Runnable::run);
+        assertEquals("Response 1", caching.execute("a", () -> "Response " + calls.incrementAndGet()));
+        assertEquals("Response 1", caching.execute("a", () -> "Response " + calls.incrementAndGet()));
+        clock.advance(101);
+        assertEquals("Response 2", caching.execute("a", () -> "Response " + calls.incrementAndGet()));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void testStaleResponseHidesOutage() throws Exception {
+        var circuitBreaker = new DefaultCircuitBreaker<String>(null, 1000, 1, 500, clock);
+        var refreshes = new ArrayList<Runnable>();
+        var caching = new CachingCircuitBreaker<>(circuitBreaker,
+                new ResponseCache<String, String>(10, 100, 10_000, clock), refreshes::add);
+        caching.execute("a", () -> "Good");
+        clock.advance(101);
+        //The call fails, the stale response is served instead
+        assertEquals("Good", caching.execute("a", () -> {
+            throw new RemoteServiceException("Down");
+        }));
+        assertEquals("OPEN", circuitBreaker.getState());
+        //While OPEN the service is not called
+        assertEquals("Good", caching.execute("a", () -> {
+            throw new IllegalStateException("Must not be called");
+        }));
+        //Without a cached response the caller sees the circuit breaker
+        assertThrows(CallNotPermittedException.class, () -> caching.execute("b", () -> "New"));
+
+        //While HALF_OPEN callers get the stale response, a single background call revalidates it
+        clock.advance(501);
+        assertEquals("HALF_OPEN", circuitBreaker.getState());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("Good", caching.execute("a", () -> "Better"));
+        }
+        assertEquals(1, refreshes.size());
+        refreshes.get(0).run();
+        assertEquals("CLOSED", circuitBreaker.getState());
+        assertEquals("Better", caching.execute("a", () -> "Even better"));
+    }
+}
@@ -0,0 +1,106 @@
+package main;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bulkhead that runs calls on the caller thread and caps how many of them run at the same time
+ * with a semaphore. A call that finds no free permit waits at most maxWaitMillis for one, and is
+ * turned away after that.
+ *
+ * @param <T> type of the responses of the protected service
+ */
+public class SemaphoreBulkhead<T> implements RemoteService<T>, Bulkhead {
+
+    private final RemoteService<T> service;
+    private final int maxConcurrentCalls;
+    private final long maxWaitMillis;
+    private final Semaphore permits;
+    private final NanoClock clock;
+    private final LongAdder rejectedCalls = new LongAdder();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    // Preallocated so that turning callers away does not create garbage
+    private final BulkheadFullException bulkheadFull;
+
+    /**
+     * Constructor to create a bulkhead that turns calls away as soon as it is full.
+     *
+     * @param serviceToCall      the service protected by the bulkhead
+     * @param maxConcurrentCalls maximum number of calls running at the same time
+     */
+    public SemaphoreBulkhead(RemoteService<T> serviceToCall, int maxConcurrentCalls) {
+        this(serviceToCall, maxConcurrentCalls, 0, NanoClock.SYSTEM);
+    }
+
+    /**
+     * Constructor to create a bulkhead where calls wait for a free permit.
+     *
+     * @param serviceToCall      the service protected by the bulkhead
+     * @param maxConcurrentCalls maximum number of calls running at the same time
+     * @param maxWaitMillis      time, in milliseconds, a call waits for a free permit. Zero or less
+     *                           to turn it away straight away
+     * @param clock              source of time for measuring the wait
+     */
+    public SemaphoreBulkhead(RemoteService<T> serviceToCall, int maxConcurrentCalls,
+                             long maxWaitMillis, NanoClock clock) {
+        if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("maxConcurrentCalls must be positive");
+        }
+        this.service = serviceToCall;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxWaitMillis = maxWaitMillis;
+        this.permits = new Semaphore(maxConcurrentCalls);
+        this.clock = clock;
+        this.bulkheadFull = new BulkheadFullException(
+                "Bulkhead is full, " + maxConcurrentCalls + " calls are running");
+    }
+
+    @Override
+    public T call() throws RemoteServiceException {
+        long start = clock.nanoTime();
+        if (!acquire()) {
+            rejectedCalls.increment();
+            throw bulkheadFull;
+        }
+        queueWait.record(clock.nanoTime() - start);
+        try {
+            return service.call();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean acquire() throws RemoteServiceException {
+        if (maxWaitMillis <= 0) {
+            return permits.tryAcquire();
+        }
+        try {
+            return permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // Most likely the timeout of the circuit breaker, keep the flag for it
+            Thread.currentThread().interrupt();
+            throw new RemoteServiceException("Interrupted while waiting for the bulkhead", e);
+        }
+    }
+
+    @Override
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    @Override
+    public int getConcurrentCalls() {
+        return maxConcurrentCalls - permits.availablePermits();
+    }
+
+    @Override
+    public long getRejectedCalls() {
+        return rejectedCalls.sum();
+    }
+
+    @Override
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+}
@@ -0,0 +1,305 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Remote service that follows a schedule of phases, for load tests and chaos tests of circuit
+ * breaker settings. Each phase lasts for a while and decides how calls behave during it:
+ * <ul>
+ *   <li>healthy: calls take the base latency and succeed,</li>
+ *   <li>errors: calls take the base latency and a share of them fails,</li>
+ *   <li>brownout: calls take a multiple of the base latency, and a share of them fails,</li>
+ *   <li>hang: calls block until the caller gives up, or for a fixed time, and then fail,</li>
+ *   <li>down: calls fail at once.</li>
+ * </ul>
+ * The schedule starts when the service is built or restarted. After the last phase it starts over,
+ * or the last phase goes on for ever.
+ *
+ * <pre>
+ * SimulatedRemoteService.builder("ok")
+ *         .latency(LatencyDistribution.logNormal(5 * MILLIS, 50 * MILLIS))
+ *         .healthy(10 * SECONDS)
+ *         .brownout(5 * SECONDS, 10, 0.2)
+ *         .down(5 * SECONDS)
+ *         .healthy(10 * SECONDS)
+ *         .build();
+ * </pre>
+ *
+ * <p>Latency is simulated by parking the calling thread on the system clock, whatever the clock of
+ * the schedule. An interrupted call fails at once, as a timed out call to a real service would.
+ *
+ * @param <T> type of the responses
+ */
+public class SimulatedRemoteService<T> implements RemoteService<T> {
+
+    private final T response;
+    private final LatencyDistribution latency;
+    private final Phase[] phases;
+    // End of each phase, relative to the start of the schedule
+    private final long[] phaseEnds;
+    private final boolean repeat;
+    private final NanoClock clock;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failedCalls = new LongAdder();
+    private volatile long startTime;
+
+    private SimulatedRemoteService(Builder<T> builder) {
+        this.response = builder.response;
+        this.latency = builder.latency;
+        this.phases = builder.phases.toArray(new Phase[0]);
+        this.phaseEnds = new long[phases.length];
+        long end = 0;
+        for (int i = 0; i < phases.length; i++) {
+            // A phase of Long.MAX_VALUE lasts for ever, the ends must not overflow
+            long duration = phases[i].durationNanos;
+            end = end > Long.MAX_VALUE - duration ? Long.MAX_VALUE : end + duration;
+            phaseEnds[i] = end;
+        }
+        this.repeat = builder.repeat;
+        this.clock = builder.clock;
+        this.startTime = clock.nanoTime();
+    }
+
+    /**
+     * Builder of a service that responds with the given response when a call succeeds.
+     *
+     * @param response response of the successful calls
+     * @param <T>      type of the responses
+     * @return the builder
+     */
+    public static <T> Builder<T> builder(T response) {
+        return new Builder<>(response);
+    }
+
+    // Start the schedule over from the first phase, now
+    public void restart() {
+        startTime = clock.nanoTime();
+    }
+
+    @Override
+    public T call() throws RemoteServiceException {
+        calls.increment();
+        Phase phase = phases[phaseIndex(clock.nanoTime() - startTime)];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (phase.hangNanos > 0) {
+            pause(phase.hangNanos);
+            throw failure("Simulated service hung");
+        }
+        if (phase.latencyFactor > 0) {
+            pause((long) (latency.sampleNanos(random) * phase.latencyFactor));
+        }
+        if (phase.errorRate > 0 && random.nextDouble() < phase.errorRate) {
+            throw failure("Simulated service failed");
+        }
+        return response;
+    }
+
+    private int phaseIndex(long elapsed) {
+        long total = phaseEnds[phaseEnds.length - 1];
+        if (elapsed >= total) {
+            if (!repeat) {
+                return phases.length - 1;
+            }
+            elapsed %= total;
+        }
+        int i = 0;
+        while (i < phases.length - 1 && elapsed >= phaseEnds[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    private void pause(long nanos) throws RemoteServiceException {
+        long deadline = System.nanoTime() + nanos;
+        long remaining = nanos;
+        while (remaining > 0) {
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.currentThread().isInterrupted()) {
+                throw failure("Simulated service call interrupted");
+            }
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    private RemoteServiceException failure(String message) {
+        failedCalls.increment();
+        return new RemoteServiceException(message);
+    }
+
+    // Name of the phase the schedule is in now
+    public String getPhase() {
+        return phases[phaseIndex(clock.nanoTime() - startTime)].name;
+    }
+
+    /**
+     * Start of the first phase that is not healthy.
+     *
+     * @return time since the start of the schedule, in nanoseconds, or -1 without any such phase
+     */
+    public long getFaultStart() {
+        for (int i = 0; i < phases.length; i++) {
+            if (!phases[i].isHealthy()) {
+                return i == 0 ? 0 : phaseEnds[i - 1];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * End of the last phase that is not healthy, in the first run through the schedule.
+     *
+     * @return time since the start of the schedule, in nanoseconds, -1 without any such phase, or
+     *         Long.MAX_VALUE if the service never recovers
+     */
+    public long getFaultEnd() {
+        for (int i = phases.length - 1; i >= 0; i--) {
+            if (!phases[i].isHealthy()) {
+                return i == phases.length - 1 && !repeat ? Long.MAX_VALUE : phaseEnds[i];
+            }
+        }
+        return -1;
+    }
+
+    // Number of calls made to the service
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    // Number of calls that failed, including hung and interrupted calls
+    public long getFailedCalls() {
+        return failedCalls.sum();
+    }
+
+    private static final class Phase {
+        final String name;
+        final long durationNanos;
+        final double latencyFactor;
+        final double errorRate;
+        final long hangNanos;
+
+        Phase(String name, long durationNanos, double latencyFactor, double errorRate,
+              long hangNanos) {
+            if (durationNanos <= 0) {
+                throw new IllegalArgumentException("durationNanos must be positive");
+            }
+            if (!(errorRate >= 0 && errorRate <= 1)) {
+                throw new IllegalArgumentException("errorRate must be in [0, 1]");
+            }
+            if (!(latencyFactor >= 0)) {
+                throw new IllegalArgumentException("slowdown must not be negative");
+            }
+            this.name = name;
+            this.durationNanos = durationNanos;
+            this.latencyFactor = latencyFactor;
+            this.errorRate = errorRate;
+            this.hangNanos = hangNanos;
+        }
+
+        boolean isHealthy() {
+            return errorRate == 0 && hangNanos == 0 && latencyFactor == 1;
+        }
+    }
+
+    /**
+     * Builder for {@link SimulatedRemoteService}. Phases run in the order they are added. Not
+     * thread-safe, the built service is.
+     *
+     * @param <T> type of the responses
+     */
+    public static final class Builder<T> {
+
+        private final T response;
+        private final List<Phase> phases = new ArrayList<>();
+        private LatencyDistribution latency = LatencyDistribution.fixed(0);
+        private boolean repeat;
+        private NanoClock clock = NanoClock.SYSTEM;
+
+        private Builder(T response) {
+            this.response = response;
+        }
+
+        /**
+         * Base latency of the calls, scaled during a brownout. No latency by default.
+         */
+        public Builder<T> latency(LatencyDistribution latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        /**
+         * Calls take the base latency and succeed, for durationNanos.
+         */
+        public Builder<T> healthy(long durationNanos) {
+            phases.add(new Phase("healthy", durationNanos, 1, 0, 0));
+            return this;
+        }
+
+        /**
+         * Calls take the base latency, and the given share of them fails, for durationNanos.
+         */
+        public Builder<T> errors(long durationNanos, double errorRate) {
+            phases.add(new Phase("errors", durationNanos, 1, errorRate, 0));
+            return this;
+        }
+
+        /**
+         * Calls take slowdown times the base latency, and the given share of them fails, for
+         * durationNanos.
+         */
+        public Builder<T> brownout(long durationNanos, double slowdown, double errorRate) {
+            phases.add(new Phase("brownout", durationNanos, slowdown, errorRate, 0));
+            return this;
+        }
+
+        /**
+         * Calls block for hangNanos, or until the caller interrupts them, and then fail, for
+         * durationNanos. Use Long.MAX_VALUE for calls that only return on a timeout.
+         */
+        public Builder<T> hang(long durationNanos, long hangNanos) {
+            if (hangNanos <= 0) {
+                throw new IllegalArgumentException("hangNanos must be positive");
+            }
+            phases.add(new Phase("hang", durationNanos, 0, 1, hangNanos));
+            return this;
+        }
+
+        /**
+         * Calls fail at once, for durationNanos.
+         */
+        public Builder<T> down(long durationNanos) {
+            phases.add(new Phase("down", durationNanos, 0, 1, 0));
+            return this;
+        }
+
+        /**
+         * Start the schedule over after the last phase, instead of staying in it.
+         */
+        public Builder<T> repeat(boolean repeat) {
+            this.repeat = repeat;
+            return this;
+        }
+
+        /**
+         * Source of time for the schedule.
+         */
+        public Builder<T> clock(NanoClock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public SimulatedRemoteService<T> build() {
+            if (latency == null || clock == null) {
+                throw new IllegalArgumentException("latency and clock are required");
+            }
+            if (phases.isEmpty()) {
+                // Healthy for ever
+                healthy(Long.MAX_VALUE);
+            }
+            return new SimulatedRemoteService<>(this);
+        }
+    }
+}
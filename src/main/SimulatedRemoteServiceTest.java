@@ -0,0 +1,141 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Simulated remote service test
+ */
+class SimulatedRemoteServiceTest {
+
+    private static final long MILLISECOND = 1000L * 1000;
+
+    @Test
+    void testScheduleOfPhases() throws Exception {
+        var clock = new ManualNanoClock();
+        var service = SimulatedRemoteService.builder("ok")
+                .healthy(100 * MILLISECOND)
+                .down(50 * MILLISECOND)
+                .errors(50 * MILLISECOND, 1)
+                .healthy(100 * MILLISECOND)
+                .clock(clock)
+                .build();
+        assertEquals("healthy", service.getPhase());
+        assertEquals("ok", service.call());
+        clock.advance(100 * MILLISECOND);
+        assertEquals("down", service.getPhase());
+        assertThrows(RemoteServiceException.class, service::call);
+        clock.advance(50 * MILLISECOND);
+        assertEquals("errors", service.getPhase());
+        assertThrows(RemoteServiceException.class, service::call);
+        clock.advance(50 * MILLISECOND);
+        assertEquals("ok", service.call());
+        //Without repeat the last phase goes on
+        clock.advance(1000 * MILLISECOND);
+        assertEquals("ok", service.call());
+        assertEquals(5, service.getCalls());
+        assertEquals(2, service.getFailedCalls());
+        assertEquals(100 * MILLISECOND, service.getFaultStart());
+        assertEquals(200 * MILLISECOND, service.getFaultEnd());
+        //Restarting starts over from the first phase
+        service.restart();
+        assertEquals("healthy", service.getPhase());
+    }
+
+    @Test
+    void testRepeatingSchedule() {
+        var clock = new ManualNanoClock();
+        var service = SimulatedRemoteService.builder("ok")
+                .healthy(100 * MILLISECOND)
+                .down(100 * MILLISECOND)
+                .repeat(true)
+                .clock(clock)
+                .build();
+        clock.advance(250 * MILLISECOND);
+        assertEquals("healthy", service.getPhase());
+        clock.advance(100 * MILLISECOND);
+        assertEquals("down", service.getPhase());
+    }
+
+    @Test
+    void testErrorRate() {
+        var service = SimulatedRemoteService.builder("ok")
+                .errors(Long.MAX_VALUE, 0.3)
+                .build();
+        for (int i = 0; i < 10_000; i++) {
+            try {
+                service.call();
+            } catch (RemoteServiceException ex) {
+                //Counted by the service
+            }
+        }
+        long failed = service.getFailedCalls();
+        assertTrue(failed > 2700 && failed < 3300, "failed " + failed);
+        assertEquals(Long.MAX_VALUE, service.getFaultEnd());
+    }
+
+    @Test
+    void testBrownoutSlowsDownCalls() throws Exception {
+        var service = SimulatedRemoteService.builder("ok")
+                .latency(LatencyDistribution.fixed(MILLISECOND))
+                .healthy(200 * MILLISECOND)
+                .brownout(Long.MAX_VALUE, 20, 0)
+                .build();
+        long start = System.nanoTime();
+        service.call();
+        assertTrue(System.nanoTime() - start < 20 * MILLISECOND);
+        Thread.sleep(200);
+        assertEquals("brownout", service.getPhase());
+        start = System.nanoTime();
+        assertEquals("ok", service.call());
+        assertTrue(System.nanoTime() - start >= 20 * MILLISECOND);
+    }
+
+    @Test
+    void testHungCallEndsWhenInterrupted() throws Exception {
+        var service = SimulatedRemoteService.builder("ok")
+                .hang(Long.MAX_VALUE, Long.MAX_VALUE)
+                .build();
+        var caller = Thread.currentThread();
+        var interrupter = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            caller.interrupt();
+        });
+        interrupter.start();
+        long start = System.nanoTime();
+        assertThrows(RemoteServiceException.class, service::call);
+        assertTrue(System.nanoTime() - start >= 50 * MILLISECOND);
+        //Clear the flag for the next test
+        assertTrue(Thread.interrupted());
+        interrupter.join();
+    }
+
+    @Test
+    void testLatencyDistributions() {
+        var random = ThreadLocalRandom.current();
+        assertEquals(MILLISECOND, LatencyDistribution.fixed(MILLISECOND).sampleNanos(random));
+        var histogram = new LatencyHistogram();
+        var logNormal = LatencyDistribution.logNormal(MILLISECOND, 10 * MILLISECOND);
+        var uniform = LatencyDistribution.uniform(MILLISECOND, 2 * MILLISECOND);
+        for (int i = 0; i < 100_000; i++) {
+            histogram.record(logNormal.sampleNanos(random));
+            long sample = uniform.sampleNanos(random);
+            assertTrue(sample >= MILLISECOND && sample <= 2 * MILLISECOND);
+        }
+        //Within the resolution of the histogram and the noise of the sample
+        long median = histogram.percentile(50);
+        long p99 = histogram.percentile(99);
+        assertTrue(median > 0.9 * MILLISECOND && median < 1.1 * MILLISECOND, "p50 " + median);
+        assertTrue(p99 > 8.5 * MILLISECOND && p99 < 11.5 * MILLISECOND, "p99 " + p99);
+        assertEquals(3 * MILLISECOND,
+                LatencyDistribution.fixed(MILLISECOND).scaled(3).sampleNanos(random));
+    }
+}
@@ -0,0 +1,156 @@
+package main;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent requests. The first caller of a key makes the call, everybody
+ * who asks for the same key while it is in flight waits for that call and gets its result or its
+ * failure. Put in front of a circuit breaker, a burst of identical requests becomes a single
+ * remote call and a single outcome for the breaker.
+ *
+ * <p>Only calls that overlap in time are shared, nothing is cached once the call finished.
+ * Waiting callers get the very same exception instance as the caller that made the call. That
+ * instance is seen by many threads at once and must be treated as immutable: callers must not add
+ * suppressed exceptions to it, set its cause or its stack trace.
+ *
+ * <p>A waiting caller gives up after maxWaitMillis, e.g. the timeout of the circuit breaker, even
+ * if the call it waits for has no timeout of its own. The call goes on for the others.
+ *
+ * @param <K> type of the request keys
+ * @param <T> type of the responses
+ */
+public class SingleFlight<K, T> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<T>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder sharedCalls = new LongAdder();
+
+    /**
+     * Make the call, or wait as long as it takes for the identical call already in flight.
+     *
+     * @param key      request key, equal keys share a call
+     * @param callable the call, e.g. circuitBreaker::attemptRequest
+     * @return the response of the shared call
+     * @throws Exception the failure of the shared call, or InterruptedException if interrupted
+     *                   while waiting for it
+     */
+    public T execute(K key, Callable<? extends T> callable) throws Exception {
+        return execute(key, callable, 0);
+    }
+
+    /**
+     * Make the call, or wait for the identical call already in flight.
+     *
+     * @param key           request key, equal keys share a call
+     * @param callable      the call, e.g. circuitBreaker::attemptRequest
+     * @param maxWaitMillis time, in milliseconds, to wait for a call made by somebody else, e.g.
+     *                      circuitBreaker.getTimeout(). Zero or less to wait as long as it takes
+     * @return the response of the shared call
+     * @throws CallTimeoutException if the call made by somebody else took longer than maxWaitMillis
+     * @throws Exception            the failure of the shared call, or InterruptedException if
+     *                              interrupted while waiting for it
+     */
+    public T execute(K key, Callable<? extends T> callable, long maxWaitMillis) throws Exception {
+        var call = new CompletableFuture<T>();
+        CompletableFuture<T> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            sharedCalls.increment();
+            return await(existing, maxWaitMillis);
+        }
+        try {
+            T response = callable.call();
+            // Removed before completing, callers arriving from now on make a new call
+            inFlight.remove(key, call);
+            call.complete(response);
+            return response;
+        } catch (Exception | Error ex) {
+            inFlight.remove(key, call);
+            call.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> call, long maxWaitMillis) throws Exception {
+        try {
+            return maxWaitMillis > 0 ? call.get(maxWaitMillis, TimeUnit.MILLISECONDS) : call.get();
+        } catch (TimeoutException ex) {
+            throw new CallTimeoutException(maxWaitMillis);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * Start the call, or join the identical call already in flight, without blocking. Joining
+     * callers wait as long as the call takes.
+     *
+     * @param key  request key, equal keys share a call
+     * @param call starts the call, e.g. circuitBreaker::attemptRequestAsync
+     * @return future of the response of the shared call, each caller gets its own copy
+     */
+    public CompletableFuture<T> executeAsync(K key, Supplier<? extends CompletionStage<T>> call) {
+        return executeAsync(key, call, 0);
+    }
+
+    /**
+     * Start the call, or join the identical call already in flight, without blocking.
+     *
+     * @param key           request key, equal keys share a call
+     * @param call          starts the call, e.g. circuitBreaker::attemptRequestAsync
+     * @param maxWaitMillis time, in milliseconds, to wait for a call started by somebody else,
+     *                      after which the copy fails with a CallTimeoutException. Zero or less
+     *                      to wait as long as it takes
+     * @return future of the response of the shared call, each caller gets its own copy
+     */
+    public CompletableFuture<T> executeAsync(K key, Supplier<? extends CompletionStage<T>> call,
+                                             long maxWaitMillis) {
+        var promise = new CompletableFuture<T>();
+        CompletableFuture<T> existing = inFlight.putIfAbsent(key, promise);
+        if (existing != null) {
+            sharedCalls.increment();
+            if (maxWaitMillis <= 0) {
+                return existing.copy();
+            }
+            return existing.copy().orTimeout(maxWaitMillis, TimeUnit.MILLISECONDS)
+                    .exceptionallyCompose(error -> CompletableFuture.failedFuture(
+                            error instanceof TimeoutException
+                                    ? new CallTimeoutException(maxWaitMillis) : error));
+        }
+        try {
+            call.get().whenComplete((response, error) -> {
+                inFlight.remove(key, promise);
+                if (error != null) {
+                    promise.completeExceptionally(error);
+                } else {
+                    promise.complete(response);
+                }
+            });
+        } catch (RuntimeException ex) {
+            inFlight.remove(key, promise);
+            promise.completeExceptionally(new CompletionException(ex));
+        }
+        return promise.copy();
+    }
+
+    // Number of calls currently in flight
+    public int inFlightCalls() {
+        return inFlight.size();
+    }
+
+    // Number of requests that were served by a call made for somebody else
+    public long sharedCalls() {
+        return sharedCalls.sum();
+    }
+}
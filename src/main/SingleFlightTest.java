@@ -0,0 +1,193 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Single flight test
+ */
+class SingleFlightTest {
+
+    private static final int CALLERS = 16;
+
+    @Test
+    void testConcurrentCallsAreShared() throws Exception {
+        var singleFlight = new SingleFlight<String, String>();
+        var calls = new AtomicInteger();
+        var release = new CountDownLatch(1);
+        var circuitBreaker = new DefaultCircuitBreaker<String>(() -> {
+            calls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RemoteServiceException("Interrupted", e);
+            }
+            return "Response";
+        }, 10_000, 1, 1000L * 1000 * 1000 * 1000);
+        var responses = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < CALLERS; i++) {
+            responses.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return singleFlight.execute("a", circuitBreaker::attemptRequest);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }));
+        }
+        awaitSharedCalls(singleFlight, CALLERS - 1);
+        release.countDown();
+        for (var response : responses) {
+            assertEquals("Response", response.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        //The breaker saw a single outcome
+        assertEquals(1, circuitBreaker.getMetrics().getSuccessfulCalls());
+        assertEquals(0, singleFlight.inFlightCalls());
+        //Nothing is cached, the next request makes a new call
+        assertEquals("Response", singleFlight.execute("a", circuitBreaker::attemptRequest));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void testFailureIsShared() throws Exception {
+        var singleFlight = new SingleFlight<String, String>();
+        var failure = new RemoteServiceException("Down");
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var leader = CompletableFuture.supplyAsync(() -> {
+            try {
+                return singleFlight.execute("a", () -> {
+                    started.countDown();
+                    release.await();
+                    throw failure;
+                });
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        var follower = CompletableFuture.supplyAsync(() -> {
+            try {
+                return singleFlight.execute("a", () -> "Not called");
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+        awaitSharedCalls(singleFlight, 1);
+        release.countDown();
+        assertSame(failure, assertThrows(ExecutionException.class, leader::get).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, follower::get).getCause());
+    }
+
+    @Test
+    void testFollowersGiveUpAfterMaxWait() throws Exception {
+        var singleFlight = new SingleFlight<String, String>();
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        //The leader's call has no timeout of its own
+        var leader = CompletableFuture.supplyAsync(() -> {
+            try {
+                return singleFlight.execute("a", () -> {
+                    started.countDown();
+                    release.await();
+                    return "Response";
+                });
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertThrows(CallTimeoutException.class,
+                () -> singleFlight.execute("a", () -> "Not called", 50));
+        var asyncFollower = singleFlight.executeAsync("a",
+                () -> CompletableFuture.completedFuture("Not called"), 50);
+        var timedOut = assertThrows(ExecutionException.class,
+                () -> asyncFollower.get(5, TimeUnit.SECONDS));
+        assertTrue(timedOut.getCause() instanceof CallTimeoutException);
+        //The call goes on for everybody else
+        release.countDown();
+        assertEquals("Response", leader.get(5, TimeUnit.SECONDS));
+        assertEquals(2, singleFlight.sharedCalls());
+        assertEquals(0, singleFlight.inFlightCalls());
+    }
+
+    @Test
+    void testDifferentKeysAreNotShared() throws Exception {
+        var singleFlight = new SingleFlight<String, String>();
+        assertEquals("a", singleFlight.execute("a", () -> singleFlight.execute("b", () -> "a")));
+        assertEquals(0, singleFlight.sharedCalls());
+    }
+
+    @Test
+    void testAsyncCallsAreShared() {
+        var singleFlight = new SingleFlight<String, String>();
+        var pending = new CompletableFuture<String>();
+        var calls = new AtomicInteger();
+        var responses = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < CALLERS; i++) {
+            responses.add(singleFlight.executeAsync("a", () -> {
+                calls.incrementAndGet();
+                return pending;
+            }));
+        }
+        //A caller cancelling its copy does not affect the others
+        responses.get(1).cancel(false);
+        pending.complete("Response");
+        assertEquals(1, calls.get());
+        assertEquals(CALLERS - 1, singleFlight.sharedCalls());
+        assertEquals("Response", responses.get(0).join());
+        assertEquals("Response", responses.get(CALLERS - 1).join());
+        assertEquals(0, singleFlight.inFlightCalls());
+    }
+
+    @Test
+    void testMonitoringServiceCoalescesRequests() throws Exception {
+        var calls = new AtomicInteger();
+        var release = new CountDownLatch(1);
+        RemoteService<String> slowService = () -> {
+            calls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RemoteServiceException("Interrupted", e);
+            }
+            return "Delayed service is working";
+        };
+        var monitoringService = new MonitoringService(
+                new DefaultCircuitBreaker<String>(slowService, 10_000, 1, 1000L * 1000 * 1000), null);
+        var responses = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < CALLERS; i++) {
+            responses.add(CompletableFuture.supplyAsync(monitoringService::delayedServiceResponse));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (monitoringService.coalescedRequests() < CALLERS - 1) {
+            assertTrue(System.nanoTime() < deadline, "requests were not coalesced");
+            Thread.sleep(1);
+        }
+        release.countDown();
+        for (var response : responses) {
+            assertEquals("Delayed service is working", response.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+    }
+
+    private static void awaitSharedCalls(SingleFlight<?, ?> singleFlight, int calls)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (singleFlight.sharedCalls() < calls) {
+            assertTrue(System.nanoTime() < deadline, "calls were not shared");
+            Thread.sleep(1);
+        }
+    }
+}
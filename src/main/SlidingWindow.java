@@ -0,0 +1,54 @@
+package main;
+
+/**
+ * Statistics of the most recent calls, used to trip a circuit on failure rate. Recording an
+ * outcome is O(1), lock-free and does not allocate.
+ */
+public interface SlidingWindow {
+
+    // Record the outcome of a single call.
+    void record(boolean failure, boolean slow);
+
+    // Record the outcome of a single call that was not slow.
+    default void record(boolean failure) {
+        record(failure, false);
+    }
+
+    // Number of calls currently inside the window.
+    int totalCalls();
+
+    // Number of failed calls currently inside the window.
+    int failedCalls();
+
+    // Number of slow calls currently inside the window.
+    int slowCalls();
+
+    /**
+     * Failure rate of the calls in the window, computed from a single pass over the window.
+     *
+     * @param minimumCalls number of calls needed before a rate is reported
+     * @return failure rate in percent, or -1 if fewer than minimumCalls are in the window
+     */
+    float failureRate(int minimumCalls);
+
+    /**
+     * Slow call rate of the calls in the window, computed from a single pass over the window.
+     *
+     * @param minimumCalls number of calls needed before a rate is reported
+     * @return slow call rate in percent, or -1 if fewer than minimumCalls are in the window
+     */
+    float slowCallRate(int minimumCalls);
+
+    // Forget every recorded call.
+    void reset();
+
+    // Recorded calls in a compact form, e.g. to persist them. Null if the window cannot do that.
+    default long[] snapshot() {
+        return null;
+    }
+
+    // Restore the calls of a snapshot of an identically configured window, taken elapsedNanos ago.
+    // A snapshot of a differently configured window is ignored.
+    default void restore(long[] snapshot, long elapsedNanos) {
+    }
+}
@@ -0,0 +1,153 @@
+package main;
+
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Circuit breaker that opens when the failure rate, or the slow call rate, over a sliding window of
+ * recent calls crosses a threshold. Unlike {@link DefaultCircuitBreaker}, a single success does not
+ * hide a high rate of failures.
+ *
+ * @param <T> type of the responses of the protected service
+ */
+public class SlidingWindowCircuitBreaker<T> extends AbstractCircuitBreaker<T> {
+
+    private final SlidingWindow window;
+    private final int minimumCalls;
+    private final float failureRateThreshold;
+    private final float slowCallRateThreshold;
+
+    /**
+     * Constructor to create an instance of Circuit Breaker tripping on failure rate.
+     *
+     * @param window               Window of recent calls, either a {@link CountBasedSlidingWindow}
+     *                             or a {@link TimeBasedSlidingWindow}
+     * @param minimumCalls         Number of calls the window must hold before the failure rate is
+     *                             taken into account
+     * @param failureRateThreshold Failure rate, in percent, at or above which the circuit opens
+     * @param retryTimePeriod      Time, in nanoseconds, period after which a new request is made to
+     *                             remote service for status check.
+     */
+    SlidingWindowCircuitBreaker(RemoteService<T> serviceToCall, long timeout, SlidingWindow window,
+                                int minimumCalls, float failureRateThreshold, long retryTimePeriod) {
+        this(serviceToCall, timeout, window, minimumCalls, failureRateThreshold, retryTimePeriod,
+                1, 1.0);
+    }
+
+    /**
+     * Constructor to create an instance of Circuit Breaker tripping on failure rate, with a limited
+     * number of trial calls in HALF_OPEN state.
+     *
+     * @param permittedCallsInHalfOpen Number of trial requests let through to the remote service
+     *                                 while HALF_OPEN
+     * @param halfOpenSuccessRatio     Fraction, in (0, 1], of the trial requests that must succeed
+     *                                 for the circuit to close
+     */
+    SlidingWindowCircuitBreaker(RemoteService<T> serviceToCall, long timeout, SlidingWindow window,
+                                int minimumCalls, float failureRateThreshold, long retryTimePeriod,
+                                int permittedCallsInHalfOpen, double halfOpenSuccessRatio) {
+        this(serviceToCall, timeout, window, minimumCalls, failureRateThreshold, Long.MAX_VALUE, 100,
+                retryTimePeriod, permittedCallsInHalfOpen, halfOpenSuccessRatio);
+    }
+
+    /**
+     * Constructor to create an instance of Circuit Breaker tripping on failure rate or slow call
+     * rate.
+     *
+     * @param timeout                   Timeout, in milliseconds, for the API request. Calls running
+     *                                  longer are interrupted and count as failures
+     * @param slowCallDurationThreshold Time, in nanoseconds, above which a call counts as slow
+     * @param slowCallRateThreshold     Slow call rate, in percent, at or above which the circuit
+     *                                  opens
+     */
+    SlidingWindowCircuitBreaker(RemoteService<T> serviceToCall, long timeout, SlidingWindow window,
+                                int minimumCalls, float failureRateThreshold,
+                                long slowCallDurationThreshold, float slowCallRateThreshold,
+                                long retryTimePeriod, int permittedCallsInHalfOpen,
+                                double halfOpenSuccessRatio) {
+        this(serviceToCall, timeout, window, minimumCalls, failureRateThreshold,
+                slowCallDurationThreshold, slowCallRateThreshold,
+                IntervalStrategy.fixed(retryTimePeriod), permittedCallsInHalfOpen,
+                halfOpenSuccessRatio, error -> true, null, NanoClock.SYSTEM);
+    }
+
+    /**
+     * Constructor to create an instance of Circuit Breaker tripping on failure rate or slow call
+     * rate, with its own wait interval, failure classification and fallback.
+     *
+     * @param waitInterval           Time to wait while OPEN before a new request is made to remote
+     *                               service, e.g. growing while the service stays down
+     * @param recordFailurePredicate Decides which errors of the service count as failures. Other
+     *                               errors count as successful calls
+     * @param fallback               Computes the response, from the last failure, while the circuit
+     *                               does not permit calls. Null to throw CallNotPermittedException
+     *                               instead
+     * @param clock                  Source of time for retry periods and call durations. A
+     *                               {@link TimeBasedSlidingWindow} should read the same clock
+     */
+    SlidingWindowCircuitBreaker(RemoteService<T> serviceToCall, long timeout, SlidingWindow window,
+                                int minimumCalls, float failureRateThreshold,
+                                long slowCallDurationThreshold, float slowCallRateThreshold,
+                                IntervalStrategy waitInterval, int permittedCallsInHalfOpen,
+                                double halfOpenSuccessRatio,
+                                Predicate<Throwable> recordFailurePredicate,
+                                Function<Throwable, ? extends T> fallback, NanoClock clock) {
+        super(serviceToCall, timeout, slowCallDurationThreshold, waitInterval,
+                permittedCallsInHalfOpen, halfOpenSuccessRatio, recordFailurePredicate, fallback,
+                clock);
+        if (!(failureRateThreshold > 0 && failureRateThreshold <= 100)) {
+            throw new IllegalArgumentException("failureRateThreshold must be in (0, 100]");
+        }
+        if (!(slowCallRateThreshold > 0 && slowCallRateThreshold <= 100)) {
+            throw new IllegalArgumentException("slowCallRateThreshold must be in (0, 100]");
+        }
+        this.window = window;
+        this.minimumCalls = Math.max(1, minimumCalls);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    @Override
+    protected void recordOutcome(boolean failure, boolean slow) {
+        window.record(failure, slow);
+    }
+
+    // The window holds all the statistics, the CLOSED payload is not used
+    @Override
+    protected long closedPayloadAfter(long payload, boolean failure) {
+        return payload;
+    }
+
+    @Override
+    protected boolean shouldTrip(long payload) {
+        return window.failureRate(minimumCalls) >= failureRateThreshold
+                || window.slowCallRate(minimumCalls) >= slowCallRateThreshold;
+    }
+
+    @Override
+    protected void onClose() {
+        window.reset();
+    }
+
+    @Override
+    protected long[] snapshotWindow() {
+        return window.snapshot();
+    }
+
+    @Override
+    protected void restoreWindow(long[] snapshot, long elapsedNanos) {
+        if (snapshot != null) {
+            window.restore(snapshot, elapsedNanos);
+        }
+    }
+
+    // Failure rate, in percent, of the calls in the window or -1 below the minimum number of calls
+    float failureRate() {
+        return window.failureRate(minimumCalls);
+    }
+
+    // Slow call rate, in percent, of the calls in the window or -1 below the minimum number of calls
+    float slowCallRate() {
+        return window.slowCallRate(minimumCalls);
+    }
+}
@@ -0,0 +1,143 @@
+package main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Failure rate circuit breaker and sliding window test
+ */
+class SlidingWindowCircuitBreakerTest {
+
+    private static final long RETRY_PERIOD = 1000L * 1000 * 1000 * 1000;
+
+    private static final RemoteServiceException FAILURE = new RemoteServiceException("Failure");
+
+    @Test
+    void testTripsOnFailureRateDespiteSuccesses() {
+        var circuitBreaker = new SlidingWindowCircuitBreaker<String>(null, 1, new CountBasedSlidingWindow(10),
+                5, 50, RETRY_PERIOD);
+        //Every failure is followed by a success, a consecutive failure count would never trip
+        circuitBreaker.recordFailure(FAILURE);
+        circuitBreaker.recordSuccess();
+        circuitBreaker.recordFailure(FAILURE);
+        circuitBreaker.recordSuccess();
+        assertEquals("CLOSED", circuitBreaker.getState());
+        //Fifth call reaches the minimum number of calls with a 60% failure rate
+        circuitBreaker.recordFailure(FAILURE);
+        assertEquals("OPEN", circuitBreaker.getState());
+    }
+
+    @Test
+    void testSuccessReachingMinimumCallsTrips() {
+        var circuitBreaker = new SlidingWindowCircuitBreaker<String>(null, 1, new CountBasedSlidingWindow(10),
+                10, 50, RETRY_PERIOD);
+        for (int i = 0; i < 9; i++) {
+            circuitBreaker.recordFailure(FAILURE);
+        }
+        assertEquals("CLOSED", circuitBreaker.getState());
+        //The tenth call is a success, but it brings the window to 10 calls at a 90% failure rate
+        circuitBreaker.recordSuccess();
+        assertEquals("OPEN", circuitBreaker.getState());
+    }
+
+    @Test
+    void testMinimumCalls() {
+        var circuitBreaker = new SlidingWindowCircuitBreaker<String>(null, 1, new CountBasedSlidingWindow(10),
+                5, 50, RETRY_PERIOD);
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.recordFailure(FAILURE);
+        }
+        assertEquals(-1.0f, circuitBreaker.failureRate());
+        assertEquals("CLOSED", circuitBreaker.getState());
+    }
+
+    @Test
+    void testTripsOnSlowCallRate() throws RemoteServiceException {
+        RemoteService<String> slowService = () -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "Slow Success";
+        };
+        var window = new CountBasedSlidingWindow(10);
+        var circuitBreaker = new SlidingWindowCircuitBreaker<String>(slowService, 1000, window, 2, 50,
+                5L * 1000 * 1000, 50, RETRY_PERIOD, 1, 1.0);
+        //Slow calls still succeed, but the service is clearly in trouble
+        assertEquals("Slow Success", circuitBreaker.attemptRequest());
+        assertEquals("CLOSED", circuitBreaker.getState());
+        assertEquals("Slow Success", circuitBreaker.attemptRequest());
+        assertEquals(2, window.slowCalls());
+        assertEquals(0, window.failedCalls());
+        assertEquals("OPEN", circuitBreaker.getState());
+    }
+
+    @Test
+    void testCountBasedWindowSlides() {
+        var window = new CountBasedSlidingWindow(4);
+        window.record(true);
+        window.record(true);
+        assertEquals(2, window.failedCalls());
+        for (int i = 0; i < 4; i++) {
+            window.record(false);
+        }
+        //Both failures fell out of the window
+        assertEquals(4, window.totalCalls());
+        assertEquals(0, window.failedCalls());
+        window.record(true);
+        assertEquals(25.0f, window.failureRate(4));
+    }
+
+    @Test
+    void testTimeBasedWindowExpires() {
+        var clock = new ManualNanoClock();
+        var window = new TimeBasedSlidingWindow(5L * 1000 * 1000 * 1000, 5, clock);
+        window.record(true);
+        clock.advanceSeconds(2);
+        window.record(false);
+        assertEquals(2, window.totalCalls());
+        assertEquals(50.0f, window.failureRate(1));
+        //The failure falls out of the window first
+        clock.advanceSeconds(3);
+        assertEquals(1, window.totalCalls());
+        assertEquals(0, window.failedCalls());
+        clock.advanceSeconds(2);
+        assertEquals(0, window.totalCalls());
+        window.record(false);
+        assertEquals(0.0f, window.failureRate(1));
+    }
+
+    @Test
+    void testWindowResetOnClose() {
+        var window = new TimeBasedSlidingWindow(60L * 1000 * 1000 * 1000, 60);
+        var circuitBreaker = new SlidingWindowCircuitBreaker<String>(null, 1, window, 2, 100, RETRY_PERIOD);
+        circuitBreaker.recordFailure(FAILURE);
+        circuitBreaker.recordFailure(FAILURE);
+        assertEquals("OPEN", circuitBreaker.getState());
+        circuitBreaker.setState(State.CLOSED);
+        assertEquals(0, window.totalCalls());
+    }
+
+    @Test
+    void testConcurrentRecording() throws InterruptedException {
+        var window = new CountBasedSlidingWindow(1000);
+        var workers = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            var worker = new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    window.record(true);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(1000, window.totalCalls());
+        assertEquals(1000, window.failedCalls());
+    }
+}
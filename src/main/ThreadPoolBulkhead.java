@@ -0,0 +1,168 @@
+package main;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bulkhead that runs calls on its own fixed pool of threads, with a bounded queue in front of it.
+ * Callers are never blocked by the service, a call that finds both the pool and the queue full is
+ * turned away straight away. Since it is an {@link AsyncRemoteService}, a circuit breaker hands
+ * asynchronous requests directly to the pool.
+ *
+ * @param <T> type of the responses of the protected service
+ */
+public class ThreadPoolBulkhead<T> implements AsyncRemoteService<T>, Bulkhead, AutoCloseable {
+
+    private final RemoteService<T> service;
+    private final int maxConcurrentCalls;
+    private final ThreadPoolExecutor executor;
+    private final BlockingQueue<Runnable> queue;
+    private final NanoClock clock;
+    private final AtomicInteger concurrentCalls = new AtomicInteger();
+    private final LongAdder rejectedCalls = new LongAdder();
+    private final LongAdder abandonedCalls = new LongAdder();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    // Read-only, so that no caller can complete it again or chain onto it for everybody else
+    private final CompletionStage<T> bulkheadFull;
+
+    /**
+     * Constructor to create a bulkhead with its own threads.
+     *
+     * @param serviceToCall      the service protected by the bulkhead
+     * @param maxConcurrentCalls number of threads, i.e. calls running at the same time
+     * @param queueCapacity      number of calls waiting for a thread. Zero to turn calls away as
+     *                           soon as every thread is busy
+     */
+    public ThreadPoolBulkhead(RemoteService<T> serviceToCall, int maxConcurrentCalls,
+                              int queueCapacity) {
+        this(serviceToCall, maxConcurrentCalls, queueCapacity, NanoClock.SYSTEM);
+    }
+
+    /**
+     * Constructor to create a bulkhead with its own threads, reading time from the given clock.
+     *
+     * @param clock source of time for measuring how long calls wait in the queue
+     */
+    public ThreadPoolBulkhead(RemoteService<T> serviceToCall, int maxConcurrentCalls,
+                              int queueCapacity, NanoClock clock) {
+        if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("maxConcurrentCalls must be positive");
+        }
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException("queueCapacity must not be negative");
+        }
+        this.service = serviceToCall;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.clock = clock;
+        this.queue = queueCapacity == 0
+                ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueCapacity);
+        var threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxConcurrentCalls, maxConcurrentCalls, 0,
+                TimeUnit.MILLISECONDS, queue, task -> {
+                    var thread = new Thread(task, "bulkhead-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.bulkheadFull = CompletableFuture.<T>failedFuture(new BulkheadFullException(
+                "Bulkhead is full, " + maxConcurrentCalls + " calls are running and "
+                        + queueCapacity + " are queued")).minimalCompletionStage();
+    }
+
+    @Override
+    public CompletionStage<T> callAsync() {
+        var call = new Call(clock.nanoTime());
+        try {
+            executor.execute(call);
+        } catch (RejectedExecutionException ex) {
+            rejectedCalls.increment();
+            return bulkheadFull;
+        }
+        // A caller that gives up, e.g. on the timeout of its circuit breaker, frees its place in
+        // the queue, the call never reaches the service
+        call.response.whenComplete((response, error) -> {
+            if (error != null && !call.started && executor.remove(call)) {
+                abandonedCalls.increment();
+            }
+        });
+        return call.response;
+    }
+
+    @Override
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    @Override
+    public int getConcurrentCalls() {
+        return concurrentCalls.get();
+    }
+
+    // Number of calls waiting for a thread
+    public int getQueuedCalls() {
+        return queue.size();
+    }
+
+    @Override
+    public long getRejectedCalls() {
+        return rejectedCalls.sum();
+    }
+
+    // Number of queued calls given up by their caller before a thread took them
+    public long getAbandonedCalls() {
+        return abandonedCalls.sum();
+    }
+
+    @Override
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    // Stop the threads, calls still running are interrupted and queued calls fail with a
+    // BulkheadFullException, they never reached the service
+    @Override
+    public void close() {
+        var closed = new BulkheadFullException("Bulkhead is closed");
+        for (Runnable queued : executor.shutdownNow()) {
+            ((ThreadPoolBulkhead<?>.Call) queued).response.completeExceptionally(closed);
+        }
+    }
+
+    // A call waiting for a thread of the pool, or running on it
+    private final class Call implements Runnable {
+
+        final CompletableFuture<T> response = new CompletableFuture<>();
+        final long enqueued;
+        volatile boolean started;
+
+        Call(long enqueued) {
+            this.enqueued = enqueued;
+        }
+
+        @Override
+        public void run() {
+            started = true;
+            if (response.isDone()) {
+                // Given up while a thread was already taking it from the queue
+                abandonedCalls.increment();
+                return;
+            }
+            queueWait.record(clock.nanoTime() - enqueued);
+            concurrentCalls.incrementAndGet();
+            try {
+                response.complete(service.call());
+            } catch (Throwable ex) {
+                response.completeExceptionally(ex);
+            } finally {
+                concurrentCalls.decrementAndGet();
+            }
+        }
+    }
+}
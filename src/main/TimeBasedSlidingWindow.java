@@ -0,0 +1,187 @@
+package main;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sliding window over the calls of the last T nanoseconds, split into a ring of preallocated
+ * buckets. Each bucket packs its call and failure counters into one word, so recording a call is
+ * a single atomic add, plus one more for a slow call. A bucket is recycled by the first caller
+ * that finds it stale.
+ */
+public class TimeBasedSlidingWindow implements SlidingWindow {
+
+    private static final int FAILURE_BITS = 32;
+    private static final long FAILURE_MASK = (1L << FAILURE_BITS) - 1;
+    private static final long CALL = 1L << FAILURE_BITS;
+
+    private final int buckets;
+    private final long bucketNanos;
+    private final NanoClock clock;
+    // Origin of the bucket epochs, so that epochs are never negative
+    private final long baseTime;
+    // Epoch, i.e. (time - baseTime) / bucketNanos, that each bucket currently counts for
+    private final AtomicLongArray epochs;
+    // Calls in the upper 32 bits, failures in the lower 32 bits
+    private final AtomicLongArray counts;
+    private final AtomicLongArray slowCounts;
+
+    /**
+     * Constructor to create a window over the calls of a recent time period.
+     *
+     * @param windowNanos length of the window, in nanoseconds
+     * @param buckets     number of buckets the window is split into. More buckets make the window
+     *                    slide more smoothly but make reading the rate slightly slower
+     */
+    public TimeBasedSlidingWindow(long windowNanos, int buckets) {
+        this(windowNanos, buckets, NanoClock.SYSTEM);
+    }
+
+    /**
+     * Constructor to create a window over the calls of a recent time period, reading time from the
+     * given clock.
+     *
+     * @param clock source of time, e.g. {@link CachedNanoClock} for very high call rates
+     */
+    public TimeBasedSlidingWindow(long windowNanos, int buckets, NanoClock clock) {
+        if (buckets < 1 || windowNanos < buckets) {
+            throw new IllegalArgumentException("window must hold at least one nanosecond per bucket");
+        }
+        this.buckets = buckets;
+        this.bucketNanos = windowNanos / buckets;
+        this.clock = clock;
+        this.baseTime = clock.nanoTime();
+        this.epochs = new AtomicLongArray(buckets);
+        this.counts = new AtomicLongArray(buckets);
+        this.slowCounts = new AtomicLongArray(buckets);
+    }
+
+    private long currentEpoch() {
+        return (clock.nanoTime() - baseTime) / bucketNanos;
+    }
+
+    @Override
+    public void record(boolean failure, boolean slow) {
+        long epoch = currentEpoch();
+        int index = (int) (epoch % buckets);
+        long bucketEpoch = epochs.get(index);
+        if (bucketEpoch != epoch) {
+            // Take the stale counts before claiming the bucket. Subtracting them afterwards keeps
+            // every increment that lands in between, instead of wiping it with a plain reset.
+            long stale = counts.get(index);
+            long staleSlow = slowCounts.get(index);
+            if (bucketEpoch < epoch && epochs.compareAndSet(index, bucketEpoch, epoch)) {
+                counts.addAndGet(index, -stale);
+                slowCounts.addAndGet(index, -staleSlow);
+            }
+        }
+        counts.addAndGet(index, failure ? CALL | 1 : CALL);
+        if (slow) {
+            slowCounts.incrementAndGet(index);
+        }
+    }
+
+    // Sum of the calls, and of either the failures or the slow calls, of every bucket still inside
+    // the window. Packed like a bucket so that no object is needed to return both.
+    private long sum(boolean slow) {
+        long epoch = currentEpoch();
+        long calls = 0;
+        long matching = 0;
+        for (int i = 0; i < buckets; i++) {
+            long age = epoch - epochs.get(i);
+            if (age >= 0 && age < buckets) {
+                long packed = counts.get(i);
+                calls += packed >>> FAILURE_BITS;
+                matching += slow ? slowCounts.get(i) : packed & FAILURE_MASK;
+            }
+        }
+        return (Math.min(calls, Integer.MAX_VALUE) << FAILURE_BITS)
+                | Math.max(0, Math.min(matching, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public int totalCalls() {
+        return (int) (sum(false) >>> FAILURE_BITS);
+    }
+
+    @Override
+    public int failedCalls() {
+        return (int) (sum(false) & FAILURE_MASK);
+    }
+
+    @Override
+    public int slowCalls() {
+        return (int) (sum(true) & FAILURE_MASK);
+    }
+
+    @Override
+    public float failureRate(int minimumCalls) {
+        return rate(sum(false), minimumCalls);
+    }
+
+    @Override
+    public float slowCallRate(int minimumCalls) {
+        return rate(sum(true), minimumCalls);
+    }
+
+    private static float rate(long packed, int minimumCalls) {
+        long total = packed >>> FAILURE_BITS;
+        if (total == 0 || total < minimumCalls) {
+            return -1;
+        }
+        return Math.min(packed & FAILURE_MASK, total) * 100.0f / total;
+    }
+
+    // Bucket length, number of buckets, then the age in buckets, counts and slow counts of each
+    // bucket. Ages out of the window mark stale buckets.
+    @Override
+    public long[] snapshot() {
+        long epoch = currentEpoch();
+        long[] snapshot = new long[2 + 3 * buckets];
+        snapshot[0] = bucketNanos;
+        snapshot[1] = buckets;
+        for (int i = 0; i < buckets; i++) {
+            long age = epoch - epochs.get(i);
+            long count = counts.get(i);
+            long slowCount = slowCounts.get(i);
+            // Buckets never used yet all claim epoch 0, only those with calls are written
+            boolean live = age >= 0 && age < buckets && (count != 0 || slowCount != 0);
+            snapshot[2 + 3 * i] = live ? age : -1;
+            snapshot[3 + 3 * i] = live ? count : 0;
+            snapshot[4 + 3 * i] = live ? slowCount : 0;
+        }
+        return snapshot;
+    }
+
+    // Buckets age by the time elapsed since the snapshot, those that slid out of the window are
+    // dropped. Restored buckets may get negative epochs, which recycle like any stale bucket.
+    @Override
+    public void restore(long[] snapshot, long elapsedNanos) {
+        if (snapshot.length != 2 + 3 * buckets || snapshot[0] != bucketNanos
+                || snapshot[1] != buckets) {
+            return;
+        }
+        long epoch = currentEpoch();
+        long shift = Math.max(0, elapsedNanos) / bucketNanos;
+        reset();
+        for (int i = 0; i < buckets; i++) {
+            long savedAge = snapshot[2 + 3 * i];
+            if (savedAge < 0 || savedAge >= buckets || savedAge + shift >= buckets) {
+                continue;
+            }
+            long bucketEpoch = epoch - savedAge - shift;
+            int index = (int) Math.floorMod(bucketEpoch, (long) buckets);
+            counts.set(index, snapshot[3 + 3 * i]);
+            slowCounts.set(index, snapshot[4 + 3 * i]);
+            epochs.set(index, bucketEpoch);
+        }
+    }
+
+    // Buckets are only marked stale, the next call landing in one of them recycles it. Zeroing the
+    // counters here could race with a concurrent recycle and leave them negative.
+    @Override
+    public void reset() {
+        for (int i = 0; i < buckets; i++) {
+            epochs.set(i, -1L - buckets);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package main;
+
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Enforces a timeout on a blocking remote call. The call still runs on the caller thread, so there
+ * is no hand-off to another thread on the happy path. A shared watchdog thread interrupts the
+ * caller if the call runs longer than the timeout.
+ *
+ * <p>Every caller thread owns a guard holding the deadline of its current call, so starting and
+ * finishing a call only writes to that guard: nothing is allocated and no lock or queue is shared
+ * between callers. The watchdog wakes up every tick while calls are in flight and checks the
+ * guards, so a timeout fires up to a tick late. It sleeps while no call is in flight.
+ *
+ * <p>Deadlines are kept on the clock of the circuit breaker that made the call, the watchdog reads
+ * the clock of each guard when checking it. Only its tick is real time.
+ */
+final class TimeLimiter {
+
+    // Lowest two bits of the guard word, the rest counts the calls made with the guard
+    private static final long IDLE = 0;
+    private static final long RUNNING = 1;
+    private static final long INTERRUPTING = 2;
+    private static final long INTERRUPTED = 3;
+    private static final long STATUS_MASK = 3;
+    private static final long GENERATION = 4;
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // Guards of every thread that made a call with a timeout, dropped once the thread died
+    private static final ConcurrentLinkedQueue<Guard> GUARDS = new ConcurrentLinkedQueue<>();
+    private static final ThreadLocal<Guard> GUARD = ThreadLocal.withInitial(() -> {
+        var guard = new Guard(Thread.currentThread(), true);
+        GUARDS.add(guard);
+        return guard;
+    });
+    // Set by the watchdog before it sleeps without a timeout, cleared by the caller waking it
+    private static volatile boolean idle;
+    private static final Thread WATCHDOG = startWatchdog();
+
+    private TimeLimiter() {
+    }
+
+    private static Thread startWatchdog() {
+        var thread = new Thread(TimeLimiter::watch, "circuit-breaker-watchdog");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Call the remote service, giving up after the timeout.
+     *
+     * @param callable      call to the remote service
+     * @param timeoutMillis timeout in milliseconds, zero or less to wait forever
+     * @param clock         clock the timeout is measured on
+     * @param start         time the call started at, on that clock
+     * @return the response of the service
+     * @throws CallTimeoutException if the call took longer than the timeout
+     * @throws Exception            if the service failed
+     */
+    static <T> T call(Callable<? extends T> callable, long timeoutMillis, NanoClock clock,
+                      long start) throws Exception {
+        if (timeoutMillis <= 0) {
+            return callable.call();
+        }
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Guard guard = GUARD.get();
+        if (!guard.isIdle()) {
+            // A call nested in another timed call of the same thread gets a guard of its own,
+            // registered after it started so that the watchdog does not drop it as idle
+            guard = new Guard(Thread.currentThread(), false);
+            long word = guard.start(clock, deadline);
+            GUARDS.add(guard);
+            return call(callable, guard, word, timeoutMillis);
+        }
+        return call(callable, guard, guard.start(clock, deadline), timeoutMillis);
+    }
+
+    private static <T> T call(Callable<? extends T> callable, Guard guard, long word,
+                              long timeoutMillis) throws Exception {
+        if (idle) {
+            idle = false;
+            LockSupport.unpark(WATCHDOG);
+        }
+        try {
+            T response = callable.call();
+            if (guard.complete(word)) {
+                return response;
+            }
+        } catch (Exception | Error ex) {
+            if (guard.complete(word)) {
+                throw ex;
+            }
+        }
+        // The watchdog fired, whatever the service did after the interrupt is not trusted
+        guard.clearInterrupt(word);
+        throw new CallTimeoutException(timeoutMillis);
+    }
+
+    private static void watch() {
+        for (;;) {
+            if (check()) {
+                LockSupport.parkNanos(TICK_NANOS);
+                continue;
+            }
+            idle = true;
+            // A call that started before idle was set is found by this second check, a call
+            // starting after it sees idle and wakes the watchdog up
+            if (check()) {
+                idle = false;
+                continue;
+            }
+            LockSupport.park();
+        }
+    }
+
+    // Interrupt the calls past their deadline, true if any call is still in flight
+    private static boolean check() {
+        boolean busy = false;
+        for (Iterator<Guard> it = GUARDS.iterator(); it.hasNext();) {
+            Guard guard = it.next();
+            if (guard.expire()) {
+                busy = true;
+            } else if (!guard.pooled || !guard.caller.isAlive()) {
+                it.remove();
+            }
+        }
+        return busy;
+    }
+
+    // Races the caller finishing its call against the watchdog interrupting it
+    private static final class Guard {
+
+        final Thread caller;
+        // False for the single-use guard of a nested call
+        final boolean pooled;
+        final AtomicLong word = new AtomicLong(IDLE);
+        // Written before the word turns RUNNING, so the watchdog always reads the clock and
+        // deadline of the call it saw running
+        NanoClock clock;
+        long deadline;
+
+        Guard(Thread caller, boolean pooled) {
+            this.caller = caller;
+            this.pooled = pooled;
+        }
+
+        boolean isIdle() {
+            return (word.get() & STATUS_MASK) == IDLE;
+        }
+
+        // Start a call, returns the word of that call
+        long start(NanoClock clock, long deadline) {
+            this.clock = clock;
+            this.deadline = deadline;
+            long running = (word.get() & ~STATUS_MASK) + GENERATION + RUNNING;
+            word.set(running);
+            return running;
+        }
+
+        // true if the call finished before the watchdog fired
+        boolean complete(long running) {
+            return word.compareAndSet(running, running - RUNNING + IDLE);
+        }
+
+        // Interrupt the caller if its call is past the deadline, true if the call is still in
+        // flight. The generation in the word keeps the watchdog from interrupting a later call
+        boolean expire() {
+            long current = word.get();
+            long status = current & STATUS_MASK;
+            if (status != RUNNING) {
+                return status == INTERRUPTING;
+            }
+            if (clock.nanoTime() - deadline < 0) {
+                return true;
+            }
+            if (word.compareAndSet(current, current - RUNNING + INTERRUPTING)) {
+                caller.interrupt();
+                word.set(current - RUNNING + INTERRUPTED);
+            }
+            return false;
+        }
+
+        // Wait for the watchdog to deliver its interrupt, then swallow it so it cannot leak into
+        // whatever the caller thread does next
+        void clearInterrupt(long running) {
+            long interrupted = running - RUNNING + INTERRUPTED;
+            while (word.get() != interrupted) {
+                Thread.onSpinWait();
+            }
+            Thread.interrupted();
+            word.set(interrupted - INTERRUPTED + IDLE);
+        }
+    }
+}